@@ -2,11 +2,17 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.BlockCardRequestDto;
 import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.dto.CardImportResultDto;
+import com.example.bankcards.dto.CardStatsDto;
 import com.example.bankcards.dto.CreateCardRequestDto;
+import com.example.bankcards.dto.StatsPeriod;
 import com.example.bankcards.exception.ErrorResponse;
 import com.example.bankcards.security.CustomUserDetails;
+import com.example.bankcards.service.CardImportService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.CardStatsService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -14,9 +20,11 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -28,7 +36,13 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
 
 @RestController
 @RequestMapping("/api/cards")
@@ -37,6 +51,8 @@ import org.springframework.web.bind.annotation.RestController;
 public class CardController {
 
     private final CardService cardService;
+    private final CardStatsService cardStatsService;
+    private final CardImportService cardImportService;
 
     @Operation(summary = "Get user cards", description = "Retrieve paginated list of current user's cards")
     @ApiResponses(value = {
@@ -45,9 +61,14 @@ public class CardController {
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
     })
     @GetMapping
-    public ResponseEntity<Page<CardDto>> getMyCards(Pageable pageable) {
+    public ResponseEntity<Slice<CardDto>> getMyCards(
+            Pageable pageable,
+            @Parameter(description = "Include totalElements and totalPages; false skips counting and reports only whether a next page exists")
+            @RequestParam(defaultValue = "true") boolean total) {
         Long userId = getCurrentUserId();
-        Page<CardDto> cards = cardService.getUserCards(userId, pageable);
+        Slice<CardDto> cards = total
+                ? cardService.getUserCards(userId, pageable)
+                : cardService.getUserCardsSlice(userId, pageable);
         return ResponseEntity.ok(cards);
     }
 
@@ -66,6 +87,26 @@ public class CardController {
         return ResponseEntity.ok(card);
     }
 
+    @Operation(summary = "Get card statistics",
+            description = "Debit and credit sums and counts of user's own card for the days from..to inclusive, " +
+                    "grouped by day or month. Answered from daily rollups plus the last minutes of the ledger.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Statistics retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "from is after to",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "Card not found",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/{id}/stats")
+    public ResponseEntity<CardStatsDto> getCardStats(
+            @PathVariable Long id,
+            @Parameter(description = "First day, ISO date") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Last day, ISO date") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "DAY") StatsPeriod period) {
+        Long userId = getCurrentUserId();
+        return ResponseEntity.ok(cardStatsService.getCardStats(id, userId, from, to, period));
+    }
+
     @Operation(summary = "Create new card", description = "Create a new bank card for current user")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Card created successfully"),
@@ -79,6 +120,21 @@ public class CardController {
         return ResponseEntity.status(HttpStatus.CREATED).body(card);
     }
 
+    @Operation(summary = "Import cards", description = "Bulk load cards from a CSV file "
+            + "(card_number,cardholder_name,expiry_date,owner_id); invalid lines are reported and skipped (admin only)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "File processed, see counts and rejected lines"),
+            @ApiResponse(responseCode = "403", description = "Access denied - Admin role required",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CardImportResultDto> importCards(@RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream csv = file.getInputStream()) {
+            return ResponseEntity.ok(cardImportService.importCards(csv));
+        }
+    }
+
     @Operation(summary = "Block card", description = "Block user's own card with specified reason")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Card blocked successfully"),
@@ -92,7 +148,8 @@ public class CardController {
         return ResponseEntity.noContent().build();
     }
 
-    @Operation(summary = "Get all cards (Admin)", description = "Retrieve all cards in the system. Admin only.")
+    @Operation(summary = "Get all cards (Admin)", description = "Retrieve all cards in the system. Admin only. " +
+            "On large tables totalElements is the database estimate rather than an exact count.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Cards retrieved successfully"),
             @ApiResponse(responseCode = "403", description = "Access denied - Admin role required",
@@ -100,8 +157,11 @@ public class CardController {
     })
     @GetMapping("/all")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Page<CardDto>> getAllCards(Pageable pageable) {
-        Page<CardDto> cards = cardService.getAllCards(pageable);
+    public ResponseEntity<Slice<CardDto>> getAllCards(
+            Pageable pageable,
+            @Parameter(description = "Include totalElements and totalPages; false skips counting and reports only whether a next page exists")
+            @RequestParam(defaultValue = "true") boolean total) {
+        Slice<CardDto> cards = total ? cardService.getAllCards(pageable) : cardService.getAllCardsSlice(pageable);
         return ResponseEntity.ok(cards);
     }
 
@@ -120,6 +180,23 @@ public class CardController {
         return ResponseEntity.noContent().build();
     }
 
+    @Operation(summary = "Mark card as hot (Admin)",
+            description = "Spread incoming credits of the card across balance slots instead of updating the card row. " +
+                    "Turning it off folds the slots back into the card balance. Admin only.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Card updated successfully"),
+            @ApiResponse(responseCode = "404", description = "Card not found",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Access denied - Admin role required",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PutMapping("/{id}/hot")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Void> setHot(@PathVariable Long id, @RequestParam boolean enabled) {
+        cardService.setHot(id, enabled);
+        return ResponseEntity.noContent().build();
+    }
+
     @Operation(summary = "Delete card (Admin)", description = "Permanently delete card from system. Admin only.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Card deleted successfully"),
@@ -0,0 +1,58 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.dto.LedgerVerificationDto;
+import com.example.bankcards.exception.ErrorResponse;
+import com.example.bankcards.service.LedgerService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin/ledger")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+@Tag(name = "Ledger (Admin)", description = "Balance ledger maintenance. Admin only.")
+public class LedgerController {
+
+    private final LedgerService ledgerService;
+
+    @Operation(
+            summary = "Verify ledger (Admin)",
+            description = "Rebuild every card balance from the ledger and compare it with balance snapshots " +
+                    "and stored card balances. Also reports transfers whose entries do not sum to zero. Admin only."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Verification completed, see consistent flag"),
+            @ApiResponse(responseCode = "403", description = "Access denied - Admin role required",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/verification")
+    public ResponseEntity<LedgerVerificationDto> verify() {
+        return ResponseEntity.ok(ledgerService.verify());
+    }
+
+    @Operation(
+            summary = "Compact ledger (Admin)",
+            description = "Roll balance snapshots forward now instead of waiting for the scheduled compactor. Admin only."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Snapshots rolled forward"),
+            @ApiResponse(responseCode = "403", description = "Access denied - Admin role required",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping("/compaction")
+    public ResponseEntity<Void> compact() {
+        ledgerService.compact();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,12 +1,20 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.BatchTransferRequestDto;
+import com.example.bankcards.dto.BatchTransferResponseDto;
+import com.example.bankcards.dto.HistoryExportFormat;
+import com.example.bankcards.dto.TransactionCursorPageDto;
 import com.example.bankcards.dto.TransactionDto;
 import com.example.bankcards.dto.TransferRequestDto;
 import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.dto.TransferStatusDto;
 import com.example.bankcards.exception.ErrorResponse;
 import com.example.bankcards.security.CustomUserDetails;
+import com.example.bankcards.service.TransactionExportService;
+import com.example.bankcards.service.TransferOrchestrator;
 import com.example.bankcards.service.TransferService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -14,17 +22,28 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/transfers")
@@ -32,29 +51,85 @@ import org.springframework.web.bind.annotation.RestController;
 @Tag(name = "Transfers", description = "Money transfer operations between user's cards")
 public class TransferController {
 
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
     private final TransferService transferService;
+    private final TransferOrchestrator transferOrchestrator;
+    private final TransactionExportService transactionExportService;
 
     @Operation(
             summary = "Transfer money between cards",
-            description = "Transfer money from one card to another. Both cards must belong to current user."
+            description = "Transfer money from one card to another. Both cards must belong to current user. " +
+                    "Send an Idempotency-Key header to make client retries safe. " +
+                    "With async=true the transfer is queued and its status is available at the Location URL."
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Transfer completed successfully"),
+            @ApiResponse(responseCode = "202", description = "Transfer accepted for asynchronous processing"),
             @ApiResponse(responseCode = "400", description = "Invalid transfer (insufficient balance, blocked card, same card)",
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "Card not found",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "409", description = "Cards were concurrently modified and retries were exhausted",
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PostMapping
-    public ResponseEntity<TransferResponse> transfer(@Valid @RequestBody TransferRequestDto request) {
+    public ResponseEntity<TransferResponse> transfer(
+            @Valid @RequestBody TransferRequestDto request,
+            @Parameter(description = "Client-generated key; retries with the same key return the original result")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @Parameter(description = "Queue the transfer and return immediately instead of waiting for it")
+            @RequestParam(defaultValue = "false") boolean async) {
         Long userId = getCurrentUserId();
-        TransferResponse response = transferService.transfer(request, userId);
+        if (async) {
+            TransferResponse response = transferOrchestrator.submit(request, userId, idempotencyKey);
+            URI location = ServletUriComponentsBuilder.fromCurrentRequestUri()
+                    .path("/{id}")
+                    .buildAndExpand(response.transactionId())
+                    .toUri();
+            return ResponseEntity.accepted().location(location).body(response);
+        }
+        TransferResponse response = transferOrchestrator.transfer(request, userId, idempotencyKey);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    @Operation(
+            summary = "Get transfer status",
+            description = "Poll the status of a transfer. Asynchronous transfers move from PENDING through PROCESSING " +
+                    "to COMPLETED or FAILED; errorMessage explains a failure."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Transfer status retrieved successfully"),
+            @ApiResponse(responseCode = "404", description = "Transfer not found",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/{id}")
+    public ResponseEntity<TransferStatusDto> getTransferStatus(@PathVariable Long id) {
+        Long userId = getCurrentUserId();
+        return ResponseEntity.ok(transferService.getTransferStatus(id, userId));
+    }
+
+    @Operation(
+            summary = "Transfer money in a batch",
+            description = "Execute many transfers between current user's cards in one database transaction. " +
+                    "Each transfer is reported separately. In atomic mode a single failed transfer rolls back the whole batch."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch processed, see per-transfer results"),
+            @ApiResponse(responseCode = "400", description = "Atomic batch rolled back, see per-transfer results",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = BatchTransferResponseDto.class)))
+    })
+    @PostMapping("/batch")
+    public ResponseEntity<BatchTransferResponseDto> transferBatch(@Valid @RequestBody BatchTransferRequestDto request) {
+        Long userId = getCurrentUserId();
+        BatchTransferResponseDto response = transferService.transferBatch(request, userId);
+        return ResponseEntity.ok(response);
+    }
+
     @Operation(
             summary = "Get transaction history",
-            description = "Retrieve paginated history of all transfers involving current user's cards"
+            description = "Retrieve paginated history of all transfers involving current user's cards. " +
+                    "The total is cached for a short time and may lag behind the newest transfers."
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Transaction history retrieved successfully"),
@@ -62,12 +137,66 @@ public class TransferController {
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
     })
     @GetMapping("/history")
-    public ResponseEntity<Page<TransactionDto>> getTransactionHistory(Pageable pageable) {
+    public ResponseEntity<Slice<TransactionDto>> getTransactionHistory(
+            Pageable pageable,
+            @Parameter(description = "Include totalElements and totalPages; false skips counting and reports only whether a next page exists")
+            @RequestParam(defaultValue = "true") boolean total) {
         Long userId = getCurrentUserId();
-        Page<TransactionDto> history = transferService.getTransactionHistory(userId, pageable);
+        Slice<TransactionDto> history = total
+                ? transferService.getTransactionHistory(userId, pageable)
+                : transferService.getTransactionHistorySlice(userId, pageable);
         return ResponseEntity.ok(history);
     }
 
+    @Operation(
+            summary = "Get transaction history by cursor",
+            description = "Retrieve history of transfers involving current user's cards, newest first. " +
+                    "Pass nextCursor from the previous page to get the next one; it is absent on the last page. " +
+                    "Unlike page numbers, deep pages are as fast as the first one. Page size is capped at 100."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Transaction history retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Malformed cursor",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Unauthorized",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/history/cursor")
+    public ResponseEntity<TransactionCursorPageDto> getTransactionHistoryByCursor(
+            @Parameter(description = "Opaque cursor returned as nextCursor by the previous page")
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        Long userId = getCurrentUserId();
+        return ResponseEntity.ok(transferService.getTransactionHistory(userId, cursor, size));
+    }
+
+    @Operation(
+            summary = "Export transaction history",
+            description = "Download the whole history of transfers involving current user's cards, newest first, " +
+                    "one transfer per line as NDJSON or CSV. Rows are streamed as they are read, " +
+                    "so the response starts immediately and its size is not limited by paging. " +
+                    "With gzip=true the file is compressed on the fly."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Transaction history streamed"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/history/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactionHistory(
+            @RequestParam(defaultValue = "NDJSON") HistoryExportFormat format,
+            @Parameter(description = "Compress the file with gzip")
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        Long userId = getCurrentUserId();
+        String filename = "transactions." + format.getExtension() + (gzip ? ".gz" : "");
+        StreamingResponseBody body = out -> transactionExportService.export(userId, format,
+                gzip ? new GZIPOutputStream(out, GZIP_BUFFER_SIZE) : out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(body);
+    }
+
     private Long getCurrentUserId() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         CustomUserDetails userDetails = (CustomUserDetails) authentication.getPrincipal();
@@ -5,14 +5,15 @@ import com.example.bankcards.exception.ErrorResponse;
 import com.example.bankcards.security.CustomUserDetails;
 import com.example.bankcards.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -21,6 +22,7 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -34,7 +36,8 @@ public class UserController {
 
     @Operation(
             summary = "Get all users (Admin)",
-            description = "Retrieve paginated list of all users in the system. Admin only."
+            description = "Retrieve paginated list of all users in the system. Admin only. " +
+                    "On large tables totalElements is the database estimate rather than an exact count."
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Users retrieved successfully"),
@@ -42,8 +45,11 @@ public class UserController {
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorResponse.class)))
     })
     @GetMapping
-    public ResponseEntity<Page<UserDto>> getAllUsers(Pageable pageable) {
-        Page<UserDto> users = userService.getAllUsers(pageable);
+    public ResponseEntity<Slice<UserDto>> getAllUsers(
+            Pageable pageable,
+            @Parameter(description = "Include totalElements and totalPages; false skips counting and reports only whether a next page exists")
+            @RequestParam(defaultValue = "true") boolean total) {
+        Slice<UserDto> users = total ? userService.getAllUsers(pageable) : userService.getAllUsersSlice(pageable);
         return ResponseEntity.ok(users);
     }
 
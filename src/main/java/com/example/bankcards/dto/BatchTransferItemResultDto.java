@@ -0,0 +1,14 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+
+public record BatchTransferItemResultDto(
+        int index,
+        Long transactionId,
+        Long fromCardId,
+        Long toCardId,
+        BigDecimal amount,
+        String status,
+        String message
+) {
+}
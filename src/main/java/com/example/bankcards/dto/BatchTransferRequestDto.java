@@ -0,0 +1,16 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record BatchTransferRequestDto(
+        @NotEmpty(message = "Transfers are required")
+        @Size(max = 1000, message = "Batch must contain at most 1000 transfers")
+        List<@Valid TransferRequestDto> transfers,
+
+        boolean atomic
+) {
+}
@@ -0,0 +1,13 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public record BatchTransferResponseDto(
+        int total,
+        int succeeded,
+        int failed,
+        boolean atomic,
+        boolean committed,
+        List<BatchTransferItemResultDto> results
+) {
+}
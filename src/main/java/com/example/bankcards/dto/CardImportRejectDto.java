@@ -0,0 +1,7 @@
+package com.example.bankcards.dto;
+
+public record CardImportRejectDto(
+        long line,
+        String reason
+) {
+}
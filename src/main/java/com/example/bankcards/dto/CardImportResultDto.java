@@ -0,0 +1,12 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public record CardImportResultDto(
+        long lines,
+        long imported,
+        long rejected,
+        List<CardImportRejectDto> rejects,
+        boolean rejectsTruncated
+) {
+}
@@ -0,0 +1,13 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record CardStatsBucketDto(
+        LocalDate start,
+        BigDecimal debitAmount,
+        long debitCount,
+        BigDecimal creditAmount,
+        long creditCount
+) {
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+public record CardStatsDto(
+        Long cardId,
+        LocalDate from,
+        LocalDate to,
+        StatsPeriod period,
+        BigDecimal debitAmount,
+        long debitCount,
+        BigDecimal creditAmount,
+        long creditCount,
+        List<CardStatsBucketDto> buckets
+) {
+}
@@ -0,0 +1,17 @@
+package com.example.bankcards.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Формат выгрузки истории переводов: по одной строке на перевод.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum HistoryExportFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+}
@@ -0,0 +1,11 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+
+public record LedgerMismatchDto(
+        Long cardId,
+        BigDecimal ledgerBalance,
+        BigDecimal snapshotBalance,
+        BigDecimal cardBalance
+) {
+}
@@ -0,0 +1,11 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public record LedgerVerificationDto(
+        int cardsChecked,
+        boolean consistent,
+        List<LedgerMismatchDto> mismatches,
+        List<Long> unbalancedTransactionIds
+) {
+}
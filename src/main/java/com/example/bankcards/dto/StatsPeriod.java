@@ -0,0 +1,18 @@
+package com.example.bankcards.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Период, по которому складываются итоги карты.
+ */
+public enum StatsPeriod {
+    DAY,
+    MONTH;
+
+    /**
+     * Первый день периода, в который попадает day.
+     */
+    public LocalDate start(LocalDate day) {
+        return this == MONTH ? day.withDayOfMonth(1) : day;
+    }
+}
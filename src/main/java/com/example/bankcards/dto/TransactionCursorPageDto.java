@@ -0,0 +1,12 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+/**
+ * Страница истории переводов; nextCursor отсутствует на последней странице.
+ */
+public record TransactionCursorPageDto(
+        List<TransactionDto> items,
+        String nextCursor
+) {
+}
@@ -0,0 +1,16 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record TransferStatusDto(
+        Long transactionId,
+        Long fromCardId,
+        Long toCardId,
+        BigDecimal amount,
+        String status,
+        String errorMessage,
+        LocalDateTime createdAt,
+        LocalDateTime completedAt
+) {
+}
@@ -9,11 +9,14 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -28,26 +31,52 @@ import java.time.LocalDateTime;
  * Номер карты хранится в зашифрованном виде
  */
 @Entity
-@Table(name = "cards")
+@Table(name = "cards", indexes = {
+        @Index(name = "idx_cards_user_id", columnList = "user_id"),
+        @Index(name = "idx_cards_status", columnList = "status"),
+        @Index(name = "idx_cards_user_status", columnList = "user_id, status"),
+        @Index(name = "idx_cards_expiry_date", columnList = "expiry_date"),
+        @Index(name = "uk_cards_number_hash", columnList = "card_number_hash", unique = true)
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Card {
+
+    /**
+     * Маска номера карты перед последними 4 цифрами
+     */
+    public static final String MASKED_NUMBER_PREFIX = "**** **** **** ";
+
+    /**
+     * Замена последних 4 цифр, пока их не заполнил CardNumberHashBackfill
+     */
+    public static final String UNKNOWN_LAST_FOUR_DIGITS = "****";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cards_id_seq")
+    @SequenceGenerator(name = "cards_id_seq", sequenceName = "cards_id_seq", allocationSize = 50)
     private Long id;
 
     /**
-     * Зашифрованный номер карты
+     * Зашифрованный номер карты; после создания меняется только ротацией ключа (CardKeyRotation),
+     * поэтому не входит в UPDATE сущности и не затирает перешифрованное значение
      */
-    @Column(name = "card_number_encrypted", nullable = false, unique = true, length = 500)
+    @Column(name = "card_number_encrypted", nullable = false, unique = true, length = 500, updatable = false)
     private String cardNumber;
 
     /**
-     * Последние 4 цифры номера карты для отображения маски
+     * Слепой индекс номера карты (EncryptionUtil.blindIndex) для поиска и проверки уникальности
+     */
+    @Column(name = "card_number_hash", length = 64)
+    private String cardNumberHash;
+
+    /**
+     * Последние 4 цифры номера карты для отображения маски; null у карт, созданных до появления колонки,
+     * пока их не заполнит CardNumberHashBackfill
      */
-    @Column(name = "last_four_digits", nullable = false, length = 4)
+    @Column(name = "last_four_digits", length = 4)
     private String lastFourDigits;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -68,10 +97,20 @@ public class Card {
     @Builder.Default
     private CardStatus status = CardStatus.ACTIVE;
 
+    /**
+     * Основная часть баланса. У горячей карты к ней добавляются слоты card_balance_slots
+     */
     @Column(nullable = false, precision = 15, scale = 2)
     @Builder.Default
     private BigDecimal balance = BigDecimal.ZERO;
 
+    /**
+     * Горячая карта: зачисления распределяются по слотам баланса, а не меняют строку карты
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private boolean hot = false;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -84,6 +123,13 @@ public class Card {
     @Column(name = "block_reason", length = 500)
     private String blockReason;
 
+    /**
+     * Версия строки для оптимистичной блокировки
+     */
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -107,7 +153,7 @@ public class Card {
     }
 
     public String getMaskedCardNumber() {
-        return "**** **** **** " + lastFourDigits;
+        return MASKED_NUMBER_PREFIX + (lastFourDigits != null ? lastFourDigits : UNKNOWN_LAST_FOUR_DIGITS);
     }
 
     /**
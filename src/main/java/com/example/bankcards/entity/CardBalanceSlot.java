@@ -0,0 +1,48 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Слот баланса горячей карты
+ * Видимый баланс карты равен cards.balance плюс сумма её слотов
+ */
+@Entity
+@Table(name = "card_balance_slots")
+@IdClass(CardBalanceSlot.SlotId.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CardBalanceSlot {
+
+    @Id
+    @Column(name = "card_id")
+    private Long cardId;
+
+    @Id
+    @Column(name = "slot")
+    private Integer slot;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    @Builder.Default
+    private BigDecimal balance = BigDecimal.ZERO;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SlotId implements Serializable {
+        private Long cardId;
+        private Integer slot;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Снимок баланса карты по журналу
+ * Баланс карты равен снимку плюс сумма записей журнала, созданных не раньше asOf
+ */
+@Entity
+@Table(name = "card_balance_snapshots")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CardBalanceSnapshot {
+
+    @Id
+    @Column(name = "card_id")
+    private Long cardId;
+
+    /**
+     * Сумма всех записей журнала, созданных раньше asOf
+     */
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal balance;
+
+    @Column(name = "as_of", nullable = false)
+    private LocalDateTime asOf;
+
+    @Version
+    @Column(nullable = false)
+    private Long version;
+}
@@ -0,0 +1,64 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Суммы списаний и зачислений карты за день по записям журнала переводов
+ * Содержит только записи, созданные раньше CardStatsProgress.aggregatedUntil
+ */
+@Entity
+@Table(name = "card_daily_stats")
+@IdClass(CardDailyStats.DayId.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CardDailyStats {
+
+    @Id
+    @Column(name = "card_id")
+    private Long cardId;
+
+    @Id
+    @Column(name = "stats_day")
+    private LocalDate day;
+
+    /**
+     * Сумма списаний, положительная
+     */
+    @Column(name = "debit_amount", nullable = false, precision = 15, scale = 2)
+    @Builder.Default
+    private BigDecimal debitAmount = BigDecimal.ZERO;
+
+    @Column(name = "debit_count", nullable = false)
+    @Builder.Default
+    private Long debitCount = 0L;
+
+    @Column(name = "credit_amount", nullable = false, precision = 15, scale = 2)
+    @Builder.Default
+    private BigDecimal creditAmount = BigDecimal.ZERO;
+
+    @Column(name = "credit_count", nullable = false)
+    @Builder.Default
+    private Long creditCount = 0L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DayId implements Serializable {
+        private Long cardId;
+        private LocalDate day;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Контрольная точка перешифрования номеров карт ключом версии keyVersion
+ * Карты с id до lastCardId включительно уже пройдены
+ */
+@Entity
+@Table(name = "card_key_rotation")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CardKeyRotationProgress {
+
+    @Id
+    @Column(name = "key_version")
+    private Integer keyVersion;
+
+    @Column(name = "last_card_id", nullable = false)
+    @Builder.Default
+    private Long lastCardId = 0L;
+
+    /**
+     * Перешифровано номеров
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Long rotated = 0L;
+
+    /**
+     * Номеров, которые не удалось расшифровать ни одним известным ключом
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Long failed = 0L;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @Version
+    @Column(nullable = false)
+    private Long version;
+}
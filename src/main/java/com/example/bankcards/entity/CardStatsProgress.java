@@ -0,0 +1,38 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Граница, до которой записи журнала уже сложены в card_daily_stats
+ * Единственная строка с id = 1
+ */
+@Entity
+@Table(name = "card_daily_stats_progress")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CardStatsProgress {
+
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+
+    @Column(name = "aggregated_until", nullable = false)
+    private LocalDateTime aggregatedUntil;
+
+    @Version
+    @Column(nullable = false)
+    private Long version;
+}
@@ -0,0 +1,19 @@
+package com.example.bankcards.entity;
+
+public enum LedgerEntryType {
+
+    /**
+     * Начальный баланс карты при переходе на журнал.
+     */
+    OPENING,
+
+    /**
+     * Списание с карты-источника, сумма отрицательная.
+     */
+    DEBIT,
+
+    /**
+     * Зачисление на карту-получатель, сумма положительная.
+     */
+    CREDIT
+}
@@ -11,7 +11,9 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedQuery;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -28,19 +30,32 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "transactions", indexes = {
-        @Index(name = "idx_source_card", columnList = "source_card_id"),
-        @Index(name = "idx_destination_card", columnList = "destination_card_id"),
-        @Index(name = "idx_created_at", columnList = "created_at"),
-        @Index(name = "idx_status", columnList = "status")
+        @Index(name = "idx_transactions_from_card_date", columnList = "from_card_id, created_at DESC"),
+        @Index(name = "idx_transactions_to_card_date", columnList = "to_card_id, created_at DESC"),
+        @Index(name = "idx_transactions_created_id", columnList = "created_at DESC, id DESC"),
+        @Index(name = "idx_transactions_from_user_created", columnList = "from_user_id, created_at DESC, id DESC"),
+        @Index(name = "idx_transactions_to_user_created", columnList = "to_user_id, created_at DESC, id DESC"),
+        @Index(name = "idx_transactions_status_id", columnList = "status, id")
 })
+@NamedQuery(name = "Transaction.findHistoryItems",
+        query = Transaction.HISTORY_ITEM + "WHERE t.id IN :ids ORDER BY t.createdAt DESC, t.id DESC")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Transaction {
 
+    /**
+     * Строка истории сразу в TransactionDto: читаются только колонки DTO, id карт берутся
+     * из внешних ключей транзакции, сущности и прокси карт не создаются.
+     */
+    public static final String HISTORY_ITEM = "SELECT new com.example.bankcards.dto.TransactionDto(t.id, " +
+            "t.sourceCard.id, t.destinationCard.id, t.amount, CAST(t.status AS String), t.description, t.createdAt) " +
+            "FROM Transaction t ";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_id_seq")
+    @SequenceGenerator(name = "transactions_id_seq", sequenceName = "transactions_id_seq", allocationSize = 50)
     private Long id;
 
     /**
@@ -57,6 +72,19 @@ public class Transaction {
     @JoinColumn(name = "to_card_id", nullable = false)
     private Card destinationCard;
 
+    /**
+     * Владелец карты-источника. Копия cards.user_id, чтобы история пользователя
+     * читалась по индексу без соединения с cards
+     */
+    @Column(name = "from_user_id")
+    private Long fromUserId;
+
+    /**
+     * Владелец карты-получателя
+     */
+    @Column(name = "to_user_id")
+    private Long toUserId;
+
     @Column(nullable = false, precision = 15, scale = 2)
     private BigDecimal amount;
 
@@ -80,6 +108,12 @@ public class Transaction {
     @Column(name = "completed_at")
     private LocalDateTime completedAt;
 
+    /**
+     * Когда асинхронный перевод последний раз захвачен обработчиком; по нему находятся захваты упавших узлов
+     */
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
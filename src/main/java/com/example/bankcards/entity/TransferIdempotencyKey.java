@@ -0,0 +1,79 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Результат перевода, сохранённый по ключу идемпотентности клиента.
+ * Повторный запрос с тем же ключом получает этот результат без выполнения перевода.
+ */
+@Entity
+@Table(name = "transfer_idempotency_keys", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_transfer_idempotency_user_key", columnNames = {"user_id", "idempotency_key"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TransferIdempotencyKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfer_idempotency_keys_id_seq")
+    @SequenceGenerator(name = "transfer_idempotency_keys_id_seq", sequenceName = "transfer_idempotency_keys_id_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String idempotencyKey;
+
+    /**
+     * SHA-256 параметров перевода: ключ нельзя повторно использовать для другого перевода
+     */
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "transaction_id", nullable = false)
+    private Long transactionId;
+
+    @Column(name = "from_card_id", nullable = false)
+    private Long fromCardId;
+
+    @Column(name = "to_card_id", nullable = false)
+    private Long toCardId;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    @Column(length = 500)
+    private String message;
+
+    @Column(name = "completed_at", nullable = false)
+    private LocalDateTime completedAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.exception;
+
+import com.example.bankcards.dto.BatchTransferResponseDto;
+
+/**
+ * Атомарный пакет переводов отменён из-за ошибки хотя бы одного перевода.
+ * Содержит результат по каждому переводу для ответа клиенту.
+ */
+public class BatchTransferRejectedException extends RuntimeException {
+
+    private final BatchTransferResponseDto response;
+
+    public BatchTransferRejectedException(BatchTransferResponseDto response) {
+        super("Atomic batch rejected: " + response.failed() + " of " + response.total() + " transfers failed");
+        this.response = response;
+    }
+
+    public BatchTransferResponseDto getResponse() {
+        return response;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.bankcards.exception;
+
+public class DuplicateCardException extends RuntimeException {
+
+    public DuplicateCardException() {
+        super("Card with this number already exists");
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.bankcards.exception;
 
+import com.example.bankcards.dto.BatchTransferResponseDto;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -24,6 +26,34 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(TransferNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleTransferNotFound(
+            TransferNotFoundException ex) {
+
+        ErrorResponse errorResponse = new ErrorResponse(
+                404,
+                "Not Found",
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(DuplicateCardException.class)
+    public ResponseEntity<ErrorResponse> handleDuplicateCard(
+            DuplicateCardException ex) {
+
+        ErrorResponse errorResponse = new ErrorResponse(
+                409,
+                "Conflict",
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(InsufficientBalanceException.class)
     public ResponseEntity<ErrorResponse> handleInsufficientBalance(
             InsufficientBalanceException ex) {
@@ -66,6 +96,34 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidCursor(
+            InvalidCursorException ex) {
+
+        ErrorResponse errorResponse = new ErrorResponse(
+                400,
+                "Bad Request",
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidStatsRangeException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidStatsRange(
+            InvalidStatsRangeException ex) {
+
+        ErrorResponse errorResponse = new ErrorResponse(
+                400,
+                "Bad Request",
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(UnauthorizedAccessException.class)
     public ResponseEntity<ErrorResponse> handleUnauthorizedAccess(
             UnauthorizedAccessException ex) {
@@ -79,6 +137,27 @@ public class GlobalExceptionHandler {
 
         return new ResponseEntity<>(errorResponse, HttpStatus.FORBIDDEN);
     }
+
+    @ExceptionHandler(BatchTransferRejectedException.class)
+    public ResponseEntity<BatchTransferResponseDto> handleBatchTransferRejected(
+            BatchTransferRejectedException ex) {
+
+        return new ResponseEntity<>(ex.getResponse(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity<ErrorResponse> handleConcurrencyFailure(
+            ConcurrencyFailureException ex) {
+
+        ErrorResponse errorResponse = new ErrorResponse(
+                409,
+                "Conflict",
+                "Cards were modified by a concurrent operation, please retry",
+                LocalDateTime.now()
+        );
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
+    }
 }
 
 
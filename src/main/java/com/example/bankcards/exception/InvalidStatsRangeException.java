@@ -0,0 +1,10 @@
+package com.example.bankcards.exception;
+
+import java.time.LocalDate;
+
+public class InvalidStatsRangeException extends RuntimeException {
+
+    public InvalidStatsRangeException(LocalDate from, LocalDate to) {
+        super("Invalid statistics range: " + from + " is after " + to);
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.bankcards.exception;
+
+public class TransferNotFoundException extends RuntimeException {
+
+    public TransferNotFoundException(Long transactionId) {
+        super("Transfer not found with id: " + transactionId);
+    }
+}
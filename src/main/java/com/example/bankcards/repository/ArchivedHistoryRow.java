@@ -0,0 +1,26 @@
+package com.example.bankcards.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Строка истории пользователя userId для записи в архив.
+ */
+public interface ArchivedHistoryRow {
+
+    Long getUserId();
+
+    Long getId();
+
+    Long getFromCardId();
+
+    Long getToCardId();
+
+    BigDecimal getAmount();
+
+    String getStatus();
+
+    String getDescription();
+
+    LocalDateTime getCreatedAt();
+}
@@ -0,0 +1,13 @@
+package com.example.bankcards.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Проекция «карта — сумма» для агрегирующих запросов по балансам.
+ */
+public interface CardAmount {
+
+    Long getCardId();
+
+    BigDecimal getAmount();
+}
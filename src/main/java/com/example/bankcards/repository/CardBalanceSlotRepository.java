@@ -0,0 +1,47 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardBalanceSlot;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.LockOptions;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CardBalanceSlotRepository extends JpaRepository<CardBalanceSlot, CardBalanceSlot.SlotId> {
+
+    /**
+     * Блокирует слот, если он не заблокирован другой транзакцией (FOR UPDATE SKIP LOCKED).
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "" + LockOptions.SKIP_LOCKED))
+    @Query("SELECT s FROM CardBalanceSlot s WHERE s.cardId = :cardId AND s.slot = :slot")
+    Optional<CardBalanceSlot> findUnlocked(@Param("cardId") Long cardId, @Param("slot") int slot);
+
+    /**
+     * Блокирует слот, ожидая освобождения.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM CardBalanceSlot s WHERE s.cardId = :cardId AND s.slot = :slot")
+    Optional<CardBalanceSlot> findForUpdate(@Param("cardId") Long cardId, @Param("slot") int slot);
+
+    /**
+     * Блокирует все слоты карты по возрастанию номера, ожидая слоты, занятые зачислениями.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM CardBalanceSlot s WHERE s.cardId = :cardId ORDER BY s.slot")
+    List<CardBalanceSlot> findAllByCardIdForUpdate(@Param("cardId") Long cardId);
+
+    @Query("SELECT s.cardId AS cardId, SUM(s.balance) AS amount FROM CardBalanceSlot s " +
+            "WHERE s.cardId IN :cardIds GROUP BY s.cardId")
+    List<CardAmount> sumByCardIds(@Param("cardIds") Collection<Long> cardIds);
+}
@@ -0,0 +1,31 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardDailyStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CardDailyStatsRepository extends JpaRepository<CardDailyStats, CardDailyStats.DayId> {
+
+    /**
+     * Дневные итоги карты за дни from..to включительно: диапазон по первичному ключу (card_id, stats_day).
+     */
+    @Query("""
+            SELECT s FROM CardDailyStats s
+            WHERE s.cardId = :cardId AND s.day >= :from AND s.day <= :to
+            ORDER BY s.day""")
+    List<CardDailyStats> findByCardId(@Param("cardId") Long cardId,
+                                      @Param("from") LocalDate from,
+                                      @Param("to") LocalDate to);
+
+    /**
+     * Уже накопленные итоги карт за дни: агрегатор прибавляет к ним новые записи журнала.
+     */
+    List<CardDailyStats> findByCardIdInAndDayIn(Collection<Long> cardIds, Collection<LocalDate> days);
+}
@@ -0,0 +1,22 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.LedgerEntryType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Проекция «карта — день — вид записи — сумма и число записей» для дневных итогов по журналу.
+ */
+public interface CardDayAmount {
+
+    Long getCardId();
+
+    LocalDate getDay();
+
+    LedgerEntryType getType();
+
+    BigDecimal getAmount();
+
+    Long getCount();
+}
@@ -0,0 +1,11 @@
+package com.example.bankcards.repository;
+
+/**
+ * Проекция «карта — зашифрованный номер» для перешифрования без загрузки сущностей.
+ */
+public interface CardNumberRow {
+
+    Long getId();
+
+    String getCardNumber();
+}
@@ -1,21 +1,180 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.CardDto;
 import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import org.springframework.data.domain.Pageable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CardRepository extends JpaRepository<Card, Long> {
 
+    long EXACT_COUNT_BELOW = 100_000;
+
+    /**
+     * Маска номера в проекции, как Card.getMaskedCardNumber(), в том числе для карт без последних цифр
+     */
+    String MASKED_NUMBER = "CONCAT('" + Card.MASKED_NUMBER_PREFIX + "', " +
+            "COALESCE(c.lastFourDigits, '" + Card.UNKNOWN_LAST_FOUR_DIGITS + "')), ";
+
     Page<Card> findByOwner_Id(Long ownerId, Pageable pageable);
 
-    Optional<Card> findByCardNumber(String cardNumber);
+    /**
+     * Страница всех карт без count(*): читается на одну строку больше, чтобы узнать hasNext.
+     */
+    Slice<Card> findAllBy(Pageable pageable);
+
+    /**
+     * Страница карт владельца сразу в CardDto: читаются только колонки DTO,
+     * сущности и их владельцы не создаются. Баланс без слотов горячих карт.
+     */
+    @Query(value = "SELECT new com.example.bankcards.dto.CardDto(c.id, " + MASKED_NUMBER +
+            "c.cardholderName, c.expiryDate, c.status, c.balance) " +
+            "FROM Card c WHERE c.owner.id = :ownerId",
+            countQuery = "SELECT COUNT(c) FROM Card c WHERE c.owner.id = :ownerId")
+    Page<CardDto> findDtoByOwnerId(@Param("ownerId") Long ownerId, Pageable pageable);
+
+    @Query("SELECT new com.example.bankcards.dto.CardDto(c.id, " + MASKED_NUMBER +
+            "c.cardholderName, c.expiryDate, c.status, c.balance) " +
+            "FROM Card c WHERE c.owner.id = :ownerId")
+    Slice<CardDto> findDtoSliceByOwnerId(@Param("ownerId") Long ownerId, Pageable pageable);
+
+    /**
+     * Число карт по статистике планировщика PostgreSQL (pg_class.reltuples) без чтения таблицы;
+     * -1, если таблица ещё не анализировалась.
+     */
+    @Query(value = "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = CAST('cards' AS regclass)",
+            nativeQuery = true)
+    long estimateCount();
+
+    /**
+     * Оценка планировщика для большой таблицы, точный count для небольшой или неанализированной.
+     */
+    default long approximateCount() {
+        long estimate = estimateCount();
+        return estimate < EXACT_COUNT_BELOW ? count() : estimate;
+    }
+
+    /**
+     * Поиск по номеру карты — одна проба уникального индекса по слепому индексу номера.
+     */
+    Optional<Card> findByCardNumberHash(String cardNumberHash);
+
+    boolean existsByCardNumberHash(String cardNumberHash);
+
+    /**
+     * Карты без слепого индекса или последних цифр номера, созданные до появления этих колонок,
+     * по возрастанию id.
+     */
+    @Query("SELECT c FROM Card c WHERE c.id > :afterId " +
+            "AND (c.cardNumberHash IS NULL OR c.lastFourDigits IS NULL) ORDER BY c.id")
+    List<Card> findMissingNumberColumnsAfter(@Param("afterId") Long afterId, Limit limit);
 
-    boolean existsByCardNumber(String cardNumber);
+    /**
+     * Зашифрованные номера карт с id больше afterId по возрастанию id, без загрузки сущностей.
+     */
+    @Query("SELECT c.id AS id, c.cardNumber AS cardNumber FROM Card c WHERE c.id > :afterId ORDER BY c.id")
+    List<CardNumberRow> findNumbersAfter(@Param("afterId") Long afterId, Limit limit);
 
     Optional<Card> findByIdAndOwner_Id(Long id, Long ownerId);
-}
\ No newline at end of file
+
+    /**
+     * Загружает карты с блокировкой строк (SELECT ... FOR UPDATE).
+     * Строки блокируются по возрастанию id, поэтому встречные переводы
+     * между одними и теми же картами не приводят к взаимной блокировке.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Card c WHERE c.id IN :ids ORDER BY c.id")
+    List<Card> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Видимые балансы всех карт: cards.balance плюс слоты горячих карт.
+     */
+    @Query("SELECT c.id AS cardId, c.balance + COALESCE((SELECT SUM(s.balance) FROM CardBalanceSlot s " +
+            "WHERE s.cardId = c.id), 0) AS amount FROM Card c")
+    List<CardAmount> findAllBalances();
+
+    @Query("SELECT c.id FROM Card c WHERE c.hot = true")
+    List<Long> findHotIds();
+
+    /**
+     * Переводит в EXPIRED до limit активных карт со сроком в [from, today) одним UPDATE без загрузки сущностей.
+     * Карты выбираются по idx_cards_expiry_date; строки, заблокированные переводами, пропускаются
+     * (FOR UPDATE SKIP LOCKED) и достаются следующему проходу.
+     */
+    @Modifying
+    @Query(value = "UPDATE cards SET status = 'EXPIRED', updated_at = :now, version = version + 1 " +
+            "WHERE id IN (SELECT id FROM cards " +
+            "WHERE expiry_date >= :from AND expiry_date < :today AND status = 'ACTIVE' " +
+            "ORDER BY expiry_date LIMIT :limit FOR UPDATE SKIP LOCKED)",
+            nativeQuery = true)
+    int expireActive(@Param("from") LocalDate from,
+                     @Param("today") LocalDate today,
+                     @Param("now") LocalDateTime now,
+                     @Param("limit") int limit);
+
+    /**
+     * Остались ли активные карты со сроком в [from, today), в том числе пропущенные проходом из-за блокировки.
+     */
+    boolean existsByStatusAndExpiryDateGreaterThanEqualAndExpiryDateBefore(CardStatus status, LocalDate from,
+                                                                          LocalDate today);
+
+    @Modifying
+    @Query("UPDATE Card c SET c.balance = :balance, c.version = c.version + 1 WHERE c.id = :cardId")
+    int updateBalance(@Param("cardId") Long cardId, @Param("balance") BigDecimal balance);
+
+    /**
+     * Списывает сумму одним UPDATE, если карта принадлежит владельцу, активна,
+     * не просрочена и на ней достаточно средств. Возвращает число изменённых строк.
+     * Версия увеличивается, чтобы карта, загруженная до списания, не перезаписала баланс при сохранении.
+     */
+    @Modifying
+    @Query("UPDATE Card c SET c.balance = c.balance - :amount, c.updatedAt = :now, c.version = c.version + 1 " +
+            "WHERE c.id = :cardId AND c.owner.id = :ownerId AND c.balance >= :amount " +
+            "AND c.status = :status AND c.expiryDate >= :today")
+    int debitIfAvailable(@Param("cardId") Long cardId,
+                         @Param("ownerId") Long ownerId,
+                         @Param("amount") BigDecimal amount,
+                         @Param("status") CardStatus status,
+                         @Param("today") LocalDate today,
+                         @Param("now") LocalDateTime now);
+
+    /**
+     * Зачисляет сумму одним UPDATE, если карта принадлежит владельцу, активна
+     * и не просрочена. Возвращает число изменённых строк. Версия увеличивается, как при списании.
+     */
+    @Modifying
+    @Query("UPDATE Card c SET c.balance = c.balance + :amount, c.updatedAt = :now, c.version = c.version + 1 " +
+            "WHERE c.id = :cardId AND c.owner.id = :ownerId " +
+            "AND c.status = :status AND c.expiryDate >= :today")
+    int creditIfActive(@Param("cardId") Long cardId,
+                       @Param("ownerId") Long ownerId,
+                       @Param("amount") BigDecimal amount,
+                       @Param("status") CardStatus status,
+                       @Param("today") LocalDate today,
+                       @Param("now") LocalDateTime now);
+
+    default int debitIfAvailable(Long cardId, Long ownerId, BigDecimal amount) {
+        return debitIfAvailable(cardId, ownerId, amount, CardStatus.ACTIVE, LocalDate.now(), LocalDateTime.now());
+    }
+
+    default int creditIfActive(Long cardId, Long ownerId, BigDecimal amount) {
+        return creditIfActive(cardId, ownerId, amount, CardStatus.ACTIVE, LocalDate.now(), LocalDateTime.now());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    /**
+     * Сумма записей карты, созданных не раньше since: диапазон по индексу (card_id, created_at).
+     */
+    @Query("SELECT COALESCE(SUM(e.amount), 0) FROM LedgerEntry e WHERE e.cardId = :cardId AND e.createdAt >= :since")
+    BigDecimal sumSince(@Param("cardId") Long cardId, @Param("since") LocalDateTime since);
+
+    @Query("SELECT COALESCE(SUM(e.amount), 0) FROM LedgerEntry e WHERE e.cardId = :cardId")
+    BigDecimal sumAll(@Param("cardId") Long cardId);
+
+    /**
+     * Суммы записей после снимков по всем картам.
+     */
+    @Query("""
+            SELECT e.cardId AS cardId, SUM(e.amount) AS amount
+            FROM LedgerEntry e LEFT JOIN CardBalanceSnapshot s ON s.cardId = e.cardId
+            WHERE s.asOf IS NULL OR e.createdAt >= s.asOf
+            GROUP BY e.cardId""")
+    List<CardAmount> sumAfterSnapshot();
+
+    /**
+     * Суммы записей после снимков, созданных раньше cutoff: то, что компактор переносит в снимки.
+     */
+    @Query("""
+            SELECT e.cardId AS cardId, SUM(e.amount) AS amount
+            FROM LedgerEntry e LEFT JOIN CardBalanceSnapshot s ON s.cardId = e.cardId
+            WHERE (s.asOf IS NULL OR e.createdAt >= s.asOf) AND e.createdAt < :cutoff
+            GROUP BY e.cardId""")
+    List<CardAmount> sumToCompact(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Баланс каждой карты, пересчитанный по всему журналу.
+     */
+    @Query("SELECT e.cardId AS cardId, SUM(e.amount) AS amount FROM LedgerEntry e GROUP BY e.cardId")
+    List<CardAmount> sumByCard();
+
+    /**
+     * Суммы и число записей переводов, созданных в [from, to), по картам, дням и видам записей:
+     * то, что агрегатор складывает в card_daily_stats. Диапазон по индексу created_at.
+     */
+    @Query("""
+            SELECT e.cardId AS cardId, CAST(e.createdAt AS LocalDate) AS day, e.type AS type,
+                   SUM(e.amount) AS amount, COUNT(e) AS count
+            FROM LedgerEntry e
+            WHERE e.transactionId IS NOT NULL AND e.createdAt >= :from AND e.createdAt < :to
+            GROUP BY e.cardId, CAST(e.createdAt AS LocalDate), e.type""")
+    List<CardDayAmount> sumByCardDay(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * То же для одной карты: ещё не сложенный хвост журнала, диапазон по индексу (card_id, created_at).
+     */
+    @Query("""
+            SELECT e.cardId AS cardId, CAST(e.createdAt AS LocalDate) AS day, e.type AS type,
+                   SUM(e.amount) AS amount, COUNT(e) AS count
+            FROM LedgerEntry e
+            WHERE e.cardId = :cardId AND e.transactionId IS NOT NULL
+              AND e.createdAt >= :from AND e.createdAt < :to
+            GROUP BY e.cardId, CAST(e.createdAt AS LocalDate), e.type""")
+    List<CardDayAmount> sumByDay(@Param("cardId") Long cardId,
+                                 @Param("from") LocalDateTime from,
+                                 @Param("to") LocalDateTime to);
+
+    /**
+     * Переводы, записи которых в сумме не дают ноль.
+     */
+    @Query("""
+            SELECT e.transactionId FROM LedgerEntry e
+            WHERE e.transactionId IS NOT NULL
+            GROUP BY e.transactionId
+            HAVING SUM(e.amount) <> 0""")
+    List<Long> findUnbalancedTransactionIds();
+}
@@ -1,19 +1,220 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.TransactionDto;
 import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.LockOptions;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
 
+    int EXPORT_FETCH_SIZE = 500;
+
+    String ARCHIVE_ROW = "t.id AS id, t.sourceCard.id AS fromCardId, t.destinationCard.id AS toCardId, " +
+            "t.amount AS amount, CAST(t.status AS String) AS status, t.description AS description, " +
+            "t.createdAt AS createdAt FROM Transaction t WHERE t.createdAt >= :from AND t.createdAt < :to ";
+
     @Query("SELECT t FROM Transaction t WHERE t.sourceCard.id = :cardId OR t.destinationCard.id = :cardId ORDER BY t.createdAt DESC")
     Page<Transaction> findByCardId(@Param("cardId") Long cardId, Pageable pageable);
 
-    @Query("SELECT t FROM Transaction t WHERE t.sourceCard.owner.id = :userId OR t.destinationCard.owner.id = :userId ORDER BY t.createdAt DESC")
-    Page<Transaction> findByUserId(@Param("userId") Long userId, Pageable pageable);
+    @Query(value = Transaction.HISTORY_ITEM +
+            "WHERE t.sourceCard.owner.id = :userId OR t.destinationCard.owner.id = :userId " +
+            "ORDER BY t.createdAt DESC, t.id DESC",
+            countQuery = "SELECT COUNT(t) FROM Transaction t " +
+                    "WHERE t.sourceCard.owner.id = :userId OR t.destinationCard.owner.id = :userId")
+    Page<TransactionDto> findByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Первая страница истории без подсчёта общего числа строк.
+     * Владелец проверяется подзапросом по картам, а не соединением, чтобы транзакции читались
+     * по индексу (created_at, id) в порядке выдачи и чтение останавливалось на лимите.
+     */
+    @Query(Transaction.HISTORY_ITEM + "WHERE (t.sourceCard.id IN (SELECT c.id FROM Card c WHERE c.owner.id = :userId) " +
+            "OR t.destinationCard.id IN (SELECT c.id FROM Card c WHERE c.owner.id = :userId)) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionDto> findLatestByUserId(@Param("userId") Long userId, Pageable limit);
+
+    /**
+     * Страница истории после позиции (createdAt, id): поиск по индексу вместо пропуска OFFSET строк.
+     * Условие createdAt <= :createdAt повторяет условие позиции в виде, пригодном для диапазона по индексу.
+     */
+    @Query(Transaction.HISTORY_ITEM + "WHERE t.createdAt <= :createdAt " +
+            "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+            "AND (t.sourceCard.id IN (SELECT c.id FROM Card c WHERE c.owner.id = :userId) " +
+            "OR t.destinationCard.id IN (SELECT c.id FROM Card c WHERE c.owner.id = :userId)) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionDto> findByUserIdBefore(@Param("userId") Long userId,
+                                            @Param("createdAt") LocalDateTime createdAt,
+                                            @Param("id") Long id,
+                                            Pageable limit);
+
+    /**
+     * Id транзакций страницы истории пользователя по владельцам карт, сохранённым в транзакции.
+     * Каждая ветвь читает только индекс (owner, created_at, id) и останавливается на window строках.
+     * Перевод между своими картами попадает в обе ветви, UNION оставляет одну копию
+     * среди не более чем 2 * window прочитанных строк.
+     * Владелец в ORDER BY ветви не меняет порядок, но позволяет H2 читать индекс без сортировки.
+     */
+    @Query(value = "SELECT h.id FROM (" +
+            "(SELECT id, created_at FROM transactions WHERE from_user_id = :userId " +
+            "ORDER BY from_user_id, created_at DESC, id DESC LIMIT :window) " +
+            "UNION " +
+            "(SELECT id, created_at FROM transactions WHERE to_user_id = :userId " +
+            "ORDER BY to_user_id, created_at DESC, id DESC LIMIT :window)" +
+            ") h ORDER BY h.created_at DESC, h.id DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Long> findHistoryIds(@Param("userId") Long userId,
+                              @Param("offset") long offset,
+                              @Param("limit") int limit,
+                              @Param("window") long window);
+
+    /**
+     * Id транзакций истории пользователя после позиции (createdAt, id), по тем же индексам.
+     */
+    @Query(value = "SELECT h.id FROM (" +
+            "(SELECT id, created_at FROM transactions WHERE from_user_id = :userId AND created_at <= :createdAt " +
+            "AND (created_at < :createdAt OR (created_at = :createdAt AND id < :id)) " +
+            "ORDER BY from_user_id, created_at DESC, id DESC LIMIT :limit) " +
+            "UNION " +
+            "(SELECT id, created_at FROM transactions WHERE to_user_id = :userId AND created_at <= :createdAt " +
+            "AND (created_at < :createdAt OR (created_at = :createdAt AND id < :id)) " +
+            "ORDER BY to_user_id, created_at DESC, id DESC LIMIT :limit)" +
+            ") h ORDER BY h.created_at DESC, h.id DESC LIMIT :limit", nativeQuery = true)
+    List<Long> findHistoryIdsBefore(@Param("userId") Long userId,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("id") Long id,
+                                    @Param("limit") int limit);
+
+    /**
+     * Вся история пользователя по владельцам карт для выгрузки, новые сначала.
+     * Строки читаются курсором JDBC порциями по fetchSize, поэтому должны потребляться
+     * внутри транзакции; проекции не попадают в контекст персистентности.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query(Transaction.HISTORY_ITEM + "WHERE t.fromUserId = :userId OR t.toUserId = :userId " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    Stream<TransactionDto> streamHistory(@Param("userId") Long userId);
+
+    /**
+     * То же через карты пользователя, пока у старых транзакций не заполнены владельцы.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query(Transaction.HISTORY_ITEM + "WHERE t.sourceCard.id IN (SELECT c.id FROM Card c WHERE c.owner.id = :userId) " +
+            "OR t.destinationCard.id IN (SELECT c.id FROM Card c WHERE c.owner.id = :userId) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    Stream<TransactionDto> streamHistoryByCards(@Param("userId") Long userId);
+
+    @Query(value = "SELECT COUNT(*) FROM transactions WHERE from_user_id = :userId OR to_user_id = :userId",
+            nativeQuery = true)
+    long countHistory(@Param("userId") Long userId);
+
+    /**
+     * Строки истории по id, новые сначала. Запрос объявлен как @NamedQuery в Transaction:
+     * Hibernate разбирает его один раз при старте, а текст @Query Spring Data разбирает при каждом вызове.
+     */
+    List<TransactionDto> findHistoryItems(@Param("ids") Collection<Long> ids);
+
+    boolean existsByFromUserIdIsNull();
+
+    /**
+     * Заполняет владельцев карт у очередной пачки транзакций, записанных до появления колонок.
+     * Возвращает число заполненных строк.
+     */
+    @Modifying
+    @Query(value = "UPDATE transactions t SET " +
+            "from_user_id = (SELECT c.user_id FROM cards c WHERE c.id = t.from_card_id), " +
+            "to_user_id = (SELECT c.user_id FROM cards c WHERE c.id = t.to_card_id) " +
+            "WHERE t.id IN (SELECT id FROM transactions WHERE from_user_id IS NULL LIMIT :chunkSize)",
+            nativeQuery = true)
+    int backfillOwners(@Param("chunkSize") int chunkSize);
+
+    /**
+     * Строки истории отправителей за [from, to) для архива: по пользователю, у пользователя новые сначала.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query("SELECT t.fromUserId AS userId, " + ARCHIVE_ROW + "ORDER BY t.fromUserId, t.createdAt DESC, t.id DESC")
+    Stream<ArchivedHistoryRow> streamArchiveRowsBySender(@Param("from") LocalDateTime from,
+                                                         @Param("to") LocalDateTime to);
+
+    /**
+     * Строки истории получателей за [from, to) для архива, кроме переводов между своими картами:
+     * они уже есть среди строк отправителя.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query("SELECT t.toUserId AS userId, " + ARCHIVE_ROW + "AND t.toUserId <> t.fromUserId " +
+            "ORDER BY t.toUserId, t.createdAt DESC, t.id DESC")
+    Stream<ArchivedHistoryRow> streamArchiveRowsByReceiver(@Param("from") LocalDateTime from,
+                                                           @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Query("DELETE FROM Transaction t WHERE t.createdAt >= :from AND t.createdAt < :to")
+    int deleteCreatedBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("SELECT MIN(t.createdAt) FROM Transaction t")
+    Optional<LocalDateTime> findOldestCreatedAt();
+
+    /**
+     * Создаёт месячные секции transactions после последней существующей вплоть до месяца,
+     * отстоящего от текущего на monthsAhead. Возвращает число созданных секций.
+     */
+    @Query(value = "SELECT transactions_create_partitions(:monthsAhead)", nativeQuery = true)
+    int createPartitions(@Param("monthsAhead") int monthsAhead);
+
+    /**
+     * Отсоединяет секции, все строки которых старше olderThan; таблицы секций остаются в базе.
+     * Возвращает число отсоединённых секций.
+     */
+    @Query(value = "SELECT transactions_detach_partitions(:olderThan)", nativeQuery = true)
+    int detachPartitions(@Param("olderThan") LocalDateTime olderThan);
+
+    /**
+     * Выбирает транзакции в статусе с блокировкой, пропуская строки,
+     * уже заблокированные другим обработчиком (SELECT ... FOR UPDATE SKIP LOCKED).
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "" + LockOptions.SKIP_LOCKED))
+    @Query("SELECT t FROM Transaction t WHERE t.status = :status ORDER BY t.id")
+    List<Transaction> findForUpdateSkipLocked(@Param("status") TransactionStatus status, Pageable pageable);
+
+    /**
+     * Выбирает захваченные до claimedBefore транзакции с блокировкой, пропуская строки,
+     * которые сейчас обрабатываются (SELECT ... FOR UPDATE SKIP LOCKED).
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "" + LockOptions.SKIP_LOCKED))
+    @Query("SELECT t FROM Transaction t WHERE t.status = :status AND t.claimedAt < :claimedBefore ORDER BY t.id")
+    List<Transaction> findClaimedBeforeForUpdateSkipLocked(@Param("status") TransactionStatus status,
+                                                           @Param("claimedBefore") LocalDateTime claimedBefore,
+                                                           Pageable pageable);
+
+    /**
+     * Блокирует транзакции по возрастанию id, дожидаясь освобождения строк.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Transaction t WHERE t.id IN :ids ORDER BY t.id")
+    List<Transaction> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE Transaction t SET t.status = :to WHERE t.id IN :ids AND t.status = :from")
+    int updateStatus(@Param("ids") Collection<Long> ids,
+                     @Param("from") TransactionStatus from,
+                     @Param("to") TransactionStatus to);
 }
\ No newline at end of file
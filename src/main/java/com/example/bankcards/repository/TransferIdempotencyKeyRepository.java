@@ -0,0 +1,35 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.TransferIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface TransferIdempotencyKeyRepository extends JpaRepository<TransferIdempotencyKey, Long> {
+
+    /**
+     * Ключ, созданный не раньше createdFrom; более старый ключ истёк, даже если ещё не удалён.
+     */
+    Optional<TransferIdempotencyKey> findByUserIdAndIdempotencyKeyAndCreatedAtGreaterThanEqual(
+            Long userId, String idempotencyKey, LocalDateTime createdFrom);
+
+    @Modifying
+    @Query("DELETE FROM TransferIdempotencyKey k WHERE k.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * Удаляет истёкший, но ещё не удалённый ключ, чтобы его можно было использовать снова.
+     */
+    @Modifying
+    @Query("DELETE FROM TransferIdempotencyKey k WHERE k.userId = :userId " +
+            "AND k.idempotencyKey = :idempotencyKey AND k.createdAt < :before")
+    int deleteExpired(@Param("userId") Long userId,
+                      @Param("idempotencyKey") String idempotencyKey,
+                      @Param("before") LocalDateTime before);
+}
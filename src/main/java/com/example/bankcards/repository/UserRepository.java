@@ -1,16 +1,22 @@
 package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    long EXACT_COUNT_BELOW = 100_000;
+
     Optional<User> findByUsername(String username);
 
     Optional<User> findByEmail(String email);
@@ -18,4 +24,31 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByUsername(String username);
 
     boolean existsByEmail(String email);
+
+    /**
+     * Страница всех пользователей без count(*): читается на одну строку больше, чтобы узнать hasNext.
+     */
+    Slice<User> findAllBy(Pageable pageable);
+
+    /**
+     * Те из ids, для которых есть пользователь.
+     */
+    @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Число пользователей по статистике планировщика PostgreSQL (pg_class.reltuples) без чтения таблицы;
+     * -1, если таблица ещё не анализировалась.
+     */
+    @Query(value = "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = CAST('users' AS regclass)",
+            nativeQuery = true)
+    long estimateCount();
+
+    /**
+     * Оценка планировщика для большой таблицы, точный count для небольшой или неанализированной.
+     */
+    default long approximateCount() {
+        long estimate = estimateCount();
+        return estimate < EXACT_COUNT_BELOW ? count() : estimate;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.CardStatus;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Записывает пачку импортируемых карт через COPY: строки копируются во временную таблицу
+ * card_import_rows и одним INSERT ... SELECT переносятся в cards. Карты с номером, который уже есть
+ * в cards, пропускаются по уникальному индексу card_number_hash (ON CONFLICT DO NOTHING),
+ * поэтому одновременное создание той же карты не срывает пачку.
+ * id берутся блоками из cards_id_seq так же, как их резервирует Hibernate (allocationSize = 50).
+ */
+@Component
+@RequiredArgsConstructor
+public class CardCopyWriter {
+
+    static final int ID_BLOCK = 50;
+
+    private static final String CREATE_STAGING = """
+            CREATE TEMP TABLE IF NOT EXISTS card_import_rows (
+                id BIGINT,
+                card_number_encrypted VARCHAR(500),
+                card_number_hash VARCHAR(64),
+                last_four_digits VARCHAR(4),
+                cardholder_name VARCHAR(100),
+                expiry_date DATE,
+                user_id BIGINT
+            ) ON COMMIT DELETE ROWS""";
+
+    private static final String COPY_STAGING = "COPY card_import_rows (id, card_number_encrypted, card_number_hash, "
+            + "last_four_digits, cardholder_name, expiry_date, user_id) FROM STDIN (FORMAT csv)";
+
+    private static final String INSERT_CARDS = """
+            INSERT INTO cards (id, card_number_encrypted, card_number_hash, last_four_digits, cardholder_name,
+                               expiry_date, user_id, status, balance, hot, created_at, updated_at, version)
+            SELECT id, card_number_encrypted, card_number_hash, last_four_digits, cardholder_name,
+                   expiry_date, user_id, ?, 0, FALSE, ?, ?, 0
+            FROM card_import_rows
+            ON CONFLICT (card_number_hash) DO NOTHING
+            RETURNING card_number_hash""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+
+    /**
+     * Вставляет карты и возвращает слепые индексы тех, что пропущены как уже существующие.
+     * Номера внутри пачки должны быть различны.
+     */
+    @Transactional
+    public Set<String> write(List<CardImportRow> rows) {
+        List<Long> ids = reserveIds(rows.size());
+        jdbcTemplate.execute(CREATE_STAGING);
+        try {
+            PGConnection connection = DataSourceUtils.getConnection(dataSource).unwrap(PGConnection.class);
+            connection.getCopyAPI().copyIn(COPY_STAGING, new StringReader(toCsv(rows, ids)));
+        } catch (SQLException ex) {
+            throw jdbcTemplate.getExceptionTranslator().translate("COPY card_import_rows", COPY_STAGING, ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to copy imported cards", ex);
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Set<String> skipped = new HashSet<>();
+        rows.forEach(row -> skipped.add(row.cardNumberHash()));
+        jdbcTemplate.queryForList(INSERT_CARDS, String.class, CardStatus.ACTIVE.name(), now, now)
+                .forEach(skipped::remove);
+        return skipped;
+    }
+
+    /**
+     * Значение последовательности v закрепляет за вызывающим id v - 49 .. v.
+     */
+    private List<Long> reserveIds(int count) {
+        int blocks = (count + ID_BLOCK - 1) / ID_BLOCK;
+        return jdbcTemplate.queryForList("SELECT nextval('cards_id_seq') FROM generate_series(1, ?)",
+                Long.class, blocks);
+    }
+
+    private static String toCsv(List<CardImportRow> rows, List<Long> ids) {
+        StringBuilder csv = new StringBuilder(rows.size() * 192);
+        for (int i = 0; i < rows.size(); i++) {
+            CardImportRow row = rows.get(i);
+            long id = ids.get(i / ID_BLOCK) - ID_BLOCK + 1 + i % ID_BLOCK;
+            csv.append(id).append(',')
+                    .append(row.cardNumber()).append(',')
+                    .append(row.cardNumberHash()).append(',')
+                    .append(row.lastFourDigits()).append(',')
+                    .append('"').append(row.cardholderName().replace("\"", "\"\"")).append('"').append(',')
+                    .append(row.expiryDate()).append(',')
+                    .append(row.ownerId()).append('\n');
+        }
+        return csv.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Переводит в EXPIRED активные карты с истёкшим сроком: Card.updateStatusBasedOnExpiry срабатывает
+ * только при сохранении сущности, и без прохода такие карты остаются ACTIVE в базе.
+ * Проход идёт пачками по cards.expiry-sweep.chunk-size, каждая — один UPDATE в своей транзакции,
+ * строки, занятые переводами, пропускаются и не задерживают ни перевод, ни проход.
+ * После полного прохода без пропусков следующий читает только сроки с прошлой даты прохода.
+ * Переведённые карты считаются в cards.expiry.swept, скорость пишется в лог.
+ */
+@Slf4j
+@Component
+public class CardExpirySweeper {
+
+    /**
+     * Нижняя граница сроков для первого прохода после запуска.
+     */
+    static final LocalDate EPOCH = LocalDate.of(1970, 1, 1);
+
+    private final CardService cardService;
+    private final int chunkSize;
+    private final Counter swept;
+
+    /**
+     * Все активные карты со сроком раньше этой даты уже переведены в EXPIRED.
+     */
+    private volatile LocalDate sweptBefore = EPOCH;
+
+    public CardExpirySweeper(CardService cardService,
+                             MeterRegistry meterRegistry,
+                             @Value("${cards.expiry-sweep.chunk-size:1000}") int chunkSize) {
+        this.cardService = cardService;
+        this.chunkSize = chunkSize;
+        this.swept = Counter.builder("cards.expiry.swept")
+                .description("Active cards moved to EXPIRED by the expiry sweeper")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${cards.expiry-sweep.delay-ms:600000}")
+    public int sweep() {
+        LocalDate from = sweptBefore;
+        LocalDate today = LocalDate.now();
+        if (!from.isBefore(today)) {
+            return 0;
+        }
+
+        long started = System.nanoTime();
+        int total = 0;
+        int chunk;
+        do {
+            chunk = cardService.expireCards(from, today, chunkSize);
+            total += chunk;
+            swept.increment(chunk);
+        } while (chunk == chunkSize);
+
+        if (!cardService.hasActiveExpired(from, today)) {
+            sweptBefore = today;
+        }
+        if (total > 0) {
+            double seconds = Math.max((System.nanoTime() - started) / 1_000_000_000.0, 0.001);
+            log.info("Expired {} card(s) in {} s ({} rows/s)",
+                    total, String.format("%.1f", seconds), Math.round(total / seconds));
+        }
+        return total;
+    }
+}
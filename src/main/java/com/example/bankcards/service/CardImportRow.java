@@ -0,0 +1,17 @@
+package com.example.bankcards.service;
+
+import java.time.LocalDate;
+
+/**
+ * Проверенная строка импорта карт: номер уже зашифрован, слепой индекс и последние цифры посчитаны.
+ */
+record CardImportRow(
+        long line,
+        String cardNumber,
+        String cardNumberHash,
+        String lastFourDigits,
+        String cardholderName,
+        LocalDate expiryDate,
+        Long ownerId
+) {
+}
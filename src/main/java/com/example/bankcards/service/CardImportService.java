@@ -0,0 +1,238 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardImportRejectDto;
+import com.example.bankcards.dto.CardImportResultDto;
+import com.example.bankcards.dto.CreateCardRequestDto;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый импорт карт из CSV: card_number,cardholder_name,expiry_date,owner_id, строка заголовка необязательна.
+ * Файл читается потоком пачками по cards.import.chunk-size строк. Пока пачка записывается через COPY
+ * (CardCopyWriter), следующая уже разбирается, проверяется по правилам CreateCardRequestDto
+ * и шифруется на cards.import.workers потоках, так что в памяти не больше двух пачек.
+ * Каждая пачка фиксируется своей транзакцией. Отклонённые строки считаются все,
+ * а в ответ попадают первые cards.import.max-reported-rejects с номером строки и причиной.
+ */
+@Slf4j
+@Service
+public class CardImportService {
+
+    private static final String HEADER = "card_number,";
+    private static final int COLUMNS = 4;
+
+    private final CardCopyWriter cardCopyWriter;
+    private final UserRepository userRepository;
+    private final EncryptionUtil encryptionUtil;
+    private final Validator validator;
+    private final int chunkSize;
+    private final int maxReportedRejects;
+    private final ForkJoinPool workers;
+
+    public CardImportService(CardCopyWriter cardCopyWriter,
+                             UserRepository userRepository,
+                             EncryptionUtil encryptionUtil,
+                             Validator validator,
+                             @Value("${cards.import.chunk-size:10000}") int chunkSize,
+                             @Value("${cards.import.workers:0}") int workers,
+                             @Value("${cards.import.max-reported-rejects:1000}") int maxReportedRejects) {
+        this.cardCopyWriter = cardCopyWriter;
+        this.userRepository = userRepository;
+        this.encryptionUtil = encryptionUtil;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+        this.maxReportedRejects = maxReportedRejects;
+        this.workers = new ForkJoinPool(workers > 0 ? workers : Runtime.getRuntime().availableProcessors());
+    }
+
+    public CardImportResultDto importCards(InputStream csv) {
+        Report report = new Report(maxReportedRejects);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            CompletableFuture<List<Parsed>> pending = null;
+            List<Line> chunk = new ArrayList<>(chunkSize);
+            long number = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                number++;
+                if (text.isBlank() || (number == 1 && text.startsWith(HEADER))) {
+                    continue;
+                }
+                chunk.add(new Line(number, text));
+                if (chunk.size() == chunkSize) {
+                    pending = next(chunk, pending, report);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pending = next(chunk, pending, report);
+            }
+            if (pending != null) {
+                load(pending.join(), report);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to read card import file", ex);
+        }
+        log.info("Imported {} of {} card(s), {} rejected", report.imported, report.lines, report.rejected);
+        return report.toDto();
+    }
+
+    /**
+     * Отдаёт пачку на разбор и, пока она разбирается, записывает предыдущую.
+     */
+    private CompletableFuture<List<Parsed>> next(List<Line> chunk, CompletableFuture<List<Parsed>> pending,
+                                                 Report report) {
+        report.lines += chunk.size();
+        CompletableFuture<List<Parsed>> parsing = CompletableFuture.supplyAsync(
+                () -> chunk.parallelStream().map(this::parse).toList(), workers);
+        if (pending != null) {
+            load(pending.join(), report);
+        }
+        return parsing;
+    }
+
+    private void load(List<Parsed> chunk, Report report) {
+        Map<String, CardImportRow> rows = new LinkedHashMap<>();
+        for (Parsed parsed : chunk) {
+            if (parsed.reject() != null) {
+                report.reject(parsed.line(), parsed.reject());
+                continue;
+            }
+            CardImportRow first = rows.putIfAbsent(parsed.row().cardNumberHash(), parsed.row());
+            if (first != null) {
+                report.reject(parsed.line(), "Duplicate of line " + first.line());
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        Set<Long> owners = rows.values().stream().map(CardImportRow::ownerId).collect(Collectors.toSet());
+        Set<Long> existing = new HashSet<>(userRepository.findExistingIds(owners));
+        List<CardImportRow> accepted = new ArrayList<>(rows.size());
+        for (CardImportRow row : rows.values()) {
+            if (existing.contains(row.ownerId())) {
+                accepted.add(row);
+            } else {
+                report.reject(row.line(), "User not found: " + row.ownerId());
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        Set<String> skipped = cardCopyWriter.write(accepted);
+        for (CardImportRow row : accepted) {
+            if (skipped.contains(row.cardNumberHash())) {
+                report.reject(row.line(), "Card with this number already exists");
+            }
+        }
+        report.imported += accepted.size() - skipped.size();
+    }
+
+    /**
+     * Разбирает и проверяет строку; номер шифруется только у прошедших проверку.
+     */
+    private Parsed parse(Line line) {
+        String[] columns = line.text().split(",", -1);
+        if (columns.length != COLUMNS) {
+            return Parsed.rejected(line.number(), "Expected " + COLUMNS
+                    + " columns: card_number,cardholder_name,expiry_date,owner_id");
+        }
+        String cardNumber = columns[0].trim();
+        String cardholderName = columns[1].trim();
+        LocalDate expiryDate;
+        Long ownerId;
+        try {
+            expiryDate = LocalDate.parse(columns[2].trim());
+        } catch (DateTimeParseException ex) {
+            return Parsed.rejected(line.number(), "Invalid expiry date: " + columns[2].trim());
+        }
+        try {
+            ownerId = Long.valueOf(columns[3].trim());
+        } catch (NumberFormatException ex) {
+            return Parsed.rejected(line.number(), "Invalid owner id: " + columns[3].trim());
+        }
+
+        Set<ConstraintViolation<CreateCardRequestDto>> violations =
+                validator.validate(new CreateCardRequestDto(cardNumber, cardholderName, expiryDate));
+        if (!violations.isEmpty()) {
+            return Parsed.rejected(line.number(), violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+
+        return new Parsed(line.number(), new CardImportRow(line.number(), encryptionUtil.encrypt(cardNumber),
+                encryptionUtil.blindIndex(cardNumber), cardNumber.substring(12), cardholderName, expiryDate,
+                ownerId), null);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private record Line(long number, String text) {
+    }
+
+    /**
+     * Результат разбора строки: проверенная строка или причина отказа.
+     */
+    private record Parsed(long line, CardImportRow row, String reject) {
+
+        static Parsed rejected(long line, String reason) {
+            return new Parsed(line, null, reason);
+        }
+    }
+
+    private static final class Report {
+
+        private final int maxReported;
+        private final List<CardImportRejectDto> rejects = new ArrayList<>();
+        private long lines;
+        private long imported;
+        private long rejected;
+
+        Report(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        void reject(long line, String reason) {
+            rejected++;
+            if (rejects.size() < maxReported) {
+                rejects.add(new CardImportRejectDto(line, reason));
+            }
+        }
+
+        CardImportResultDto toDto() {
+            List<CardImportRejectDto> sorted = new ArrayList<>(rejects);
+            sorted.sort(Comparator.comparingLong(CardImportRejectDto::line));
+            return new CardImportResultDto(lines, imported, rejected, sorted, rejected > rejects.size());
+        }
+    }
+}
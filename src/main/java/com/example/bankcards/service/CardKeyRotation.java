@@ -0,0 +1,47 @@
+package com.example.bankcards.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Запускает перешифрование номеров карт после смены encryption.key-version, пачками по
+ * encryption.rotation.chunk-size. Пока оно идёт, прежний ключ должен оставаться в encryption.previous:
+ * номера читаются под обоими ключами. Сбой пачки откатывает только её, следующий запуск
+ * продолжит с контрольной точки; после полного прохода работа закончена.
+ */
+@Slf4j
+@Component
+public class CardKeyRotation {
+
+    private final CardKeyRotationService rotationService;
+    private final int chunkSize;
+
+    private volatile boolean done;
+
+    public CardKeyRotation(CardKeyRotationService rotationService,
+                           @Value("${encryption.rotation.chunk-size:1000}") int chunkSize) {
+        this.rotationService = rotationService;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(fixedDelayString = "${encryption.rotation.delay-ms:60000}")
+    public void run() {
+        if (done) {
+            return;
+        }
+        long started = System.nanoTime();
+        long cards = 0;
+        int chunk;
+        while ((chunk = rotationService.rotateChunk(chunkSize)) > 0) {
+            cards += chunk;
+        }
+        done = true;
+        if (cards > 0) {
+            double seconds = Math.max((System.nanoTime() - started) / 1_000_000_000.0, 0.001);
+            log.info("Passed {} card(s) for key rotation in {} s ({} cards/s)",
+                    cards, String.format("%.1f", seconds), Math.round(cards / seconds));
+        }
+    }
+}
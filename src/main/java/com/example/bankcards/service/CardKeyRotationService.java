@@ -0,0 +1,116 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.CardKeyRotationProgress;
+import com.example.bankcards.repository.CardKeyRotationProgressRepository;
+import com.example.bankcards.repository.CardNumberRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Перешифрование номеров карт текущим ключом (encryption.key-version).
+ * Карты проходятся по возрастанию id пачками; номера пачки расшифровываются и шифруются заново
+ * параллельно на encryption.rotation.workers потоках и записываются одним JDBC batch
+ * вместе с контрольной точкой card_key_rotation, поэтому после падения работа продолжается
+ * со следующей пачки. Сущности не загружаются, а UPDATE сравнивает прежний шифртекст,
+ * так что переводы по тем же картам не блокируются дольше одной пачки.
+ */
+@Slf4j
+@Service
+@Transactional(readOnly = true)
+public class CardKeyRotationService {
+
+    static final String UPDATE_NUMBER =
+            "UPDATE cards SET card_number_encrypted = ? WHERE id = ? AND card_number_encrypted = ?";
+
+    private final CardRepository cardRepository;
+    private final CardKeyRotationProgressRepository progressRepository;
+    private final EncryptionUtil encryptionUtil;
+    private final JdbcTemplate jdbcTemplate;
+    private final ForkJoinPool workers;
+
+    public CardKeyRotationService(CardRepository cardRepository,
+                                  CardKeyRotationProgressRepository progressRepository,
+                                  EncryptionUtil encryptionUtil,
+                                  JdbcTemplate jdbcTemplate,
+                                  @Value("${encryption.rotation.workers:0}") int workers) {
+        this.cardRepository = cardRepository;
+        this.progressRepository = progressRepository;
+        this.encryptionUtil = encryptionUtil;
+        this.jdbcTemplate = jdbcTemplate;
+        this.workers = new ForkJoinPool(workers > 0 ? workers : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Перешифровывает следующие limit карт после контрольной точки текущего ключа.
+     * Возвращает число просмотренных карт; 0 — все карты пройдены.
+     * Одновременная пачка на другом узле откатится по версии контрольной точки.
+     */
+    @Transactional
+    public int rotateChunk(int limit) {
+        int keyVersion = encryptionUtil.getKeyVersion();
+        CardKeyRotationProgress progress = progressRepository.findById(keyVersion)
+                .orElseGet(() -> CardKeyRotationProgress.builder().keyVersion(keyVersion).build());
+        if (progress.getCompletedAt() != null) {
+            return 0;
+        }
+
+        List<CardNumberRow> cards = cardRepository.findNumbersAfter(progress.getLastCardId(), Limit.of(limit));
+        if (cards.isEmpty()) {
+            progress.setCompletedAt(LocalDateTime.now());
+            progressRepository.save(progress);
+            log.info("Card numbers are encrypted with key version {}: {} re-encrypted, {} failed",
+                    keyVersion, progress.getRotated(), progress.getFailed());
+            return 0;
+        }
+
+        List<Rotated> rotated = workers.submit(() -> cards.parallelStream()
+                .filter(card -> !encryptionUtil.isEncryptedWithCurrentKey(card.getCardNumber()))
+                .map(this::reencrypt)
+                .toList()).join();
+        List<Object[]> updates = rotated.stream()
+                .filter(card -> card.cardNumber() != null)
+                .map(card -> new Object[]{card.cardNumber(), card.id(), card.previousNumber()})
+                .toList();
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_NUMBER, updates);
+        }
+
+        progress.setLastCardId(cards.get(cards.size() - 1).getId());
+        progress.setRotated(progress.getRotated() + updates.size());
+        progress.setFailed(progress.getFailed() + rotated.size() - updates.size());
+        progressRepository.save(progress);
+        return cards.size();
+    }
+
+    private Rotated reencrypt(CardNumberRow card) {
+        try {
+            return new Rotated(card.getId(), card.getCardNumber(),
+                    encryptionUtil.encrypt(encryptionUtil.decrypt(card.getCardNumber())));
+        } catch (RuntimeException ex) {
+            log.warn("Card {} number cannot be decrypted with any known key, left as is", card.getId());
+            return new Rotated(card.getId(), card.getCardNumber(), null);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Номер карты, зашифрованный текущим ключом; cardNumber null — прежний не расшифровался.
+     */
+    private record Rotated(Long id, String previousNumber, String cardNumber) {
+    }
+}
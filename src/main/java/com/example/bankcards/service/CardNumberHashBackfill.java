@@ -0,0 +1,44 @@
+package com.example.bankcards.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Заполняет card_number_hash и last_four_digits у карт, созданных до появления этих колонок: номер
+ * расшифровывается в приложении, поэтому миграция сделать этого не может. Карты проходятся по возрастанию id пачками
+ * по encryption.blind-index-backfill.chunk-size, каждая пачка в своей транзакции.
+ * Новые карты создаются с индексом, так что после одного полного прохода работа закончена.
+ */
+@Slf4j
+@Component
+public class CardNumberHashBackfill {
+
+    private final CardService cardService;
+    private final int chunkSize;
+
+    private volatile boolean done;
+
+    public CardNumberHashBackfill(CardService cardService,
+                                  @Value("${encryption.blind-index-backfill.chunk-size:500}") int chunkSize) {
+        this.cardService = cardService;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(fixedDelayString = "${encryption.blind-index-backfill.delay-ms:60000}")
+    public void run() {
+        if (done) {
+            return;
+        }
+        long chunks = 0;
+        Long lastId = 0L;
+        while ((lastId = cardService.backfillNumberColumns(lastId, chunkSize)) != null) {
+            chunks++;
+        }
+        done = true;
+        if (chunks > 0) {
+            log.info("Filled card number blind index and last digits in {} chunk(s)", chunks);
+        }
+    }
+}
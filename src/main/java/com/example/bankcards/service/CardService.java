@@ -6,18 +6,31 @@ import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.DuplicateCardException;
 import com.example.bankcards.exception.UnauthorizedAccessException;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.util.EncryptionUtil;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+@Slf4j
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
@@ -26,19 +39,30 @@ public class CardService {
     private final CardRepository cardRepository;
     private final UserRepository userRepository;
     private final EncryptionUtil encryptionUtil;
+    private final HotCardService hotCardService;
 
+    /**
+     * Номер карты шифруется со случайным IV, поэтому дубликат ищется по слепому индексу номера;
+     * одновременное создание той же карты отсекает уникальный индекс card_number_hash.
+     */
     @Transactional
     public CardDto createCard(CreateCardRequestDto request, Long userId) {
 
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
+        String numberHash = encryptionUtil.blindIndex(request.cardNumber());
+        if (cardRepository.existsByCardNumberHash(numberHash)) {
+            throw new DuplicateCardException();
+        }
+
         String encryptedNumber = encryptionUtil.encrypt(request.cardNumber());
 
         String lastFour = request.cardNumber().substring(12);
 
         Card card = Card.builder()
                 .cardNumber(encryptedNumber)
+                .cardNumberHash(numberHash)
                 .lastFourDigits(lastFour)
                 .cardholderName(request.cardholderName())
                 .expiryDate(request.expiryDate())
@@ -47,21 +71,91 @@ public class CardService {
                 .balance(BigDecimal.ZERO)
                 .build();
 
-        Card saved = cardRepository.save(card);
+        Card saved;
+        try {
+            saved = cardRepository.saveAndFlush(card);
+        } catch (DataIntegrityViolationException ex) {
+            throw new DuplicateCardException();
+        }
+
+        return mapToDto(saved, BigDecimal.ZERO);
+    }
+
+    /**
+     * Заполняет слепой индекс и последние цифры номера у до limit карт без них с id больше afterId.
+     * Номера, которые не расшифровываются, пропускаются с предупреждением, как и слепой индекс
+     * номера, который уже есть у другой карты.
+     * Возвращает id последней просмотренной карты или null, если таких карт больше нет.
+     */
+    @Transactional
+    public Long backfillNumberColumns(Long afterId, int limit) {
+        List<Card> cards = cardRepository.findMissingNumberColumnsAfter(afterId, Limit.of(limit));
+        if (cards.isEmpty()) {
+            return null;
+        }
+        Set<String> assigned = new HashSet<>();
+        for (Card card : cards) {
+            String number;
+            try {
+                number = encryptionUtil.decrypt(card.getCardNumber());
+            } catch (RuntimeException ex) {
+                log.warn("Card {} number cannot be decrypted, blind index and last digits left empty", card.getId());
+                continue;
+            }
+            if (card.getLastFourDigits() == null) {
+                card.setLastFourDigits(number.substring(number.length() - 4));
+            }
+            if (card.getCardNumberHash() != null) {
+                continue;
+            }
+            String numberHash = encryptionUtil.blindIndex(number);
+            if (!assigned.add(numberHash) || cardRepository.existsByCardNumberHash(numberHash)) {
+                log.warn("Card {} duplicates the number of another card, blind index left empty", card.getId());
+                continue;
+            }
+            card.setCardNumberHash(numberHash);
+        }
+        return cards.get(cards.size() - 1).getId();
+    }
+
+    /**
+     * Одна пачка прохода CardExpirySweeper в своей короткой транзакции: до limit активных карт
+     * со сроком в [from, today) переводятся в EXPIRED. Возвращает число изменённых карт.
+     */
+    @Transactional
+    public int expireCards(LocalDate from, LocalDate today, int limit) {
+        return cardRepository.expireActive(from, today, LocalDateTime.now(), limit);
+    }
 
-        return mapToDto(saved);
+    /**
+     * Остались ли непереведённые в EXPIRED активные карты со сроком в [from, today).
+     */
+    public boolean hasActiveExpired(LocalDate from, LocalDate today) {
+        return cardRepository.existsByStatusAndExpiryDateGreaterThanEqualAndExpiryDateBefore(CardStatus.ACTIVE,
+                from, today);
     }
 
+    /**
+     * Карты пользователя читаются проекцией прямо в CardDto, к балансу добавляются слоты горячих карт.
+     */
     public Page<CardDto> getUserCards(Long userId, Pageable pageable) {
-        Page<Card> cards = cardRepository.findByOwner_Id(userId, pageable);
-        return cards.map(this::mapToDto);
+        Page<CardDto> cards = cardRepository.findDtoByOwnerId(userId, pageable);
+        return cards.map(withSlotBalances(cards));
+    }
+
+    /**
+     * Карты пользователя без подсчёта их общего числа.
+     */
+    public Slice<CardDto> getUserCardsSlice(Long userId, Pageable pageable) {
+        Slice<CardDto> cards = cardRepository.findDtoSliceByOwnerId(userId, pageable);
+        return cards.map(withSlotBalances(cards));
     }
 
     public CardDto getCardById(Long cardId, Long userId) {
         Card card = cardRepository.findByIdAndOwner_Id(cardId, userId)
                 .orElseThrow(() -> new CardNotFoundException(cardId));
 
-        return mapToDto(card);
+        return mapToDto(card, hotCardService.slotBalances(List.of(cardId)).getOrDefault(cardId, BigDecimal.ZERO));
     }
 
     @Transactional
@@ -91,19 +185,51 @@ public class CardService {
         cardRepository.deleteById(cardId);
     }
 
+    /**
+     * Включает или выключает распределение зачислений на карту по слотам баланса.
+     */
+    @Transactional
+    public void setHot(Long cardId, boolean hot) {
+        hotCardService.setHot(cardId, hot);
+    }
+
+    /**
+     * Все карты. Общее число берётся из статистики планировщика, если таблица большая,
+     * и не запрашивается вовсе на последней странице.
+     */
     public Page<CardDto> getAllCards(Pageable pageable) {
-        Page<Card> cards = cardRepository.findAll(pageable);
-        return cards.map(this::mapToDto);
+        return Pages.withTotal(getAllCardsSlice(pageable), cardRepository::approximateCount);
+    }
+
+    public Slice<CardDto> getAllCardsSlice(Pageable pageable) {
+        return mapToDto(cardRepository.findAllBy(pageable));
+    }
+
+    /**
+     * Баланс карт страницы включает слоты горячих карт: один запрос на страницу.
+     */
+    private Slice<CardDto> mapToDto(Slice<Card> cards) {
+        Map<Long, BigDecimal> slots = hotCardService.slotBalances(cards.map(Card::getId).getContent());
+        return cards.map(card -> mapToDto(card, slots.getOrDefault(card.getId(), BigDecimal.ZERO)));
+    }
+
+    private Function<CardDto, CardDto> withSlotBalances(Slice<CardDto> cards) {
+        Map<Long, BigDecimal> slots = hotCardService.slotBalances(cards.map(CardDto::id).getContent());
+        if (slots.isEmpty()) {
+            return Function.identity();
+        }
+        return card -> new CardDto(card.id(), card.cardNumber(), card.cardholderName(),
+                card.expiryDate(), card.status(), card.balance().add(slots.getOrDefault(card.id(), BigDecimal.ZERO)));
     }
 
-    private CardDto mapToDto(Card card) {
+    private CardDto mapToDto(Card card, BigDecimal slotBalance) {
         return new CardDto(
                 card.getId(),
                 card.getMaskedCardNumber(),
                 card.getCardholderName(),
                 card.getExpiryDate(),
                 card.getStatus(),
-                card.getBalance()
+                card.getBalance().add(slotBalance)
         );
     }
 }
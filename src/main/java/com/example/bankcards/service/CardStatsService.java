@@ -0,0 +1,195 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardStatsBucketDto;
+import com.example.bankcards.dto.CardStatsDto;
+import com.example.bankcards.dto.StatsPeriod;
+import com.example.bankcards.entity.CardDailyStats;
+import com.example.bankcards.entity.CardStatsProgress;
+import com.example.bankcards.entity.LedgerEntryType;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.InvalidStatsRangeException;
+import com.example.bankcards.repository.CardDailyStatsRepository;
+import com.example.bankcards.repository.CardDayAmount;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardStatsProgressRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Дневные итоги списаний и зачислений по картам.
+ * Агрегатор периодически складывает записи журнала переводов старше transfer.stats.settle-lag
+ * в card_daily_stats и сдвигает общую границу aggregatedUntil; переводы его не ждут и не блокируют.
+ * Итоги за диапазон — строки card_daily_stats плюс ещё не сложенный хвост журнала карты после границы,
+ * поэтому ответ точный, а читается не больше одной строки на день и записи последних минут.
+ * Задержка, как и у компактора журнала, должна быть больше времени самой долгой транзакции перевода.
+ */
+@Slf4j
+@Service
+@Transactional(readOnly = true)
+public class CardStatsService {
+
+    /**
+     * Граница до первого запуска агрегатора: в card_daily_stats ещё ничего нет.
+     */
+    static final LocalDateTime NOTHING_AGGREGATED = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final CardDailyStatsRepository statsRepository;
+    private final CardStatsProgressRepository progressRepository;
+    private final CardRepository cardRepository;
+    private final Duration settleLag;
+
+    public CardStatsService(LedgerEntryRepository ledgerEntryRepository,
+                            CardDailyStatsRepository statsRepository,
+                            CardStatsProgressRepository progressRepository,
+                            CardRepository cardRepository,
+                            @Value("${transfer.stats.settle-lag:1m}") Duration settleLag) {
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.statsRepository = statsRepository;
+        this.progressRepository = progressRepository;
+        this.cardRepository = cardRepository;
+        this.settleLag = settleLag;
+    }
+
+    /**
+     * Итоги карты пользователя за дни from..to включительно, разбитые по периодам.
+     * Строки итогов и граница агрегатора читаются из одного снимка базы.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public CardStatsDto getCardStats(Long cardId, Long userId, LocalDate from, LocalDate to, StatsPeriod period) {
+        if (to.isBefore(from)) {
+            throw new InvalidStatsRangeException(from, to);
+        }
+        cardRepository.findByIdAndOwner_Id(cardId, userId).orElseThrow(() -> new CardNotFoundException(cardId));
+
+        Map<LocalDate, Totals> buckets = new TreeMap<>();
+        for (CardDailyStats day : statsRepository.findByCardId(cardId, from, to)) {
+            buckets.computeIfAbsent(period.start(day.getDay()), start -> new Totals()).add(day);
+        }
+
+        LocalDateTime aggregatedUntil = aggregatedUntil();
+        LocalDateTime tailFrom = from.atStartOfDay().isAfter(aggregatedUntil) ? from.atStartOfDay() : aggregatedUntil;
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+        if (tailFrom.isBefore(end)) {
+            for (CardDayAmount amount : ledgerEntryRepository.sumByDay(cardId, tailFrom, end)) {
+                buckets.computeIfAbsent(period.start(amount.getDay()), start -> new Totals()).add(amount);
+            }
+        }
+
+        Totals total = new Totals();
+        List<CardStatsBucketDto> result = new ArrayList<>(buckets.size());
+        buckets.forEach((start, totals) -> {
+            total.add(totals);
+            result.add(totals.toDto(start));
+        });
+        return new CardStatsDto(cardId, from, to, period, total.debitAmount, total.debitCount,
+                total.creditAmount, total.creditCount, result);
+    }
+
+    /**
+     * Складывает записи журнала от границы до now - settleLag в дневные итоги и сдвигает границу.
+     * Одновременный запуск на другом узле откатится по версии границы или первичному ключу итогов.
+     */
+    @Transactional
+    @Scheduled(fixedDelayString = "${transfer.stats.rollup-delay-ms:60000}")
+    public int rollup() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(settleLag);
+        CardStatsProgress progress = progressRepository.findById(CardStatsProgress.ID)
+                .orElseGet(() -> CardStatsProgress.builder()
+                        .id(CardStatsProgress.ID)
+                        .aggregatedUntil(NOTHING_AGGREGATED)
+                        .build());
+        if (!progress.getAggregatedUntil().isBefore(cutoff)) {
+            return 0;
+        }
+
+        List<CardDayAmount> amounts = ledgerEntryRepository.sumByCardDay(progress.getAggregatedUntil(), cutoff);
+        if (!amounts.isEmpty()) {
+            Set<Long> cardIds = amounts.stream().map(CardDayAmount::getCardId).collect(Collectors.toSet());
+            Set<LocalDate> days = amounts.stream().map(CardDayAmount::getDay).collect(Collectors.toSet());
+            Map<CardDailyStats.DayId, CardDailyStats> stats = new HashMap<>();
+            statsRepository.findByCardIdInAndDayIn(cardIds, days)
+                    .forEach(day -> stats.put(new CardDailyStats.DayId(day.getCardId(), day.getDay()), day));
+
+            for (CardDayAmount amount : amounts) {
+                CardDailyStats day = stats.computeIfAbsent(new CardDailyStats.DayId(amount.getCardId(), amount.getDay()),
+                        id -> CardDailyStats.builder().cardId(id.getCardId()).day(id.getDay()).build());
+                if (amount.getType() == LedgerEntryType.DEBIT) {
+                    day.setDebitAmount(day.getDebitAmount().subtract(amount.getAmount()));
+                    day.setDebitCount(day.getDebitCount() + amount.getCount());
+                } else {
+                    day.setCreditAmount(day.getCreditAmount().add(amount.getAmount()));
+                    day.setCreditCount(day.getCreditCount() + amount.getCount());
+                }
+            }
+            statsRepository.saveAll(stats.values());
+        }
+
+        progress.setAggregatedUntil(cutoff);
+        progressRepository.save(progress);
+        log.debug("Rolled up {} card-day total(s) up to {}", amounts.size(), cutoff);
+        return amounts.size();
+    }
+
+    private LocalDateTime aggregatedUntil() {
+        return progressRepository.findById(CardStatsProgress.ID)
+                .map(CardStatsProgress::getAggregatedUntil)
+                .orElse(NOTHING_AGGREGATED);
+    }
+
+    /**
+     * Накопитель итогов одного периода; списания хранятся положительными.
+     */
+    private static final class Totals {
+
+        private BigDecimal debitAmount = BigDecimal.ZERO;
+        private long debitCount;
+        private BigDecimal creditAmount = BigDecimal.ZERO;
+        private long creditCount;
+
+        void add(CardDailyStats day) {
+            debitAmount = debitAmount.add(day.getDebitAmount());
+            debitCount += day.getDebitCount();
+            creditAmount = creditAmount.add(day.getCreditAmount());
+            creditCount += day.getCreditCount();
+        }
+
+        void add(CardDayAmount amount) {
+            if (amount.getType() == LedgerEntryType.DEBIT) {
+                debitAmount = debitAmount.subtract(amount.getAmount());
+                debitCount += amount.getCount();
+            } else {
+                creditAmount = creditAmount.add(amount.getAmount());
+                creditCount += amount.getCount();
+            }
+        }
+
+        void add(Totals totals) {
+            debitAmount = debitAmount.add(totals.debitAmount);
+            debitCount += totals.debitCount;
+            creditAmount = creditAmount.add(totals.creditAmount);
+            creditCount += totals.creditCount;
+        }
+
+        CardStatsBucketDto toDto(LocalDate start) {
+            return new CardStatsBucketDto(start, debitAmount, debitCount, creditAmount, creditCount);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.bankcards.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Число транзакций в истории пользователя, посчитанное не раньше transfer.history.count-cache.ttl назад.
+ * Листание страниц подряд считает историю один раз; новые переводы попадают в число после истечения ttl.
+ * Хранятся последние transfer.history.count-cache.size пользователей.
+ */
+@Component
+public class HistoryCountCache {
+
+    private final long ttlNanos;
+    private final Map<Long, CachedCount> counts;
+
+    public HistoryCountCache(@Value("${transfer.history.count-cache.ttl:30s}") Duration ttl,
+                             @Value("${transfer.history.count-cache.size:10000}") int size) {
+        this.ttlNanos = ttl.toNanos();
+        this.counts = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedCount> eldest) {
+                return size() > size;
+            }
+        });
+    }
+
+    public long get(Long userId, LongSupplier count) {
+        long now = System.nanoTime();
+        CachedCount cached = counts.get(userId);
+        if (cached != null && now - cached.countedAt() < ttlNanos) {
+            return cached.count();
+        }
+        long fresh = count.getAsLong();
+        counts.put(userId, new CachedCount(fresh, now));
+        return fresh;
+    }
+
+    private record CachedCount(long count, long countedAt) {
+    }
+}
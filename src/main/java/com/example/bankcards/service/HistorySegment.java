@@ -0,0 +1,244 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Неизменяемый файл архива истории переводов за месяц, читаемый через отображение в память.
+ * <p>
+ * Формат: заголовок (MAGIC, VERSION); блоки по BLOCK_ROWS строк истории одного пользователя,
+ * сжатые Deflate, новые сначала; разреженный индекс — по записи на блок: пользователь, смещение,
+ * длина сжатого и несжатого блока, число строк, createdAt и id последней строки блока;
+ * хвост: смещение индекса, число блоков, MAGIC. Индекс упорядочен по пользователю и порядку истории.
+ * Перевод между разными пользователями записан в блоки обоих.
+ * <p>
+ * Индекс не загружается в heap: поиск пользователя идёт двоичным поиском по отображённому файлу,
+ * пропуск строк по смещению или курсору — по числу строк и последней строке блока без распаковки.
+ */
+final class HistorySegment {
+
+    static final int MAGIC = 0x54585347;
+    static final short VERSION = 1;
+    static final int BLOCK_ROWS = 128;
+    static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+    static final int INDEX_ENTRY_SIZE = 8 + 8 + 4 + 4 + 4 + 8 + 4 + 8;
+    static final int FOOTER_SIZE = 8 + 4 + 4;
+
+    private static final int USER = 0;
+    private static final int OFFSET = 8;
+    private static final int COMPRESSED = 16;
+    private static final int RAW = 20;
+    private static final int ROWS = 24;
+    private static final int LAST_SECOND = 28;
+    private static final int LAST_NANO = 36;
+    private static final int LAST_ID = 40;
+
+    private final Path file;
+    private final YearMonth month;
+    private final MappedByteBuffer data;
+    private final int indexOffset;
+    private final int blocks;
+
+    private HistorySegment(Path file, YearMonth month, MappedByteBuffer data, int indexOffset, int blocks) {
+        this.file = file;
+        this.month = month;
+        this.data = data;
+        this.indexOffset = indexOffset;
+        this.blocks = blocks;
+    }
+
+    static HistorySegment open(Path file, YearMonth month) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int size = data.capacity();
+        if (size < HEADER_SIZE + FOOTER_SIZE || data.getInt(0) != MAGIC || data.getShort(4) != VERSION
+                || data.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a history segment: " + file);
+        }
+        long indexOffset = data.getLong(size - FOOTER_SIZE);
+        int blocks = data.getInt(size - FOOTER_SIZE + 8);
+        if (indexOffset < HEADER_SIZE || indexOffset + (long) blocks * INDEX_ENTRY_SIZE != size - FOOTER_SIZE) {
+            throw new IOException("Corrupted history segment index: " + file);
+        }
+        return new HistorySegment(file, month, data, (int) indexOffset, blocks);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    YearMonth month() {
+        return month;
+    }
+
+    long count(long userId) {
+        long count = 0;
+        for (int block = firstBlock(userId); block < blocks && entryLong(block, USER) == userId; block++) {
+            count += entryInt(block, ROWS);
+        }
+        return count;
+    }
+
+    /**
+     * Строки истории пользователя, начиная с offset-й, не больше limit.
+     */
+    List<TransactionDto> read(long userId, long offset, int limit) {
+        List<TransactionDto> rows = new ArrayList<>(Math.min(limit, BLOCK_ROWS));
+        long skip = offset;
+        for (int block = firstBlock(userId); block < blocks && entryLong(block, USER) == userId
+                && rows.size() < limit; block++) {
+            int blockRows = entryInt(block, ROWS);
+            if (skip >= blockRows) {
+                skip -= blockRows;
+                continue;
+            }
+            List<TransactionDto> items = inflate(block);
+            for (int i = (int) skip; i < items.size() && rows.size() < limit; i++) {
+                rows.add(items.get(i));
+            }
+            skip = 0;
+        }
+        return rows;
+    }
+
+    /**
+     * Строки истории пользователя старше позиции (createdAt, id), не больше limit.
+     */
+    List<TransactionDto> readBefore(long userId, LocalDateTime createdAt, long id, int limit) {
+        List<TransactionDto> rows = new ArrayList<>(Math.min(limit, BLOCK_ROWS));
+        for (int block = firstBlock(userId); block < blocks && entryLong(block, USER) == userId
+                && rows.size() < limit; block++) {
+            if (!before(lastCreatedAt(block), entryLong(block, LAST_ID), createdAt, id)) {
+                continue;
+            }
+            for (TransactionDto item : inflate(block)) {
+                if (rows.size() < limit && before(item.createdAt(), item.id(), createdAt, id)) {
+                    rows.add(item);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static boolean before(LocalDateTime rowCreatedAt, long rowId, LocalDateTime createdAt, long id) {
+        int order = rowCreatedAt.compareTo(createdAt);
+        return order < 0 || (order == 0 && rowId < id);
+    }
+
+    /**
+     * Первый блок пользователя или blocks, если его нет.
+     */
+    private int firstBlock(long userId) {
+        int low = 0;
+        int high = blocks;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entryLong(middle, USER) < userId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private List<TransactionDto> inflate(int block) {
+        int offset = (int) entryLong(block, OFFSET);
+        byte[] raw = new byte[entryInt(block, RAW)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.slice(offset, entryInt(block, COMPRESSED)));
+            if (inflater.inflate(raw) != raw.length) {
+                throw new IllegalStateException("Truncated block " + block + " in " + file);
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupted block " + block + " in " + file, ex);
+        } finally {
+            inflater.end();
+        }
+
+        int rows = entryInt(block, ROWS);
+        List<TransactionDto> items = new ArrayList<>(rows);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            for (int i = 0; i < rows; i++) {
+                items.add(readRow(in));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return items;
+    }
+
+    private static TransactionDto readRow(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        long fromCardId = in.readLong();
+        long toCardId = in.readLong();
+        long unscaledAmount = in.readLong();
+        int scale = in.readByte();
+        String status = in.readUTF();
+        String description = in.readBoolean() ? in.readUTF() : null;
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        return new TransactionDto(id, fromCardId, toCardId, BigDecimal.valueOf(unscaledAmount, scale),
+                status, description, createdAt);
+    }
+
+    private LocalDateTime lastCreatedAt(int block) {
+        return LocalDateTime.ofEpochSecond(entryLong(block, LAST_SECOND), entryInt(block, LAST_NANO), ZoneOffset.UTC);
+    }
+
+    private long entryLong(int block, int field) {
+        return data.getLong(indexOffset + block * INDEX_ENTRY_SIZE + field);
+    }
+
+    private int entryInt(int block, int field) {
+        return data.getInt(indexOffset + block * INDEX_ENTRY_SIZE + field);
+    }
+
+    static void writeRow(DataOutputStream out, TransactionDto row) throws IOException {
+        out.writeLong(row.id());
+        out.writeLong(row.fromCardId());
+        out.writeLong(row.toCardId());
+        out.writeLong(row.amount().unscaledValue().longValueExact());
+        out.writeByte(row.amount().scale());
+        out.writeUTF(row.status());
+        out.writeBoolean(row.description() != null);
+        if (row.description() != null) {
+            out.writeUTF(row.description());
+        }
+        out.writeLong(row.createdAt().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(row.createdAt().getNano());
+    }
+
+    static ByteBuffer indexEntry(long userId, long offset, int compressed, int raw, int rows, TransactionDto last) {
+        return ByteBuffer.allocate(INDEX_ENTRY_SIZE)
+                .putLong(userId)
+                .putLong(offset)
+                .putInt(compressed)
+                .putInt(raw)
+                .putInt(rows)
+                .putLong(last.createdAt().toEpochSecond(ZoneOffset.UTC))
+                .putInt(last.createdAt().getNano())
+                .putLong(last.id())
+                .flip();
+    }
+}
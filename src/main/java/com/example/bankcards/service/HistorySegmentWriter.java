@@ -0,0 +1,180 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Пишет историю за месяц в файлы HistorySegment. Строки должны приходить упорядоченными
+ * по пользователю, а у пользователя — новые сначала. Файл, выросший больше maxSegmentBytes,
+ * закрывается на границе пользователей и продолжается следующим, так что история пользователя
+ * за месяц всегда лежит в одном файле. Файл пишется во временный, синхронизируется с диском
+ * и переименовывается, поэтому читатели видят только целые сегменты.
+ */
+final class HistorySegmentWriter implements Closeable {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final YearMonth month;
+    private final long maxSegmentBytes;
+    private final List<Path> written = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private final DataOutputStream blockRows = new DataOutputStream(block);
+    private byte[] compressed = new byte[64 * 1024];
+
+    private FileChannel segment;
+    private FileChannel index;
+    private Path segmentFile;
+    private Path indexFile;
+    private long position;
+    private int blocks;
+
+    private long userId;
+    private int rows;
+    private TransactionDto last;
+
+    HistorySegmentWriter(Path directory, YearMonth month, long maxSegmentBytes) {
+        this.directory = directory;
+        this.month = month;
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    static String fileName(YearMonth month, int part) {
+        return String.format("history-%s-%03d.seg", month, part);
+    }
+
+    void append(long userId, TransactionDto row) throws IOException {
+        if (rows > 0 && (userId != this.userId || rows == HistorySegment.BLOCK_ROWS)) {
+            boolean nextUser = userId != this.userId;
+            flushBlock();
+            if (nextUser && position > maxSegmentBytes) {
+                finishSegment();
+            }
+        }
+        if (segment == null) {
+            startSegment();
+        }
+        this.userId = userId;
+        HistorySegment.writeRow(blockRows, row);
+        rows++;
+        last = row;
+    }
+
+    /**
+     * Дописывает последний блок и возвращает записанные файлы.
+     */
+    List<Path> finish() throws IOException {
+        if (rows > 0) {
+            flushBlock();
+        }
+        if (segment != null) {
+            finishSegment();
+        }
+        return List.copyOf(written);
+    }
+
+    /**
+     * Незавершённый сегмент удаляется; уже переименованные файлы остаются, их удаляет вызывающий.
+     */
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        if (segment != null) {
+            segment.close();
+            index.close();
+            Files.deleteIfExists(segmentFile);
+            Files.deleteIfExists(indexFile);
+            segment = null;
+        }
+    }
+
+    private void startSegment() throws IOException {
+        String name = fileName(month, written.size());
+        segmentFile = directory.resolve(name + TEMP_SUFFIX);
+        indexFile = directory.resolve(name + ".index" + TEMP_SUFFIX);
+        segment = FileChannel.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        position = 0;
+        blocks = 0;
+        write(segment, ByteBuffer.allocate(HistorySegment.HEADER_SIZE)
+                .putInt(HistorySegment.MAGIC)
+                .putShort(HistorySegment.VERSION)
+                .flip());
+    }
+
+    private void flushBlock() throws IOException {
+        blockRows.flush();
+        byte[] raw = block.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        long offset = position;
+        write(segment, ByteBuffer.wrap(compressed, 0, length));
+        write(index, HistorySegment.indexEntry(userId, offset, length, raw.length, rows, last));
+        blocks++;
+        block.reset();
+        rows = 0;
+    }
+
+    private void finishSegment() throws IOException {
+        long indexOffset = position;
+        long indexSize = index.size();
+        for (long copied = 0; copied < indexSize; ) {
+            copied += index.transferTo(copied, indexSize - copied, segment);
+        }
+        position += indexSize;
+        write(segment, ByteBuffer.allocate(HistorySegment.FOOTER_SIZE)
+                .putLong(indexOffset)
+                .putInt(blocks)
+                .putInt(HistorySegment.MAGIC)
+                .flip());
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException("History segment exceeds 2 GB: " + segmentFile);
+        }
+        segment.force(true);
+        segment.close();
+        index.close();
+        Files.delete(indexFile);
+
+        Path target = directory.resolve(fileName(month, written.size()));
+        Files.move(segmentFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        written.add(target);
+        segment = null;
+    }
+
+    private void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (channel == segment) {
+            position += length;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSlot;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.repository.CardAmount;
+import com.example.bankcards.repository.CardBalanceSlotRepository;
+import com.example.bankcards.repository.CardRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Полосатый баланс горячих карт.
+ * Зачисление на горячую карту прибавляется к одному из transfer.hot-cards.slots слотов
+ * card_balance_slots и не блокирует строку карты, поэтому одновременные зачисления
+ * на одну карту не выстраиваются в очередь. Слот выбирается по кругу, занятый другой
+ * транзакцией слот пропускается (SKIP LOCKED). Видимый баланс карты — cards.balance плюс слоты.
+ * Списание блокирует строку карты и, если cards.balance не хватает, блокирует все слоты карты
+ * по возрастанию номера, дожидаясь незавершённых зачислений, и переносит их в cards.balance в том же
+ * порядке. Зачисления строку карты не блокируют, поэтому ожидание слотов не приводит к взаимной блокировке,
+ * а списание видит весь видимый баланс.
+ * Набор горячих карт кэшируется и обновляется раз в transfer.hot-cards.refresh-delay-ms;
+ * устаревший кэш не нарушает баланс, так как любое зачисление в слот учитывается в видимом балансе.
+ */
+@Slf4j
+@Service
+@Transactional(readOnly = true)
+public class HotCardService {
+
+    private final CardRepository cardRepository;
+    private final CardBalanceSlotRepository slotRepository;
+    private final int slots;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    private volatile Set<Long> hotCardIds;
+
+    public HotCardService(CardRepository cardRepository,
+                          CardBalanceSlotRepository slotRepository,
+                          @Value("${transfer.hot-cards.slots:8}") int slots) {
+        this.cardRepository = cardRepository;
+        this.slotRepository = slotRepository;
+        this.slots = slots;
+    }
+
+    public boolean isHot(Long cardId) {
+        if (hotCardIds == null) {
+            refresh();
+        }
+        return hotCardIds.contains(cardId);
+    }
+
+    @Scheduled(fixedDelayString = "${transfer.hot-cards.refresh-delay-ms:10000}")
+    public void refresh() {
+        hotCardIds = Set.copyOf(cardRepository.findHotIds());
+    }
+
+    /**
+     * Прибавляет сумму к свободному слоту карты в текущей транзакции.
+     * Если все слоты заняты, ждёт слот, с которого начинался обход.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void credit(Long cardId, BigDecimal amount) {
+        int start = Math.floorMod(nextSlot.getAndIncrement(), slots);
+        CardBalanceSlot slot = IntStream.range(0, slots)
+                .mapToObj(offset -> slotRepository.findUnlocked(cardId, (start + offset) % slots))
+                .flatMap(Optional::stream)
+                .findFirst()
+                .or(() -> slotRepository.findForUpdate(cardId, start))
+                .orElseThrow(() -> new IllegalStateException("Card " + cardId + " has no balance slot " + start));
+        slot.setBalance(slot.getBalance().add(amount));
+    }
+
+    /**
+     * Переносит слоты в cards.balance заблокированной карты по возрастанию номера слота,
+     * пока основной части не хватит на списание. Слоты, занятые незавершёнными зачислениями,
+     * блокируются после их коммита, так что порядок переноса не зависит от времени.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void drainInto(Card card, BigDecimal amount) {
+        for (CardBalanceSlot slot : slotRepository.findAllByCardIdForUpdate(card.getId())) {
+            if (card.getBalance().compareTo(amount) >= 0) {
+                return;
+            }
+            BigDecimal taken = slot.getBalance().min(amount.subtract(card.getBalance()));
+            if (taken.signum() > 0) {
+                slot.setBalance(slot.getBalance().subtract(taken));
+                card.setBalance(card.getBalance().add(taken));
+            }
+        }
+    }
+
+    /**
+     * Суммы слотов по картам; карт без слотов в результате нет.
+     */
+    public Map<Long, BigDecimal> slotBalances(Collection<Long> cardIds) {
+        if (cardIds.isEmpty()) {
+            return Map.of();
+        }
+        return slotRepository.sumByCardIds(cardIds).stream()
+                .collect(Collectors.toMap(CardAmount::getCardId, CardAmount::getAmount));
+    }
+
+    /**
+     * Включает или выключает распределение зачислений по слотам.
+     * При выключении слоты переносятся в cards.balance; сами строки слотов остаются,
+     * чтобы зачисления узлов с устаревшим кэшем не потерялись.
+     */
+    @Transactional
+    public void setHot(Long cardId, boolean hot) {
+        Card card = cardRepository.findAllByIdForUpdate(List.of(cardId)).stream()
+                .findFirst()
+                .orElseThrow(() -> new CardNotFoundException(cardId));
+
+        List<CardBalanceSlot> existing = slotRepository.findAllByCardIdForUpdate(cardId);
+        if (hot) {
+            Set<Integer> present = existing.stream().map(CardBalanceSlot::getSlot).collect(Collectors.toSet());
+            slotRepository.saveAll(IntStream.range(0, slots)
+                    .filter(slot -> !present.contains(slot))
+                    .mapToObj(slot -> CardBalanceSlot.builder().cardId(cardId).slot(slot).build())
+                    .toList());
+        } else {
+            for (CardBalanceSlot slot : existing) {
+                card.setBalance(card.getBalance().add(slot.getBalance()));
+                slot.setBalance(BigDecimal.ZERO);
+            }
+        }
+        card.setHot(hot);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                Set<Long> current = hotCardIds;
+                if (current == null) {
+                    return;
+                }
+                Set<Long> updated = new HashSet<>(current);
+                if (hot) {
+                    updated.add(cardId);
+                } else {
+                    updated.remove(cardId);
+                }
+                hotCardIds = Set.copyOf(updated);
+            }
+        });
+        log.info("Card {} {} striped balance", cardId, hot ? "switched to" : "switched off");
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.LedgerMismatchDto;
+import com.example.bankcards.dto.LedgerVerificationDto;
+import com.example.bankcards.entity.CardBalanceSnapshot;
+import com.example.bankcards.entity.LedgerEntry;
+import com.example.bankcards.entity.LedgerEntryType;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.repository.CardAmount;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Журнал движения средств по картам.
+ * Каждый перевод добавляет две записи: списание с карты-источника и зачисление на карту-получатель.
+ * Баланс карты по журналу — снимок плюс записи после него. Компактор периодически переносит
+ * записи старше transfer.ledger.settle-lag в снимки, поэтому чтение баланса суммирует только хвост.
+ * Задержка должна быть больше времени самой долгой транзакции перевода: запись получает
+ * created_at до коммита и не должна оказаться раньше границы уже построенного снимка.
+ */
+@Slf4j
+@Service
+@Transactional(readOnly = true)
+public class LedgerService {
+
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final CardBalanceSnapshotRepository snapshotRepository;
+    private final CardRepository cardRepository;
+    private final Duration settleLag;
+
+    @Value("${transfer.engine:LOAD_MODIFY_SAVE}")
+    private TransferEngine engine = TransferEngine.LOAD_MODIFY_SAVE;
+
+    public LedgerService(LedgerEntryRepository ledgerEntryRepository,
+                         CardBalanceSnapshotRepository snapshotRepository,
+                         CardRepository cardRepository,
+                         @Value("${transfer.ledger.settle-lag:1m}") Duration settleLag) {
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.cardRepository = cardRepository;
+        this.settleLag = settleLag;
+    }
+
+    /**
+     * Добавляет записи журнала для завершённых переводов в текущей транзакции одним JDBC-пакетом.
+     */
+    @Transactional
+    public void recordTransfers(Collection<Transaction> transactions) {
+        List<LedgerEntry> entries = new ArrayList<>(transactions.size() * 2);
+        for (Transaction transaction : transactions) {
+            entries.add(LedgerEntry.builder()
+                    .cardId(transaction.getSourceCard().getId())
+                    .transactionId(transaction.getId())
+                    .type(LedgerEntryType.DEBIT)
+                    .amount(transaction.getAmount().negate())
+                    .build());
+            entries.add(LedgerEntry.builder()
+                    .cardId(transaction.getDestinationCard().getId())
+                    .transactionId(transaction.getId())
+                    .type(LedgerEntryType.CREDIT)
+                    .amount(transaction.getAmount())
+                    .build());
+        }
+        ledgerEntryRepository.saveAll(entries);
+    }
+
+    @Transactional
+    public void recordTransfer(Transaction transaction) {
+        recordTransfers(List.of(transaction));
+    }
+
+    /**
+     * Записывает начальный баланс карты, появившейся с ненулевым балансом вне переводов.
+     */
+    @Transactional
+    public void openCard(Long cardId, BigDecimal balance) {
+        ledgerEntryRepository.save(LedgerEntry.builder()
+                .cardId(cardId)
+                .type(LedgerEntryType.OPENING)
+                .amount(balance)
+                .build());
+    }
+
+    public BigDecimal balanceOf(Long cardId) {
+        return balancesOf(List.of(cardId)).get(cardId);
+    }
+
+    /**
+     * Балансы карт по журналу: снимки читаются одним запросом, хвост каждой карты —
+     * запросом по диапазону индекса (card_id, created_at) от границы её снимка.
+     */
+    public Map<Long, BigDecimal> balancesOf(Collection<Long> cardIds) {
+        Map<Long, CardBalanceSnapshot> snapshots = snapshotRepository.findAllById(cardIds).stream()
+                .collect(Collectors.toMap(CardBalanceSnapshot::getCardId, Function.identity()));
+
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (Long cardId : cardIds) {
+            CardBalanceSnapshot snapshot = snapshots.get(cardId);
+            balances.put(cardId, snapshot == null
+                    ? ledgerEntryRepository.sumAll(cardId)
+                    : snapshot.getBalance().add(ledgerEntryRepository.sumSince(cardId, snapshot.getAsOf())));
+        }
+        return balances;
+    }
+
+    /**
+     * Переносит устоявшиеся записи журнала в снимки балансов.
+     * Одновременный запуск на другом узле откатится по версии снимка или первичному ключу.
+     * При движке LEDGER баланс в cards обновляется здесь, а не при каждом переводе.
+     */
+    @Transactional
+    @Scheduled(fixedDelayString = "${transfer.ledger.compaction-delay-ms:60000}")
+    public int compact() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(settleLag);
+        List<CardAmount> pending = ledgerEntryRepository.sumToCompact(cutoff);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> cardIds = pending.stream().map(CardAmount::getCardId).collect(Collectors.toCollection(TreeSet::new));
+        Map<Long, CardBalanceSnapshot> snapshots = snapshotRepository.findAllById(cardIds).stream()
+                .collect(Collectors.toMap(CardBalanceSnapshot::getCardId, Function.identity()));
+
+        for (CardAmount delta : pending) {
+            CardBalanceSnapshot snapshot = snapshots.computeIfAbsent(delta.getCardId(), cardId ->
+                    CardBalanceSnapshot.builder().cardId(cardId).balance(BigDecimal.ZERO).build());
+            snapshot.setBalance(snapshot.getBalance().add(delta.getAmount()));
+            snapshot.setAsOf(cutoff);
+        }
+        snapshotRepository.saveAll(snapshots.values());
+
+        if (engine == TransferEngine.LEDGER) {
+            snapshotRepository.flush();
+            balancesOf(cardIds).forEach(cardRepository::updateBalance);
+        }
+
+        log.debug("Compacted ledger entries of {} card(s) up to {}", cardIds.size(), cutoff);
+        return cardIds.size();
+    }
+
+    /**
+     * Пересчитывает баланс каждой карты по всему журналу и сравнивает его с балансом
+     * по снимку и, если баланс в cards ведётся при каждом переводе, с ним.
+     * Также проверяет, что записи каждого перевода в сумме дают ноль.
+     * Все запросы читают один снимок базы, поэтому параллельные переводы не дают ложных расхождений.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public LedgerVerificationDto verify() {
+        Map<Long, BigDecimal> rebuilt = toMap(ledgerEntryRepository.sumByCard());
+
+        Map<Long, BigDecimal> viaSnapshots = new HashMap<>();
+        snapshotRepository.findAll().forEach(snapshot -> viaSnapshots.put(snapshot.getCardId(), snapshot.getBalance()));
+        ledgerEntryRepository.sumAfterSnapshot()
+                .forEach(tail -> viaSnapshots.merge(tail.getCardId(), tail.getAmount(), BigDecimal::add));
+
+        Map<Long, BigDecimal> cardBalances = toMap(cardRepository.findAllBalances());
+        boolean cardBalanceMaintained = engine != TransferEngine.LEDGER;
+
+        Set<Long> cardIds = new TreeSet<>(cardBalances.keySet());
+        cardIds.addAll(rebuilt.keySet());
+
+        List<LedgerMismatchDto> mismatches = new ArrayList<>();
+        for (Long cardId : cardIds) {
+            BigDecimal ledger = rebuilt.getOrDefault(cardId, BigDecimal.ZERO);
+            BigDecimal snapshot = viaSnapshots.getOrDefault(cardId, BigDecimal.ZERO);
+            BigDecimal card = cardBalances.get(cardId);
+            boolean cardMismatch = cardBalanceMaintained && (card == null || card.compareTo(ledger) != 0);
+            if (snapshot.compareTo(ledger) != 0 || cardMismatch) {
+                mismatches.add(new LedgerMismatchDto(cardId, ledger, snapshot, card));
+            }
+        }
+
+        List<Long> unbalanced = ledgerEntryRepository.findUnbalancedTransactionIds();
+        if (!mismatches.isEmpty() || !unbalanced.isEmpty()) {
+            log.warn("Ledger verification found {} balance mismatch(es) and {} unbalanced transaction(s)",
+                    mismatches.size(), unbalanced.size());
+        }
+        return new LedgerVerificationDto(cardIds.size(), mismatches.isEmpty() && unbalanced.isEmpty(),
+                mismatches, unbalanced);
+    }
+
+    private Map<Long, BigDecimal> toMap(List<CardAmount> amounts) {
+        return amounts.stream().collect(Collectors.toMap(CardAmount::getCardId, CardAmount::getAmount));
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.bankcards.service;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Страница из среза, прочитанного с одной лишней строкой.
+ * На последней странице общее число известно точно; иначе оно берётся из total,
+ * но не меньше уже виденных строк плюс одна, чтобы номер страницы и hasNext не расходились
+ * при устаревшей оценке.
+ */
+final class Pages {
+
+    private Pages() {
+    }
+
+    static <T> Page<T> withTotal(Slice<T> slice, LongSupplier total) {
+        Pageable pageable = slice.getPageable();
+        long seen = (pageable.isPaged() ? pageable.getOffset() : 0) + slice.getNumberOfElements();
+        return new PageImpl<>(slice.getContent(), pageable,
+                slice.hasNext() ? Math.max(total.getAsLong(), seen + 1) : seen);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.bankcards.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Выполняет переводы, принятые в асинхронном режиме.
+ * Планировщик захватывает пачки PENDING-транзакций, пока есть свободные обработчики,
+ * и передаёт каждую пачку в ограниченный пул потоков. Число одновременно выполняемых
+ * пачек не превышает transfer.async.workers, остальные переводы ждут в таблице.
+ * Перед захватом в очередь возвращаются переводы, которые висят в PROCESSING дольше
+ * transfer.async.lease: их обработчик остановился вместе с узлом и уже не завершит их.
+ */
+@Slf4j
+@Component
+public class PendingTransferProcessor {
+
+    private final TransferService transferService;
+    private final int batchSize;
+    private final Duration lease;
+    private final Semaphore workers;
+    private final ThreadPoolTaskExecutor executor;
+
+    public PendingTransferProcessor(TransferService transferService,
+                                    @Value("${transfer.async.workers:4}") int workers,
+                                    @Value("${transfer.async.batch-size:100}") int batchSize,
+                                    @Value("${transfer.async.lease:5m}") Duration lease) {
+        this.transferService = transferService;
+        this.batchSize = batchSize;
+        this.lease = lease;
+        this.workers = new Semaphore(workers);
+
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(workers);
+        executor.setThreadNamePrefix("transfer-worker-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+    }
+
+    @Scheduled(fixedDelayString = "${transfer.async.poll-delay-ms:100}")
+    public void drain() {
+        int released = transferService.releaseExpiredClaims(lease, batchSize);
+        if (released > 0) {
+            log.warn("Returned {} transfer(s) claimed more than {} ago to the queue", released, lease);
+        }
+        while (workers.tryAcquire()) {
+            List<Long> claimed;
+            try {
+                claimed = transferService.claimPending(batchSize);
+            } catch (RuntimeException ex) {
+                workers.release();
+                throw ex;
+            }
+            if (claimed.isEmpty()) {
+                workers.release();
+                return;
+            }
+
+            try {
+                executor.execute(() -> process(claimed));
+            } catch (TaskRejectedException ex) {
+                workers.release();
+                transferService.releaseClaimed(claimed);
+                return;
+            }
+        }
+    }
+
+    private void process(List<Long> claimed) {
+        try {
+            transferService.processClaimed(claimed);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to process {} pending transfer(s), returning them to the queue", claimed.size(), ex);
+            transferService.releaseClaimed(claimed);
+        } finally {
+            workers.release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
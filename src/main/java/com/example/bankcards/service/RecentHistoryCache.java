@@ -0,0 +1,176 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.entity.Transaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Начало истории переводов пользователя в памяти: первые страницы истории отдаются без SQL.
+ * Буфер пользователя заполняется первым чтением из базы и после коммита дополняется переводами,
+ * прошедшими через этот узел; переводы других узлов становятся видны не позже
+ * transfer.history.recent-cache.ttl после заполнения. В буфере не больше rows строк,
+ * хранятся последние size пользователей. Попадания и промахи считаются в transfer.history.recent-cache.
+ */
+@Component
+public class RecentHistoryCache {
+
+    private static final Comparator<TransactionDto> HISTORY_ORDER = Comparator
+            .comparing(TransactionDto::createdAt, Comparator.reverseOrder())
+            .thenComparing(TransactionDto::id, Comparator.reverseOrder());
+
+    private final int rows;
+    private final long ttlNanos;
+    private final Map<Long, Entry> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public RecentHistoryCache(MeterRegistry meterRegistry,
+                              @Value("${transfer.history.recent-cache.rows:50}") int rows,
+                              @Value("${transfer.history.recent-cache.ttl:30s}") Duration ttl,
+                              @Value("${transfer.history.recent-cache.size:10000}") int size) {
+        this.rows = rows;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > size;
+            }
+        });
+
+        this.hits = Counter.builder("transfer.history.recent-cache")
+                .description("History first pages served from memory or read from the database")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("transfer.history.recent-cache")
+                .description("History first pages served from memory or read from the database")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("transfer.history.recent-cache.users", entries, Map::size)
+                .description("Users whose recent history is held in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Первые limit строк истории пользователя. При промахе loader читает их из базы,
+     * и прочитанное становится буфером; запросы длиннее rows всегда идут в базу.
+     */
+    public List<TransactionDto> first(Long userId, int limit, IntFunction<List<TransactionDto>> loader) {
+        if (limit > rows) {
+            return loader.apply(limit);
+        }
+        long now = System.nanoTime();
+        if (entries.get(userId) instanceof Recent recent && now - recent.loadedAt() < ttlNanos
+                && (recent.rows().size() >= limit || recent.complete())) {
+            hits.increment();
+            return recent.rows().subList(0, Math.min(limit, recent.rows().size()));
+        }
+
+        misses.increment();
+        Loading loading = new Loading();
+        entries.put(userId, loading);
+        List<TransactionDto> loaded = List.copyOf(loader.apply(limit));
+        // перевод, записанный во время чтения, снял метку: прочитанное могло его не увидеть
+        entries.replace(userId, loading, new Recent(loaded, loaded.size() < limit, now));
+        return loaded;
+    }
+
+    /**
+     * Добавляет новые или изменившиеся транзакции в буферы их владельцев после коммита текущей транзакции.
+     */
+    public void record(Collection<Transaction> transactions) {
+        List<Change> changes = transactions.stream()
+                .map(transaction -> new Change(toDto(transaction), transaction.getFromUserId(), transaction.getToUserId()))
+                .toList();
+        afterCommit(() -> changes.forEach(change -> {
+            apply(change.fromUserId(), change.row());
+            if (!Objects.equals(change.fromUserId(), change.toUserId())) {
+                apply(change.toUserId(), change.row());
+            }
+        }));
+    }
+
+    /**
+     * Сбрасывает все буферы после коммита: для изменений, владельцы которых неизвестны.
+     */
+    public void evictAll() {
+        afterCommit(entries::clear);
+    }
+
+    private void apply(Long userId, TransactionDto row) {
+        if (userId != null) {
+            entries.computeIfPresent(userId, (id, entry) -> entry instanceof Recent recent ? recent.with(row, rows) : null);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static TransactionDto toDto(Transaction transaction) {
+        return new TransactionDto(transaction.getId(), transaction.getSourceCard().getId(),
+                transaction.getDestinationCard().getId(), transaction.getAmount(), transaction.getStatus().name(),
+                transaction.getDescription(), transaction.getCreatedAt());
+    }
+
+    private sealed interface Entry permits Recent, Loading {
+    }
+
+    /**
+     * Первые строки истории, новые сначала; complete — в буфере вся история пользователя.
+     */
+    private record Recent(List<TransactionDto> rows, boolean complete, long loadedAt) implements Entry {
+
+        Recent with(TransactionDto row, int capacity) {
+            List<TransactionDto> updated = new ArrayList<>(rows.size() + 1);
+            rows.stream().filter(existing -> !existing.id().equals(row.id())).forEach(updated::add);
+            int position = Collections.binarySearch(updated, row, HISTORY_ORDER);
+            position = position < 0 ? -position - 1 : position;
+            if (!complete && position == updated.size() && updated.size() == rows.size()) {
+                // строка старше буфера: между ней и буфером могут быть непрочитанные строки
+                return this;
+            }
+            updated.add(position, row);
+            boolean trimmed = updated.size() > capacity;
+            if (trimmed) {
+                updated.remove(updated.size() - 1);
+            }
+            return new Recent(List.copyOf(updated), complete && !trimmed, loadedAt);
+        }
+    }
+
+    /**
+     * Метка чтения из базы; сравнивается по ссылке.
+     */
+    private static final class Loading implements Entry {
+    }
+
+    private record Change(TransactionDto row, Long fromUserId, Long toUserId) {
+    }
+}
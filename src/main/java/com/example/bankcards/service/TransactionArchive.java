@@ -0,0 +1,236 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.repository.ArchivedHistoryRow;
+import com.example.bankcards.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Архив старой истории переводов: месяцы целиком перенесены из transactions в файлы HistorySegment
+ * в каталоге transfer.archive.dir. Архивные месяцы всегда старше строк таблицы,
+ * поэтому история пользователя — строки таблицы, а за ними архив от новых месяцев к старым.
+ * Каталог перечитывается раз в transfer.archive.refresh-delay-ms и после каждого архивирования.
+ */
+@Slf4j
+@Component
+public class TransactionArchive {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("history-(\\d{4}-\\d{2})-\\d{3}\\.seg");
+
+    private static final Comparator<ArchivedHistoryRow> HISTORY_ORDER = Comparator
+            .comparing(ArchivedHistoryRow::getUserId)
+            .thenComparing(ArchivedHistoryRow::getCreatedAt, Comparator.reverseOrder())
+            .thenComparing(ArchivedHistoryRow::getId, Comparator.reverseOrder());
+
+    private final TransactionRepository transactionRepository;
+    private final Path directory;
+    private final long maxSegmentBytes;
+
+    /**
+     * Новые месяцы сначала; у одного пользователя за месяц строки только в одном файле.
+     */
+    private volatile List<HistorySegment> segments = List.of();
+
+    /**
+     * Месяц, который сейчас переносится: его сегменты не читаются до коммита удаления из таблицы.
+     */
+    private volatile YearMonth archiving;
+
+    public TransactionArchive(TransactionRepository transactionRepository,
+                              @Value("${transfer.archive.dir:data/transaction-archive}") Path directory,
+                              @Value("${transfer.archive.max-segment-size:1GB}") DataSize maxSegmentSize) {
+        this.transactionRepository = transactionRepository;
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentSize.toBytes();
+    }
+
+    public boolean hasSegments() {
+        return !segments.isEmpty();
+    }
+
+    public long count(Long userId) {
+        long count = 0;
+        for (HistorySegment segment : segments) {
+            count += segment.count(userId);
+        }
+        return count;
+    }
+
+    /**
+     * Архивная история пользователя, начиная с offset-й строки, не больше limit строк.
+     */
+    public List<TransactionDto> read(Long userId, long offset, int limit) {
+        List<TransactionDto> rows = new ArrayList<>();
+        long skip = offset;
+        for (HistorySegment segment : segments) {
+            if (rows.size() >= limit) {
+                break;
+            }
+            long count = segment.count(userId);
+            if (skip >= count) {
+                skip -= count;
+                continue;
+            }
+            rows.addAll(segment.read(userId, skip, limit - rows.size()));
+            skip = 0;
+        }
+        return rows;
+    }
+
+    /**
+     * Архивная история пользователя старше позиции (createdAt, id), не больше limit строк.
+     */
+    public List<TransactionDto> readBefore(Long userId, LocalDateTime createdAt, Long id, int limit) {
+        List<TransactionDto> rows = new ArrayList<>();
+        for (HistorySegment segment : segments) {
+            if (rows.size() >= limit) {
+                break;
+            }
+            if (!segment.month().atDay(1).atStartOfDay().isAfter(createdAt)) {
+                rows.addAll(segment.readBefore(userId, createdAt, id, limit - rows.size()));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Вся архивная история пользователя; в памяти одновременно только его строки за один месяц.
+     */
+    public Stream<TransactionDto> stream(Long userId) {
+        return segments.stream().flatMap(segment -> segment.read(userId, 0, Integer.MAX_VALUE).stream());
+    }
+
+    /**
+     * Переносит транзакции месяца в сегменты и удаляет их из таблицы. Сегменты становятся видны
+     * после коммита удаления; при откате они удаляются, строки остаются в таблице.
+     * Повторный перенос того же месяца перезаписывает его сегменты.
+     */
+    @Transactional
+    public int archive(YearMonth month) {
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+        archiving = month;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<ArchivedHistoryRow> senders = transactionRepository.streamArchiveRowsBySender(from, to);
+                 Stream<ArchivedHistoryRow> receivers = transactionRepository.streamArchiveRowsByReceiver(from, to);
+                 HistorySegmentWriter writer = new HistorySegmentWriter(directory, month, maxSegmentBytes)) {
+                merge(senders.iterator(), receivers.iterator(), writer);
+                deleteParts(month, writer.finish().size());
+            }
+        } catch (IOException ex) {
+            discard(month);
+            throw new UncheckedIOException("Failed to archive transactions of " + month, ex);
+        } catch (RuntimeException ex) {
+            discard(month);
+            throw ex;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    discard(month);
+                }
+                archiving = null;
+                refresh();
+            }
+        });
+        return transactionRepository.deleteCreatedBetween(from, to);
+    }
+
+    @Scheduled(fixedDelayString = "${transfer.archive.refresh-delay-ms:60000}")
+    public synchronized void refresh() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Map<Path, HistorySegment> opened = new HashMap<>();
+        for (HistorySegment segment : segments) {
+            opened.put(segment.file(), segment);
+        }
+        List<HistorySegment> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (!name.matches()) {
+                    continue;
+                }
+                YearMonth month = YearMonth.parse(name.group(1));
+                if (month.equals(archiving)) {
+                    continue;
+                }
+                HistorySegment segment = opened.get(file);
+                found.add(segment != null ? segment : HistorySegment.open(file, month));
+            }
+        } catch (IOException ex) {
+            log.error("Failed to read transaction archive {}", directory, ex);
+            return;
+        }
+        found.sort(Comparator.comparing(HistorySegment::month).reversed());
+        segments = List.copyOf(found);
+    }
+
+    /**
+     * Сливает строки отправителей и получателей, упорядоченные по пользователю и истории.
+     */
+    private static void merge(Iterator<ArchivedHistoryRow> senders, Iterator<ArchivedHistoryRow> receivers,
+                              HistorySegmentWriter writer) throws IOException {
+        ArchivedHistoryRow sender = senders.hasNext() ? senders.next() : null;
+        ArchivedHistoryRow receiver = receivers.hasNext() ? receivers.next() : null;
+        while (sender != null || receiver != null) {
+            boolean takeSender = receiver == null || (sender != null && HISTORY_ORDER.compare(sender, receiver) <= 0);
+            ArchivedHistoryRow row = takeSender ? sender : receiver;
+            writer.append(row.getUserId(), new TransactionDto(row.getId(), row.getFromCardId(), row.getToCardId(),
+                    row.getAmount(), row.getStatus(), row.getDescription(), row.getCreatedAt()));
+            if (takeSender) {
+                sender = senders.hasNext() ? senders.next() : null;
+            } else {
+                receiver = receivers.hasNext() ? receivers.next() : null;
+            }
+        }
+    }
+
+    /**
+     * Удаляет лишние части месяца, оставшиеся от прежней попытки с большим числом файлов.
+     */
+    private void deleteParts(YearMonth month, int from) throws IOException {
+        for (int part = from; Files.deleteIfExists(directory.resolve(HistorySegmentWriter.fileName(month, part))); part++) {
+            log.info("Removed stale archive part {} of {}", part, month);
+        }
+    }
+
+    /**
+     * Сегменты месяца, не ставшие архивом, удаляются: его строки остаются в таблице.
+     */
+    private void discard(YearMonth month) {
+        try {
+            deleteParts(month, 0);
+        } catch (IOException ex) {
+            log.error("Failed to remove archive segments of {}", month, ex);
+        }
+        archiving = null;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Optional;
+
+/**
+ * Переносит в TransactionArchive месяцы старше transfer.archive.after-months целых месяцев,
+ * начиная с самого старого; каждый месяц — в своей транзакции. Включается transfer.archive.enabled.
+ * Архив лежит на локальном диске, поэтому каталог должен быть общим для всех экземпляров приложения.
+ * Ждёт, пока TransactionOwnerBackfill заполнит владельцев карт: сегменты раскладываются по ним.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.archive.enabled", havingValue = "true")
+public class TransactionArchiver {
+
+    private final TransactionArchive transactionArchive;
+    private final TransactionRepository transactionRepository;
+    private final int afterMonths;
+
+    public TransactionArchiver(TransactionArchive transactionArchive,
+                               TransactionRepository transactionRepository,
+                               @Value("${transfer.archive.after-months:13}") int afterMonths) {
+        this.transactionArchive = transactionArchive;
+        this.transactionRepository = transactionRepository;
+        this.afterMonths = afterMonths;
+    }
+
+    @Scheduled(cron = "${transfer.archive.cron:0 30 3 * * *}")
+    public void run() {
+        if (transactionRepository.existsByFromUserIdIsNull()) {
+            return;
+        }
+        Optional<LocalDateTime> oldest = transactionRepository.findOldestCreatedAt();
+        if (oldest.isEmpty()) {
+            return;
+        }
+        YearMonth cutoff = YearMonth.now().minusMonths(afterMonths);
+        for (YearMonth month = YearMonth.from(oldest.get()); month.isBefore(cutoff); month = month.plusMonths(1)) {
+            int archived = transactionArchive.archive(month);
+            log.info("Archived {} transaction(s) of {}", archived, month);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.HistoryExportFormat;
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.repository.TransactionRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка всей истории переводов пользователя одним потоком.
+ * Строки читаются курсором JDBC в транзакции только для чтения и сразу пишутся в ответ,
+ * поэтому занятая память не зависит от длины истории, а count и OFFSET не выполняются.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class TransactionExportService {
+
+    private static final String CSV_HEADER = "id,fromCardId,toCardId,amount,status,description,createdAt";
+
+    private final TransactionRepository transactionRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionArchive transactionArchive;
+
+    /**
+     * Пишет историю в out в выбранном формате и закрывает out. За строками таблицы следуют архивные.
+     */
+    public void export(Long userId, HistoryExportFormat format, OutputStream out) throws IOException {
+        try (Stream<TransactionDto> rows = Stream.concat(transactionRepository.existsByFromUserIdIsNull()
+                        ? transactionRepository.streamHistoryByCards(userId)
+                        : transactionRepository.streamHistory(userId),
+                transactionArchive.stream(userId));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            switch (format) {
+                case NDJSON -> writeNdjson(rows.iterator(), writer);
+                case CSV -> writeCsv(rows.iterator(), writer);
+            }
+        }
+    }
+
+    private void writeNdjson(Iterator<TransactionDto> rows, Writer writer) throws IOException {
+        boolean empty = !rows.hasNext();
+        try (SequenceWriter lines = objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n")
+                .writeValues(writer)) {
+            while (rows.hasNext()) {
+                lines.write(rows.next());
+            }
+        }
+        if (!empty) {
+            writer.write('\n');
+        }
+    }
+
+    private void writeCsv(Iterator<TransactionDto> rows, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        while (rows.hasNext()) {
+            TransactionDto row = rows.next();
+            writer.write(row.id() + "," + row.fromCardId() + "," + row.toCardId() + ","
+                    + row.amount().toPlainString() + "," + row.status() + ","
+                    + csvText(row.description()) + "," + row.createdAt());
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Описание задаёт пользователь: значение берётся в кавычки, если в нём есть разделитель,
+     * а начало с =, +, - или @ экранируется, чтобы табличный редактор не принял его за формулу.
+     */
+    private static String csvText(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        String text = "=+-@".indexOf(value.charAt(0)) >= 0 ? "'" + value : value;
+        if (text.chars().noneMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r')) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
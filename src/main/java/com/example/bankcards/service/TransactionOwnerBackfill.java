@@ -0,0 +1,45 @@
+package com.example.bankcards.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Заполняет from_user_id и to_user_id у транзакций, записанных до появления этих колонок.
+ * Строки обновляются пачками по transfer.history.backfill.chunk-size, каждая пачка
+ * в своей транзакции, поэтому заполнение не блокирует таблицу и может прерваться в любой момент.
+ * Новые транзакции записываются с владельцами, так что после одного полного прохода работа закончена.
+ */
+@Slf4j
+@Component
+public class TransactionOwnerBackfill {
+
+    private final TransferService transferService;
+    private final int chunkSize;
+
+    private volatile boolean done;
+
+    public TransactionOwnerBackfill(TransferService transferService,
+                                    @Value("${transfer.history.backfill.chunk-size:1000}") int chunkSize) {
+        this.transferService = transferService;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(fixedDelayString = "${transfer.history.backfill.delay-ms:60000}")
+    public void run() {
+        if (done) {
+            return;
+        }
+        long total = 0;
+        int updated;
+        do {
+            updated = transferService.backfillOwners(chunkSize);
+            total += updated;
+        } while (updated == chunkSize);
+        done = true;
+        if (total > 0) {
+            log.info("Filled card owners of {} transaction(s)", total);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Обслуживает месячные секции transactions: заранее создаёт секции на transfer.partitions.months-ahead
+ * месяцев вперёд, чтобы вставка никогда не упиралась в отсутствующую секцию, и отсоединяет секции
+ * старше transfer.partitions.detach-after-months целых месяцев (0 — не отсоединять).
+ * Отсоединённая секция остаётся отдельной таблицей и больше не читается историей.
+ * Первый запуск происходит при старте приложения.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.partitions.enabled", havingValue = "true", matchIfMissing = true)
+public class TransactionPartitionMaintenance {
+
+    private final TransactionRepository transactionRepository;
+    private final int monthsAhead;
+    private final int detachAfterMonths;
+
+    public TransactionPartitionMaintenance(TransactionRepository transactionRepository,
+                                           @Value("${transfer.partitions.months-ahead:3}") int monthsAhead,
+                                           @Value("${transfer.partitions.detach-after-months:0}") int detachAfterMonths) {
+        this.transactionRepository = transactionRepository;
+        this.monthsAhead = monthsAhead;
+        this.detachAfterMonths = detachAfterMonths;
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${transfer.partitions.maintenance-delay-ms:3600000}")
+    public void run() {
+        int created = transactionRepository.createPartitions(monthsAhead);
+        if (created > 0) {
+            log.info("Created {} transaction partition(s)", created);
+        }
+        if (detachAfterMonths > 0) {
+            int detached = transactionRepository.detachPartitions(detachBefore());
+            if (detached > 0) {
+                log.info("Detached {} transaction partition(s) older than {} months", detached, detachAfterMonths);
+            }
+        }
+    }
+
+    /**
+     * Начало месяца, отстоящего от текущего на detachAfterMonths: секции, закончившиеся до него, отсоединяются.
+     */
+    private LocalDateTime detachBefore() {
+        return LocalDate.now().withDayOfMonth(1).minusMonths(detachAfterMonths).atStartOfDay();
+    }
+}
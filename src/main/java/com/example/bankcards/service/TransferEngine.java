@@ -0,0 +1,32 @@
+package com.example.bankcards.service;
+
+/**
+ * Способ применения перевода к балансам карт
+ * Выбирается свойством transfer.engine
+ */
+public enum TransferEngine {
+    /**
+     * Карты блокируются (SELECT ... FOR UPDATE), баланс меняется в памяти и сохраняется
+     */
+    LOAD_MODIFY_SAVE,
+    /**
+     * Карты загружаются без блокировки, конфликт обнаруживается по версии при сохранении
+     * Повторные попытки выполняет TransferOrchestrator
+     */
+    OPTIMISTIC,
+    /**
+     * Списание и зачисление выполняются условными UPDATE без загрузки карт
+     * Причина отказа определяется только если UPDATE не затронул ни одной строки
+     */
+    CONDITIONAL_UPDATE,
+    /**
+     * Одновременные переводы собираются в группу и применяются одной транзакцией БД
+     * Группу формирует TransferGroupCommitter, карты блокируются как в LOAD_MODIFY_SAVE
+     */
+    GROUP_COMMIT,
+    /**
+     * Баланс ведётся по журналу LedgerService: перевод только добавляет записи
+     * Блокируется лишь карта-источник, зачисление не трогает строку карты-получателя
+     */
+    LEDGER
+}
@@ -0,0 +1,212 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.service.TransferService.TransferCommand;
+import com.example.bankcards.service.TransferService.TransferOutcome;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Групповая фиксация переводов для движка GROUP_COMMIT.
+ * Вызывающие потоки кладут переводы в очередь и ждут результат. Поток фиксации берёт
+ * первый перевод, в течение transfer.group-commit.window добирает остальные, но не больше
+ * max-batch-size, и применяет всю группу одной транзакцией через TransferService.applyAll:
+ * одна блокировка карт, пакетные UPDATE и INSERT и один коммит на группу.
+ * Окно увеличивает задержку одиночного перевода, но уменьшает число коммитов под нагрузкой.
+ */
+@Slf4j
+@Service
+public class TransferGroupCommitter {
+
+    private final TransferService transferService;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final BlockingQueue<QueuedTransfer> queue;
+
+    private final DistributionSummary batchSize;
+    private final Timer queueWait;
+    private final Timer commitTime;
+
+    private volatile Thread committer;
+    private volatile boolean running = true;
+
+    public TransferGroupCommitter(TransferService transferService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${transfer.group-commit.window:2ms}") Duration window,
+                                  @Value("${transfer.group-commit.max-batch-size:100}") int maxBatchSize,
+                                  @Value("${transfer.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.transferService = transferService;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        this.batchSize = DistributionSummary.builder("transfer.group-commit.batch.size")
+                .description("Transfers committed in one database transaction")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("transfer.group-commit.queue.wait")
+                .description("Time a transfer waited in the queue before its group started")
+                .register(meterRegistry);
+        this.commitTime = Timer.builder("transfer.group-commit.commit")
+                .description("Time to apply and commit one group")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ставит перевод в очередь и ждёт фиксации его группы.
+     * Бизнес-ошибка перевода выбрасывается так же, как при обычном переводе.
+     */
+    public TransferResponse transfer(TransferRequestDto request, Long userId) {
+        if (!running) {
+            throw new IllegalStateException("Transfer group committer is stopped");
+        }
+        ensureStarted();
+        QueuedTransfer queued = new QueuedTransfer(new TransferCommand(request, userId), System.nanoTime());
+        try {
+            queue.put(queued);
+            return queued.result().join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for group commit", ex);
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Поток фиксации запускается при первом переводе, чтобы при других движках он не работал впустую.
+     */
+    private void ensureStarted() {
+        if (committer != null) {
+            return;
+        }
+        synchronized (this) {
+            if (committer == null && running) {
+                Thread thread = new Thread(this::run, "transfer-group-committer");
+                thread.setDaemon(true);
+                thread.start();
+                committer = thread;
+            }
+        }
+    }
+
+    private void run() {
+        List<QueuedTransfer> group = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                collect(group);
+            } catch (InterruptedException ex) {
+                break;
+            }
+            if (!group.isEmpty()) {
+                commit(group);
+                group.clear();
+            }
+        }
+        failRemaining(group);
+    }
+
+    /**
+     * Ждёт первый перевод, затем добирает группу до конца окна или до max-batch-size.
+     */
+    private void collect(List<QueuedTransfer> group) throws InterruptedException {
+        QueuedTransfer first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+            return;
+        }
+        group.add(first);
+
+        long deadline = System.nanoTime() + window.toNanos();
+        while (group.size() < maxBatchSize) {
+            queue.drainTo(group, maxBatchSize - group.size());
+            long remaining = deadline - System.nanoTime();
+            if (group.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            QueuedTransfer next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            group.add(next);
+        }
+    }
+
+    private void commit(List<QueuedTransfer> group) {
+        long started = System.nanoTime();
+        for (QueuedTransfer queued : group) {
+            queueWait.record(started - queued.enqueuedAt(), TimeUnit.NANOSECONDS);
+        }
+        batchSize.record(group.size());
+
+        List<TransferOutcome> outcomes;
+        try {
+            outcomes = commitTime.recordCallable(() -> transferService.applyAll(
+                    group.stream().map(QueuedTransfer::command).toList()));
+        } catch (Exception ex) {
+            // сбой всей группы не должен ронять остальные переводы: каждый выполняется отдельно
+            log.warn("Group commit of {} transfer(s) failed, applying them one by one", group.size(), ex);
+            commitIndividually(group);
+            return;
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            TransferOutcome outcome = outcomes.get(i);
+            if (outcome.succeeded()) {
+                group.get(i).result().complete(outcome.response());
+            } else {
+                group.get(i).result().completeExceptionally(outcome.error());
+            }
+        }
+    }
+
+    private void commitIndividually(List<QueuedTransfer> group) {
+        for (QueuedTransfer queued : group) {
+            TransferCommand command = queued.command();
+            try {
+                queued.result().complete(transferService.transfer(command.request(), command.userId()));
+            } catch (RuntimeException ex) {
+                queued.result().completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void failRemaining(List<QueuedTransfer> group) {
+        queue.drainTo(group);
+        CancellationException stopped = new CancellationException("Transfer group committer stopped");
+        group.forEach(queued -> queued.result().completeExceptionally(stopped));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Thread thread = committer;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private record QueuedTransfer(TransferCommand command, long enqueuedAt, CompletableFuture<TransferResponse> result) {
+
+        QueuedTransfer(TransferCommand command, long enqueuedAt) {
+            this(command, enqueuedAt, new CompletableFuture<>());
+        }
+    }
+}
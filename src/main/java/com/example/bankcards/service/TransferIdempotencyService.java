@@ -0,0 +1,180 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.entity.TransferIdempotencyKey;
+import com.example.bankcards.exception.InvalidTransferException;
+import com.example.bankcards.repository.TransferIdempotencyKeyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Хранилище результатов переводов по заголовку Idempotency-Key.
+ * Недавние ключи хранятся в ограниченном LRU-кэше в памяти, все ключи — в таблице
+ * transfer_idempotency_keys с уникальным индексом (user_id, idempotency_key).
+ * Запись в таблицу выполняется в транзакции перевода, поэтому перевод и его ключ
+ * фиксируются вместе, а в кэш результат попадает только после коммита.
+ */
+@Slf4j
+@Service
+@Transactional(readOnly = true)
+public class TransferIdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final TransferIdempotencyKeyRepository repository;
+    private final Duration retention;
+    private final Map<String, CachedResult> recent;
+
+    public TransferIdempotencyService(TransferIdempotencyKeyRepository repository,
+                                      @Value("${transfer.idempotency.cache-size:10000}") int cacheSize,
+                                      @Value("${transfer.idempotency.retention:24h}") Duration retention) {
+        this.repository = repository;
+        this.retention = retention;
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Возвращает результат ранее выполненного перевода с тем же ключом.
+     * Попадание в кэш не обращается к базе, иначе выполняется один поиск по уникальному индексу.
+     * Ключ старше срока хранения считается отсутствующим и в кэше, и в таблице, даже если purgeExpired
+     * ещё не удалил его.
+     */
+    public Optional<TransferResponse> findCompleted(Long userId, String idempotencyKey, TransferRequestDto request) {
+        validateKey(idempotencyKey);
+        String requestHash = hash(request);
+
+        LocalDateTime expiredBefore = expiredBefore();
+        CachedResult cached = recent.get(cacheKey(userId, idempotencyKey));
+        if (cached != null && !cached.createdAt().isBefore(expiredBefore)) {
+            return Optional.of(checkSameRequest(cached, requestHash));
+        }
+
+        return repository.findByUserIdAndIdempotencyKeyAndCreatedAtGreaterThanEqual(
+                        userId, idempotencyKey, expiredBefore)
+                .map(stored -> {
+                    CachedResult result = new CachedResult(
+                            stored.getRequestHash(), toResponse(stored), stored.getCreatedAt());
+                    recent.put(cacheKey(userId, idempotencyKey), result);
+                    return checkSameRequest(result, requestHash);
+                });
+    }
+
+    /**
+     * Сохраняет результат перевода в текущей транзакции. Истёкшая запись с тем же ключом, которую
+     * ещё не удалил purgeExpired, удаляется, иначе новая нарушила бы уникальный индекс.
+     * Параллельный запрос с тем же ключом нарушит уникальный индекс, и его транзакция откатится.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Long userId, String idempotencyKey, TransferRequestDto request, TransferResponse response) {
+        validateKey(idempotencyKey);
+        String requestHash = hash(request);
+
+        LocalDateTime createdAt = LocalDateTime.now();
+        repository.deleteExpired(userId, idempotencyKey, createdAt.minus(retention));
+        repository.saveAndFlush(TransferIdempotencyKey.builder()
+                .userId(userId)
+                .idempotencyKey(idempotencyKey)
+                .requestHash(requestHash)
+                .transactionId(response.transactionId())
+                .fromCardId(response.fromCardId())
+                .toCardId(response.toCardId())
+                .amount(response.amount())
+                .status(response.status())
+                .message(response.message())
+                .completedAt(response.timestamp())
+                .build());
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recent.put(cacheKey(userId, idempotencyKey), new CachedResult(requestHash, response, createdAt));
+            }
+        });
+    }
+
+    /**
+     * Удаляет ключи старше срока хранения из таблицы и из кэша.
+     */
+    @Transactional
+    @Scheduled(cron = "${transfer.idempotency.purge-cron:0 0 * * * *}")
+    public void purgeExpired() {
+        LocalDateTime expiredBefore = expiredBefore();
+        int deleted = repository.deleteCreatedBefore(expiredBefore);
+        synchronized (recent) {
+            recent.values().removeIf(cached -> cached.createdAt().isBefore(expiredBefore));
+        }
+        if (deleted > 0) {
+            log.info("Purged {} expired idempotency keys", deleted);
+        }
+    }
+
+    private LocalDateTime expiredBefore() {
+        return LocalDateTime.now().minus(retention);
+    }
+
+    private TransferResponse checkSameRequest(CachedResult result, String requestHash) {
+        if (!result.requestHash().equals(requestHash)) {
+            throw new InvalidTransferException("Idempotency key was already used for a different transfer");
+        }
+        return result.response();
+    }
+
+    private void validateKey(String idempotencyKey) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new InvalidTransferException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+    }
+
+    private String cacheKey(Long userId, String idempotencyKey) {
+        return userId + ":" + idempotencyKey;
+    }
+
+    private String hash(TransferRequestDto request) {
+        String canonical = request.fromCardId() + "|" + request.toCardId() + "|"
+                + request.amount().stripTrailingZeros().toPlainString() + "|"
+                + (request.description() == null ? "" : request.description());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private TransferResponse toResponse(TransferIdempotencyKey stored) {
+        return new TransferResponse(
+                stored.getTransactionId(),
+                stored.getFromCardId(),
+                stored.getToCardId(),
+                stored.getAmount(),
+                stored.getStatus(),
+                stored.getMessage(),
+                stored.getCompletedAt());
+    }
+
+    private record CachedResult(String requestHash, TransferResponse response, LocalDateTime createdAt) {
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.dto.TransferResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Точка входа для переводов из контроллера.
+ * Каждая попытка выполняется в отдельной транзакции TransferService, поэтому
+ * при конфликте конкурентного изменения карт перевод можно безопасно повторить.
+ * Повторы ограничены числом попыток на перевод и общим бюджетом повторов,
+ * задержка между попытками экспоненциальная со случайным разбросом.
+ */
+@Slf4j
+@Service
+public class TransferOrchestrator {
+
+    private static final long PERMIT = 1_000;
+
+    private final TransferService transferService;
+    private final TransferIdempotencyService idempotencyService;
+    private final TransferGroupCommitter groupCommitter;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final long budgetCapacity;
+    private final long budgetRefillPerTransfer;
+    private final AtomicLong budget;
+
+    private final Counter conflicts;
+    private final Counter retries;
+    private final Counter giveUps;
+
+    public TransferOrchestrator(TransferService transferService,
+                                TransferIdempotencyService idempotencyService,
+                                TransferGroupCommitter groupCommitter,
+                                MeterRegistry meterRegistry,
+                                @Value("${transfer.retry.max-attempts:3}") int maxAttempts,
+                                @Value("${transfer.retry.initial-backoff:10ms}") Duration initialBackoff,
+                                @Value("${transfer.retry.max-backoff:200ms}") Duration maxBackoff,
+                                @Value("${transfer.retry.budget.capacity:100}") int budgetCapacity,
+                                @Value("${transfer.retry.budget.ratio:0.1}") double budgetRatio) {
+        this.transferService = transferService;
+        this.idempotencyService = idempotencyService;
+        this.groupCommitter = groupCommitter;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.budgetCapacity = budgetCapacity * PERMIT;
+        this.budgetRefillPerTransfer = Math.round(budgetRatio * PERMIT);
+        this.budget = new AtomicLong(this.budgetCapacity);
+
+        String engine = transferService.getEngine().name();
+        this.conflicts = Counter.builder("transfer.conflicts")
+                .description("Transfer attempts failed by a concurrent update of the same cards")
+                .tag("engine", engine)
+                .register(meterRegistry);
+        this.retries = Counter.builder("transfer.retries")
+                .description("Transfer attempts repeated after a conflict")
+                .tag("engine", engine)
+                .register(meterRegistry);
+        this.giveUps = Counter.builder("transfer.retry.give-ups")
+                .description("Transfers failed after exhausting attempts or the retry budget")
+                .tag("engine", engine)
+                .register(meterRegistry);
+    }
+
+    public TransferResponse transfer(TransferRequestDto request, Long userId) {
+        return transfer(request, userId, null);
+    }
+
+    /**
+     * Выполняет перевод с необязательным ключом идемпотентности.
+     * Повтор с уже использованным ключом возвращает сохранённый результат одним поиском,
+     * без блокировок и записи. Если параллельный запрос с тем же ключом зафиксировался
+     * первым, уникальный индекс откатывает этот перевод и возвращается результат победителя.
+     */
+    public TransferResponse transfer(TransferRequestDto request, Long userId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return transferWithRetry(request, userId, null);
+        }
+        return withIdempotencyKey(request, userId, idempotencyKey,
+                () -> transferWithRetry(request, userId, idempotencyKey));
+    }
+
+    /**
+     * Принимает перевод в асинхронную очередь. Карты не блокируются, поэтому повторы не нужны,
+     * а ключ идемпотентности защищает от повторной постановки в очередь.
+     */
+    public TransferResponse submit(TransferRequestDto request, Long userId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return transferService.submit(request, userId);
+        }
+        return withIdempotencyKey(request, userId, idempotencyKey,
+                () -> transferService.submit(request, userId, idempotencyKey));
+    }
+
+    private TransferResponse withIdempotencyKey(TransferRequestDto request, Long userId, String idempotencyKey,
+                                                Supplier<TransferResponse> operation) {
+        Optional<TransferResponse> previous = idempotencyService.findCompleted(userId, idempotencyKey, request);
+        if (previous.isPresent()) {
+            return previous.get();
+        }
+
+        try {
+            return operation.get();
+        } catch (DataIntegrityViolationException ex) {
+            return idempotencyService.findCompleted(userId, idempotencyKey, request).orElseThrow(() -> ex);
+        }
+    }
+
+    private TransferResponse transferWithRetry(TransferRequestDto request, Long userId, String idempotencyKey) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                TransferResponse response = attempt(request, userId, idempotencyKey);
+                refillBudget();
+                return response;
+            } catch (ConcurrencyFailureException ex) {
+                conflicts.increment();
+                if (attempt >= maxAttempts || !acquireRetryPermit()) {
+                    giveUps.increment();
+                    log.debug("Transfer from card {} to card {} gave up after {} attempt(s)",
+                            request.fromCardId(), request.toCardId(), attempt);
+                    throw ex;
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Перевод с ключом идемпотентности выполняется отдельной транзакцией даже при GROUP_COMMIT,
+     * чтобы ключ фиксировался вместе со своим переводом.
+     */
+    private TransferResponse attempt(TransferRequestDto request, Long userId, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return transferService.transfer(request, userId, idempotencyKey);
+        }
+        if (transferService.getEngine() == TransferEngine.GROUP_COMMIT) {
+            return groupCommitter.transfer(request, userId);
+        }
+        return transferService.transfer(request, userId);
+    }
+
+    /**
+     * Каждый успешный перевод пополняет бюджет на долю повтора,
+     * поэтому при массовых конфликтах повторы не умножают нагрузку на базу.
+     */
+    private void refillBudget() {
+        budget.accumulateAndGet(budgetRefillPerTransfer, (current, refill) -> Math.min(budgetCapacity, current + refill));
+    }
+
+    private boolean acquireRetryPermit() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < PERMIT) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - PERMIT));
+        return true;
+    }
+
+    /**
+     * Экспоненциальная задержка с полным случайным разбросом: от нуля до initial * 2^(attempt-1), но не больше max.
+     */
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt - 1, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry transfer", ex);
+        }
+    }
+}
@@ -1,74 +1,719 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.BatchTransferItemResultDto;
+import com.example.bankcards.dto.BatchTransferRequestDto;
+import com.example.bankcards.dto.BatchTransferResponseDto;
+import com.example.bankcards.dto.TransactionCursorPageDto;
 import com.example.bankcards.dto.TransactionDto;
 import com.example.bankcards.dto.TransferRequestDto;
 import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.dto.TransferStatusDto;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.Transaction;
 import com.example.bankcards.entity.TransactionStatus;
+import com.example.bankcards.exception.BatchTransferRejectedException;
 import com.example.bankcards.exception.CardBlockedException;
 import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.InsufficientBalanceException;
 import com.example.bankcards.exception.InvalidTransferException;
+import com.example.bankcards.exception.TransferNotFoundException;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.TransactionRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 public class TransferService {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
     private final CardRepository cardRepository;
     private final TransactionRepository transactionRepository;
+    private final TransferIdempotencyService idempotencyService;
+    private final LedgerService ledgerService;
+    private final HotCardService hotCardService;
+    private final HistoryCountCache historyCountCache;
+    private final TransactionArchive transactionArchive;
+    private final RecentHistoryCache recentHistoryCache;
+
+    @Value("${transfer.engine:LOAD_MODIFY_SAVE}")
+    private TransferEngine engine = TransferEngine.LOAD_MODIFY_SAVE;
+
+    private volatile boolean ownersBackfilled;
 
+    /**
+     * Списание с горячей карты при CONDITIONAL_UPDATE выполняется с блокировкой строки:
+     * условный UPDATE не видит средства в слотах.
+     */
     @Transactional
     public TransferResponse transfer(TransferRequestDto request, Long userId) {
+        if (engine == TransferEngine.CONDITIONAL_UPDATE && !isStriped(request.fromCardId())) {
+            return transferWithConditionalUpdates(request, userId);
+        }
+        if (engine == TransferEngine.LEDGER) {
+            return transferWithLedger(request, userId);
+        }
 
-        Card fromCard = cardRepository.findById(request.fromCardId())
-                .orElseThrow(() -> new CardNotFoundException(request.fromCardId()));
+        List<Long> debited = List.of(request.fromCardId());
+        List<Long> credited = List.of(request.toCardId());
+        TransferCards cards = engine == TransferEngine.OPTIMISTIC
+                ? new TransferCards(loadCards(List.of(request.fromCardId(), request.toCardId())),
+                        stripedCredits(debited, credited))
+                : lockCards(debited, credited);
 
-        Card toCard = cardRepository.findById(request.toCardId())
-                .orElseThrow(() -> new CardNotFoundException(request.toCardId()));
+        Transaction transaction = applyToCards(request, userId, cards);
+
+        cardRepository.save(transaction.getSourceCard());
+        cardRepository.save(transaction.getDestinationCard());
+
+        Transaction saved = transactionRepository.save(transaction);
+        ledgerService.recordTransfer(saved);
+        recentHistoryCache.record(List.of(saved));
+
+        return successResponse(saved, request);
+    }
+
+    /**
+     * Перевод с ключом идемпотентности: результат сохраняется в той же транзакции,
+     * поэтому повтор запроса не может выполнить перевод второй раз.
+     */
+    @Transactional
+    public TransferResponse transfer(TransferRequestDto request, Long userId, String idempotencyKey) {
+        TransferResponse response = transfer(request, userId);
+        idempotencyService.record(userId, idempotencyKey, request, response);
+        return response;
+    }
+
+    /**
+     * Выполняет пакет переводов одного пользователя в одной транзакции.
+     * В атомарном режиме ошибка любого перевода откатывает весь пакет,
+     * а результат по каждому переводу возвращается в BatchTransferRejectedException.
+     */
+    @Transactional
+    public BatchTransferResponseDto transferBatch(BatchTransferRequestDto request, Long userId) {
+        List<TransferCommand> commands = request.transfers().stream()
+                .map(transfer -> new TransferCommand(transfer, userId))
+                .toList();
+
+        BatchTransferResponseDto response = toBatchResponse(applyAll(commands), request.atomic());
+        if (!response.committed()) {
+            throw new BatchTransferRejectedException(response);
+        }
+        return response;
+    }
+
+    /**
+     * Применяет несколько переводов в одной транзакции.
+     * Сначала все переводы проверяются без обращения к базе, затем все карты
+     * блокируются одним запросом по возрастанию id, балансы меняются в памяти,
+     * а записи транзакций вставляются одним JDBC-пакетом.
+     * Бизнес-ошибка перевода не прерывает остальные и возвращается в его результате.
+     */
+    @Transactional
+    public List<TransferOutcome> applyAll(List<TransferCommand> commands) {
+        List<TransferOutcome> outcomes = new ArrayList<>(Collections.nCopies(commands.size(), null));
+        Set<Long> debited = new TreeSet<>();
+        Set<Long> credited = new TreeSet<>();
+        for (int i = 0; i < commands.size(); i++) {
+            TransferRequestDto request = commands.get(i).request();
+            try {
+                validateRequest(request);
+                debited.add(request.fromCardId());
+                credited.add(request.toCardId());
+            } catch (InvalidTransferException ex) {
+                outcomes.set(i, TransferOutcome.failed(ex));
+            }
+        }
+
+        TransferCards cards = debited.isEmpty() ? TransferCards.EMPTY : lockCards(debited, credited);
+
+        List<Transaction> transactions = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            if (outcomes.get(i) != null) {
+                continue;
+            }
+            TransferCommand command = commands.get(i);
+            try {
+                transactions.add(applyToCards(command.request(), command.userId(), cards));
+                positions.add(i);
+            } catch (CardNotFoundException | InvalidTransferException | CardBlockedException
+                     | InsufficientBalanceException ex) {
+                outcomes.set(i, TransferOutcome.failed(ex));
+            }
+        }
+
+        List<Transaction> saved = transactionRepository.saveAll(transactions);
+        ledgerService.recordTransfers(saved);
+        recentHistoryCache.record(saved);
+        for (int k = 0; k < positions.size(); k++) {
+            int position = positions.get(k);
+            outcomes.set(position, TransferOutcome.succeeded(
+                    successResponse(saved.get(k), commands.get(position).request())));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Принимает перевод для асинхронного выполнения: сохраняет транзакцию в статусе PENDING
+     * без блокировки карт. Баланс проверяется при выполнении в PendingTransferProcessor.
+     */
+    @Transactional
+    public TransferResponse submit(TransferRequestDto request, Long userId) {
+        validateRequest(request);
 
+        Map<Long, Card> cards = loadCards(List.of(request.fromCardId(), request.toCardId()));
+        Card fromCard = findLoaded(cards, request.fromCardId());
+        Card toCard = findLoaded(cards, request.toCardId());
         validateTransfer(fromCard, toCard, request.amount(), userId);
 
-        fromCard.withdraw(request.amount());
-        toCard.deposit(request.amount());
+        Transaction saved = transactionRepository.save(Transaction.builder()
+                .sourceCard(fromCard)
+                .destinationCard(toCard)
+                .fromUserId(userId)
+                .toUserId(userId)
+                .amount(request.amount())
+                .description(request.description())
+                .status(TransactionStatus.PENDING)
+                .build());
+        recentHistoryCache.record(List.of(saved));
+
+        return new TransferResponse(
+                saved.getId(),
+                request.fromCardId(),
+                request.toCardId(),
+                request.amount(),
+                TransactionStatus.PENDING.name(),
+                "Transfer accepted for processing",
+                LocalDateTime.now());
+    }
+
+    @Transactional
+    public TransferResponse submit(TransferRequestDto request, Long userId, String idempotencyKey) {
+        TransferResponse response = submit(request, userId);
+        idempotencyService.record(userId, idempotencyKey, request, response);
+        return response;
+    }
 
-        cardRepository.save(fromCard);
-        cardRepository.save(toCard);
+    /**
+     * Захватывает до limit ожидающих переводов и переводит их в PROCESSING с отметкой времени захвата.
+     * Строки, уже захваченные другим обработчиком, пропускаются (FOR UPDATE SKIP LOCKED).
+     */
+    @Transactional
+    public List<Long> claimPending(int limit) {
+        List<Transaction> pending = transactionRepository.findForUpdateSkipLocked(
+                TransactionStatus.PENDING, PageRequest.of(0, limit));
+        LocalDateTime claimedAt = LocalDateTime.now();
+        pending.forEach(transaction -> {
+            transaction.setStatus(TransactionStatus.PROCESSING);
+            transaction.setClaimedAt(claimedAt);
+        });
+        recentHistoryCache.record(pending);
+        return pending.stream().map(Transaction::getId).toList();
+    }
+
+    /**
+     * Возвращает в PENDING до limit переводов, захваченных раньше чем lease назад, —
+     * их обработчик, вероятно, остановился вместе с узлом. Переводы, которые сейчас
+     * выполняются, заблокированы в processClaimed и пропускаются (FOR UPDATE SKIP LOCKED).
+     */
+    @Transactional
+    public int releaseExpiredClaims(Duration lease, int limit) {
+        List<Transaction> expired = transactionRepository.findClaimedBeforeForUpdateSkipLocked(
+                TransactionStatus.PROCESSING, LocalDateTime.now().minus(lease), PageRequest.of(0, limit));
+        expired.forEach(transaction -> transaction.setStatus(TransactionStatus.PENDING));
+        recentHistoryCache.record(expired);
+        return expired.size();
+    }
+
+    /**
+     * Выполняет захваченные переводы в одной транзакции: сначала блокируются сами переводы,
+     * затем карты всех переводов одним запросом по возрастанию id, переводы применяются по порядку id.
+     * Блокировка переводов не даёт releaseExpiredClaims вернуть их в очередь во время выполнения,
+     * а перевод, который уже вернули и выполнил другой обработчик, отсеивается по статусу.
+     * Бизнес-ошибка переводит транзакцию в FAILED с причиной в errorMessage.
+     */
+    @Transactional
+    public void processClaimed(Collection<Long> transactionIds) {
+        List<Transaction> claimed = transactionRepository.findAllByIdForUpdate(transactionIds).stream()
+                .filter(transaction -> transaction.getStatus() == TransactionStatus.PROCESSING)
+                .toList();
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        Set<Long> debited = new TreeSet<>();
+        Set<Long> credited = new TreeSet<>();
+        for (Transaction transaction : claimed) {
+            debited.add(transaction.getSourceCard().getId());
+            credited.add(transaction.getDestinationCard().getId());
+        }
+        TransferCards cards = lockCards(debited, credited);
 
-        Transaction transaction = Transaction.builder()
+        List<Transaction> completed = new ArrayList<>(claimed.size());
+        for (Transaction transaction : claimed) {
+            TransferRequestDto request = new TransferRequestDto(
+                    transaction.getSourceCard().getId(),
+                    transaction.getDestinationCard().getId(),
+                    transaction.getAmount(),
+                    transaction.getDescription());
+            // при приёме перевода проверено, что обе карты принадлежат владельцу карты-источника
+            Long userId = Optional.ofNullable(cards.byId().get(request.fromCardId()))
+                    .map(card -> card.getOwner().getId())
+                    .orElse(null);
+            try {
+                validateRequest(request);
+                moveFunds(request, userId, cards);
+                transaction.setStatus(TransactionStatus.COMPLETED);
+                completed.add(transaction);
+            } catch (CardNotFoundException | InvalidTransferException | CardBlockedException
+                     | InsufficientBalanceException ex) {
+                transaction.setStatus(TransactionStatus.FAILED);
+                transaction.setErrorMessage(ex.getMessage());
+            }
+            transaction.setCompletedAt(LocalDateTime.now());
+        }
+        ledgerService.recordTransfers(completed);
+        recentHistoryCache.record(claimed);
+    }
+
+    /**
+     * Возвращает захваченные переводы в очередь, если их обработка прервалась не бизнес-ошибкой.
+     */
+    @Transactional
+    public void releaseClaimed(Collection<Long> transactionIds) {
+        transactionRepository.updateStatus(transactionIds, TransactionStatus.PROCESSING, TransactionStatus.PENDING);
+        // владельцы возвращённых переводов не загружались, а сбой обработки редок
+        recentHistoryCache.evictAll();
+    }
+
+    public TransferStatusDto getTransferStatus(Long transactionId, Long userId) {
+        return transactionRepository.findById(transactionId)
+                .filter(transaction -> transaction.getSourceCard().getOwner().getId().equals(userId))
+                .map(transaction -> new TransferStatusDto(
+                        transaction.getId(),
+                        transaction.getSourceCard().getId(),
+                        transaction.getDestinationCard().getId(),
+                        transaction.getAmount(),
+                        transaction.getStatus().name(),
+                        transaction.getErrorMessage(),
+                        transaction.getCreatedAt(),
+                        transaction.getCompletedAt()))
+                .orElseThrow(() -> new TransferNotFoundException(transactionId));
+    }
+
+    /**
+     * Проверяет перевод по уже загруженным картам и меняет их балансы в памяти.
+     * Возвращает несохранённую запись о завершённой транзакции.
+     */
+    private Transaction applyToCards(TransferRequestDto request, Long userId, TransferCards cards) {
+        moveFunds(request, userId, cards);
+
+        return completedTransaction(request, userId,
+                cards.byId().get(request.fromCardId()), cards.byId().get(request.toCardId()));
+    }
+
+    /**
+     * Перевод возможен только между картами пользователя, это проверено до записи транзакции,
+     * поэтому владелец обеих карт — userId.
+     */
+    private Transaction completedTransaction(TransferRequestDto request, Long userId, Card fromCard, Card toCard) {
+        return Transaction.builder()
                 .sourceCard(fromCard)
                 .destinationCard(toCard)
+                .fromUserId(userId)
+                .toUserId(userId)
                 .amount(request.amount())
                 .description(request.description())
                 .status(TransactionStatus.COMPLETED)
                 .completedAt(LocalDateTime.now())
                 .build();
+    }
 
-        Transaction saved = transactionRepository.save(transaction);
+    /**
+     * Горячая карта-получатель, загруженная без блокировки, получает зачисление в слот баланса.
+     * Если основной части баланса карты-источника не хватает, в неё переносятся её слоты.
+     */
+    private void moveFunds(TransferRequestDto request, Long userId, TransferCards cards) {
+        Card fromCard = findLoaded(cards.byId(), request.fromCardId());
+        Card toCard = findLoaded(cards.byId(), request.toCardId());
 
+        validateTransfer(fromCard, toCard, request.amount(), userId);
+
+        if (engine != TransferEngine.LEDGER && fromCard.getBalance().compareTo(request.amount()) < 0) {
+            hotCardService.drainInto(fromCard, request.amount());
+        }
+        fromCard.withdraw(request.amount());
+        if (cards.striped().contains(toCard.getId())) {
+            hotCardService.credit(toCard.getId(), request.amount());
+        } else {
+            toCard.deposit(request.amount());
+        }
+    }
+
+    private Card findLoaded(Map<Long, Card> cards, Long cardId) {
+        return Optional.ofNullable(cards.get(cardId))
+                .orElseThrow(() -> new CardNotFoundException(cardId));
+    }
+
+    private BatchTransferResponseDto toBatchResponse(List<TransferOutcome> outcomes, boolean atomic) {
+        int failed = (int) outcomes.stream().filter(outcome -> !outcome.succeeded()).count();
+        boolean committed = !atomic || failed == 0;
+
+        List<BatchTransferItemResultDto> results = new ArrayList<>(outcomes.size());
+        for (int i = 0; i < outcomes.size(); i++) {
+            TransferOutcome outcome = outcomes.get(i);
+            if (!outcome.succeeded()) {
+                results.add(new BatchTransferItemResultDto(i, null, null, null, null,
+                        "FAILED", outcome.error().getMessage()));
+            } else if (committed) {
+                TransferResponse response = outcome.response();
+                results.add(new BatchTransferItemResultDto(i, response.transactionId(), response.fromCardId(),
+                        response.toCardId(), response.amount(), "SUCCESS", response.message()));
+            } else {
+                TransferResponse response = outcome.response();
+                results.add(new BatchTransferItemResultDto(i, null, response.fromCardId(),
+                        response.toCardId(), response.amount(), "ROLLED_BACK",
+                        "Transfer rolled back because another transfer in the atomic batch failed"));
+            }
+        }
+
+        int succeeded = committed ? outcomes.size() - failed : 0;
+        return new BatchTransferResponseDto(outcomes.size(), succeeded, failed, atomic, committed, results);
+    }
+
+    /**
+     * Перевод без загрузки карт: списание и зачисление выполняются условными UPDATE.
+     * При успехе это два UPDATE и один INSERT, карты читаются только для объяснения отказа.
+     */
+    private TransferResponse transferWithConditionalUpdates(TransferRequestDto request, Long userId) {
+        validateRequest(request);
+
+        // UPDATE блокирует строку, поэтому карты изменяются по возрастанию id, как и в lockCards;
+        // зачисление в слот горячей карты строку карты не блокирует
+        if (isStriped(request.toCardId())) {
+            debit(request, userId);
+            creditSlot(request, userId);
+        } else if (request.fromCardId() < request.toCardId()) {
+            debit(request, userId);
+            credit(request, userId);
+        } else {
+            credit(request, userId);
+            debit(request, userId);
+        }
+
+        Transaction saved = transactionRepository.save(completedTransaction(request, userId,
+                cardRepository.getReferenceById(request.fromCardId()),
+                cardRepository.getReferenceById(request.toCardId())));
+        ledgerService.recordTransfer(saved);
+        recentHistoryCache.record(List.of(saved));
+
+        return successResponse(saved, request);
+    }
+
+    /**
+     * Перевод по журналу: строка карты-источника блокируется, чтобы списания с неё шли по очереди
+     * и баланс по журналу нельзя было потратить дважды. Карта-получатель читается без блокировки,
+     * а её баланс растёт только за счёт новой записи журнала, поэтому горячий получатель
+     * не становится точкой конкуренции.
+     */
+    private TransferResponse transferWithLedger(TransferRequestDto request, Long userId) {
+        validateRequest(request);
+
+        Card fromCard = cardRepository.findAllByIdForUpdate(List.of(request.fromCardId())).stream()
+                .findFirst()
+                .orElseThrow(() -> new CardNotFoundException(request.fromCardId()));
+        Card toCard = cardRepository.findById(request.toCardId())
+                .orElseThrow(() -> new CardNotFoundException(request.toCardId()));
+        validateTransfer(fromCard, toCard, request.amount(), userId);
+
+        // баланс в cards при этом движке не ведётся, строка карты не изменяется
+        BigDecimal available = ledgerService.balanceOf(fromCard.getId());
+        if (available.compareTo(request.amount()) < 0) {
+            throw new InsufficientBalanceException(request.amount(), available);
+        }
+
+        Transaction saved = transactionRepository.save(completedTransaction(request, userId, fromCard, toCard));
+        ledgerService.recordTransfer(saved);
+        recentHistoryCache.record(List.of(saved));
+
+        return successResponse(saved, request);
+    }
+
+    private void debit(TransferRequestDto request, Long userId) {
+        if (cardRepository.debitIfAvailable(request.fromCardId(), userId, request.amount()) == 0) {
+            throw explainRejectedUpdate(request.fromCardId(), userId, request.amount(), true);
+        }
+    }
+
+    private void credit(TransferRequestDto request, Long userId) {
+        if (cardRepository.creditIfActive(request.toCardId(), userId, request.amount()) == 0) {
+            throw explainRejectedUpdate(request.toCardId(), userId, request.amount(), false);
+        }
+    }
+
+    private void creditSlot(TransferRequestDto request, Long userId) {
+        Card toCard = cardRepository.findById(request.toCardId())
+                .orElseThrow(() -> new CardNotFoundException(request.toCardId()));
+        if (!toCard.getOwner().getId().equals(userId)) {
+            throw new InvalidTransferException("Destination card does not belong to user");
+        }
+        if (!toCard.isActiveAndValid()) {
+            throw new CardBlockedException(toCard.getId(), "Destination card is not active");
+        }
+        hotCardService.credit(toCard.getId(), request.amount());
+    }
+
+    public TransferEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Загружает карты без блокировки, конкурентное изменение обнаружится по версии при сохранении.
+     */
+    private Map<Long, Card> loadCards(Collection<Long> cardIds) {
+        return cardRepository.findAllById(cardIds).stream()
+                .collect(Collectors.toMap(Card::getId, Function.identity()));
+    }
+
+    /**
+     * Блокирует карты в порядке возрастания id и возвращает их по id.
+     * Горячие карты, на которые только зачисляют, загружаются без блокировки:
+     * зачисление уйдёт в слот баланса.
+     * При движке LEDGER баланс в cards не ведётся при каждом переводе,
+     * поэтому после блокировки он заменяется балансом по журналу.
+     */
+    private TransferCards lockCards(Collection<Long> debited, Collection<Long> credited) {
+        Set<Long> striped = stripedCredits(debited, credited);
+        Set<Long> locked = new TreeSet<>(debited);
+        credited.stream().filter(cardId -> !striped.contains(cardId)).forEach(locked::add);
+
+        Map<Long, Card> cards = cardRepository.findAllByIdForUpdate(locked).stream()
+                .collect(Collectors.toMap(Card::getId, Function.identity()));
+        if (!striped.isEmpty()) {
+            cards.putAll(loadCards(striped));
+        }
+        if (engine == TransferEngine.LEDGER) {
+            ledgerService.balancesOf(cards.keySet()).forEach((cardId, balance) -> cards.get(cardId).setBalance(balance));
+        }
+        return new TransferCards(cards, striped);
+    }
+
+    private Set<Long> stripedCredits(Collection<Long> debited, Collection<Long> credited) {
+        return credited.stream()
+                .filter(cardId -> !debited.contains(cardId) && isStriped(cardId))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Журнал сам распределяет зачисления по записям, поэтому при LEDGER слоты не используются.
+     */
+    private boolean isStriped(Long cardId) {
+        return engine != TransferEngine.LEDGER && hotCardService.isHot(cardId);
+    }
+
+    /**
+     * Определяет, почему условный UPDATE не изменил карту.
+     * Исключение откатывает транзакцию, в том числе уже выполненное списание.
+     */
+    private RuntimeException explainRejectedUpdate(Long cardId, Long userId, BigDecimal amount, boolean source) {
+        String side = source ? "Source" : "Destination";
+
+        Card card = cardRepository.findById(cardId).orElse(null);
+        if (card == null) {
+            return new CardNotFoundException(cardId);
+        }
+        if (!card.getOwner().getId().equals(userId)) {
+            return new InvalidTransferException(side + " card does not belong to user");
+        }
+        if (!card.isActiveAndValid()) {
+            return new CardBlockedException(cardId, side + " card is not active");
+        }
+        if (source && card.getBalance().compareTo(amount) < 0) {
+            return new InsufficientBalanceException(amount, card.getBalance());
+        }
+        return new InvalidTransferException(side + " card changed during transfer, please retry");
+    }
+
+    private TransferResponse successResponse(Transaction saved, TransferRequestDto request) {
         return new TransferResponse(
                 saved.getId(),
-                fromCard.getId(),
-                toCard.getId(),
+                request.fromCardId(),
+                request.toCardId(),
                 request.amount(),
                 "SUCCESS",
                 "Transfer completed successfully",
                 LocalDateTime.now());
     }
 
+    /**
+     * История переводов, новые сначала. Когда у всех транзакций заполнены владельцы карт,
+     * страница читается по индексам владельцев с одной лишней строкой, а общее число строк
+     * берётся из HistoryCountCache и считается только если страница не последняя.
+     * За последней строкой таблицы история продолжается строками TransactionArchive.
+     * Первая страница берётся из RecentHistoryCache.
+     */
     public Page<TransactionDto> getTransactionHistory(Long userId, Pageable pageable) {
-        Page<Transaction> transactions = transactionRepository.findByUserId(userId, pageable);
-        return transactions.map(this::mapToDto);
+        if (!ownersBackfilled()) {
+            return transactionRepository.findByUserId(userId, pageable);
+        }
+        return Pages.withTotal(historySlice(userId, pageable),
+                () -> historyCountCache.get(userId, () -> transactionRepository.countHistory(userId))
+                        + transactionArchive.count(userId));
+    }
+
+    /**
+     * История переводов без общего числа строк: только признак следующей страницы.
+     * Пока владельцы карт не заполнены, страница читается прежним запросом с подсчётом.
+     */
+    public Slice<TransactionDto> getTransactionHistorySlice(Long userId, Pageable pageable) {
+        if (!ownersBackfilled()) {
+            return transactionRepository.findByUserId(userId, pageable);
+        }
+        return historySlice(userId, pageable);
+    }
+
+    /**
+     * История переводов по курсору: следующая страница ищется условием по (createdAt, id),
+     * поэтому время запроса не растёт с глубиной, а общее число строк не считается.
+     * Запрашивается на одну строку больше страницы, чтобы узнать, есть ли следующая.
+     * Страница без курсора берётся из RecentHistoryCache.
+     */
+    public TransactionCursorPageDto getTransactionHistory(Long userId, String cursor, int size) {
+        int limit = Math.min(Math.max(size, 1), MAX_HISTORY_PAGE_SIZE);
+        Pageable window = PageRequest.of(0, limit + 1);
+
+        HistoryCursor position = cursor == null || cursor.isBlank() ? null : HistoryCursor.decode(cursor);
+        List<TransactionDto> transactions;
+        boolean first = ownersBackfilled() && position == null;
+        if (first) {
+            transactions = recentHistoryCache.first(userId, limit + 1, rows -> latest(userId, rows));
+        } else if (ownersBackfilled()) {
+            transactions = loadInOrder(
+                    transactionRepository.findHistoryIdsBefore(userId, position.createdAt(), position.id(), limit + 1));
+        } else if (position == null) {
+            transactions = transactionRepository.findLatestByUserId(userId, window);
+        } else {
+            transactions = transactionRepository.findByUserIdBefore(userId, position.createdAt(), position.id(), window);
+        }
+
+        if (!first && transactions.size() <= limit && transactionArchive.hasSegments()) {
+            transactions = withArchived(userId, transactions, position, limit + 1);
+        }
+
+        boolean hasNext = transactions.size() > limit;
+        List<TransactionDto> page = hasNext ? transactions.subList(0, limit) : transactions;
+        String nextCursor = hasNext ? HistoryCursor.after(page.get(page.size() - 1)).encode() : null;
+        return new TransactionCursorPageDto(List.copyOf(page), nextCursor);
+    }
+
+    /**
+     * Заполняет владельцев карт у очередной пачки старых транзакций в отдельной транзакции.
+     */
+    @Transactional
+    public int backfillOwners(int chunkSize) {
+        return transactionRepository.backfillOwners(chunkSize);
+    }
+
+    /**
+     * Пока TransactionOwnerBackfill не заполнил владельцев у старых транзакций,
+     * история читается прежними запросами через cards. После заполнения проверка больше не выполняется.
+     */
+    private boolean ownersBackfilled() {
+        if (!ownersBackfilled) {
+            ownersBackfilled = !transactionRepository.existsByFromUserIdIsNull();
+        }
+        return ownersBackfilled;
+    }
+
+    private Slice<TransactionDto> historySlice(Long userId, Pageable pageable) {
+        int size = pageable.getPageSize();
+        if (pageable.getOffset() == 0) {
+            List<TransactionDto> first = recentHistoryCache.first(userId, size + 1, limit -> latest(userId, limit));
+            boolean hasNext = first.size() > size;
+            return new SliceImpl<>(hasNext ? first.subList(0, size) : first, pageable, hasNext);
+        }
+        List<Long> ids = transactionRepository.findHistoryIds(userId, pageable.getOffset(),
+                size + 1, pageable.getOffset() + size + 1);
+        if (ids.size() > size) {
+            return new SliceImpl<>(loadInOrder(ids.subList(0, size)), pageable, true);
+        }
+        if (!transactionArchive.hasSegments()) {
+            return new SliceImpl<>(loadInOrder(ids), pageable, false);
+        }
+
+        // страница дошла до конца таблицы: остаток берётся из архива, смещение в нём — за строками таблицы
+        List<TransactionDto> page = new ArrayList<>(loadInOrder(ids));
+        long archiveOffset = ids.isEmpty()
+                ? Math.max(0, pageable.getOffset() - transactionRepository.countHistory(userId))
+                : 0;
+        page.addAll(transactionArchive.read(userId, archiveOffset, size + 1 - page.size()));
+        boolean hasNext = page.size() > size;
+        return new SliceImpl<>(hasNext ? page.subList(0, size) : page, pageable, hasNext);
+    }
+
+    /**
+     * Первые limit строк истории: строки таблицы, а если их не хватает — архивные.
+     */
+    private List<TransactionDto> latest(Long userId, int limit) {
+        List<TransactionDto> rows = loadInOrder(transactionRepository.findHistoryIds(userId, 0, limit, limit));
+        if (rows.size() < limit && transactionArchive.hasSegments()) {
+            rows = withArchived(userId, rows, null, limit);
+        }
+        return rows;
+    }
+
+    /**
+     * Дополняет строки таблицы архивными строками, старшими последней из них или курсора.
+     */
+    private List<TransactionDto> withArchived(Long userId, List<TransactionDto> transactions,
+                                              HistoryCursor position, int limit) {
+        HistoryCursor from = transactions.isEmpty() ? position : HistoryCursor.after(transactions.get(transactions.size() - 1));
+        List<TransactionDto> rows = new ArrayList<>(transactions);
+        int missing = limit - rows.size();
+        rows.addAll(from == null
+                ? transactionArchive.read(userId, 0, missing)
+                : transactionArchive.readBefore(userId, from.createdAt(), from.id(), missing));
+        return rows;
+    }
+
+    private List<TransactionDto> loadInOrder(List<Long> ids) {
+        return ids.isEmpty() ? List.of() : transactionRepository.findHistoryItems(ids);
+    }
+
+    /**
+     * Проверки, не требующие загрузки карт.
+     */
+    private void validateRequest(TransferRequestDto request) {
+        if (request.fromCardId().equals(request.toCardId())) {
+            throw new InvalidTransferException("Cannot transfer to the same card");
+        }
+        if (request.amount().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new InvalidTransferException("Transfer amount must be positive");
+        }
     }
 
     private void validateTransfer(Card fromCard, Card toCard, BigDecimal amount, Long userId) {
@@ -96,15 +741,35 @@ public class TransferService {
         }
     }
 
-    private TransactionDto mapToDto(Transaction transaction) {
-        return new TransactionDto(
-                transaction.getId(),
-                transaction.getSourceCard().getId(),
-                transaction.getDestinationCard().getId(),
-                transaction.getAmount(),
-                transaction.getStatus().name(),
-                transaction.getDescription(),
-                transaction.getCreatedAt()
-        );
+    /**
+     * Карты переводов по id и горячие получатели, загруженные без блокировки.
+     */
+    private record TransferCards(Map<Long, Card> byId, Set<Long> striped) {
+
+        static final TransferCards EMPTY = new TransferCards(Map.of(), Set.of());
+    }
+
+    /**
+     * Перевод, выполняемый от имени пользователя в составе пакета.
+     */
+    public record TransferCommand(TransferRequestDto request, Long userId) {
+    }
+
+    /**
+     * Результат перевода в пакете: ответ при успехе или бизнес-ошибка.
+     */
+    public record TransferOutcome(TransferResponse response, RuntimeException error) {
+
+        static TransferOutcome succeeded(TransferResponse response) {
+            return new TransferOutcome(response, null);
+        }
+
+        static TransferOutcome failed(RuntimeException error) {
+            return new TransferOutcome(null, error);
+        }
+
+        public boolean succeeded() {
+            return error == null;
+        }
     }
 }
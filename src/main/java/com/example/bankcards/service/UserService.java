@@ -8,6 +8,7 @@ import com.example.bankcards.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -72,9 +73,16 @@ public class UserService {
         return mapToDto(user);
     }
 
+    /**
+     * Все пользователи. Общее число берётся из статистики планировщика, если таблица большая,
+     * и не запрашивается вовсе на последней странице.
+     */
     public Page<UserDto> getAllUsers(Pageable pageable) {
-        Page<User> users = userRepository.findAll(pageable);
-        return users.map(this::mapToDto);
+        return Pages.withTotal(getAllUsersSlice(pageable), userRepository::approximateCount);
+    }
+
+    public Slice<UserDto> getAllUsersSlice(Pageable pageable) {
+        return userRepository.findAllBy(pageable).map(this::mapToDto);
     }
 
     private UserDto mapToDto(User user) {
@@ -0,0 +1,186 @@
+package com.example.bankcards.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Шифрование номеров карт AES-256-GCM без общей блокировки: у каждого потока свои Cipher
+ * и SecureRandom, ключ выводится один раз при создании.
+ * Шифртекст — "$" и Base64 от заголовка (версия формата, версия ключа), IV и данных с тегом;
+ * заголовок входит в аутентифицированные данные.
+ * Шифруется всегда текущим ключом, расшифровывается любым из известных по версии в заголовке,
+ * поэтому во время ротации читаются номера под обоими ключами.
+ * Строки без "$" — прежний формат Encryptors.text (hex от IV и AES-CBC) на ключе версии
+ * LEGACY_KEY_VERSION, они расшифровываются, но больше не пишутся.
+ */
+final class CardNumberCipher {
+
+    static final String PREFIX = "$";
+    static final byte FORMAT_GCM = 1;
+    static final int LEGACY_KEY_VERSION = 1;
+
+    private static final int HEADER_SIZE = 2;
+    private static final int GCM_IV_SIZE = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int LEGACY_IV_SIZE = 16;
+    private static final int KEY_ITERATIONS = 1024;
+    private static final int KEY_BITS = 256;
+
+    private final byte keyVersion;
+    private final SecretKey key;
+    private final SecretKey[] keys = new SecretKey[256];
+    private final ThreadLocal<Cipher> gcm = ThreadLocal.withInitial(() -> cipher("AES/GCM/NoPadding"));
+    private final ThreadLocal<Cipher> legacy = ThreadLocal.withInitial(() -> cipher("AES/CBC/PKCS5Padding"));
+    private final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(CardNumberCipher::drbg);
+
+    CardNumberCipher(String password, String salt, int keyVersion) {
+        this(keyVersion, Map.of(keyVersion, deriveKey(password, salt)));
+    }
+
+    /**
+     * keys — ключи по версиям; среди них должен быть текущий keyVersion.
+     */
+    CardNumberCipher(int keyVersion, Map<Integer, SecretKey> keys) {
+        keys.forEach((version, versionKey) -> {
+            if (version < 0 || version > 255) {
+                throw new IllegalArgumentException("Key version must be between 0 and 255: " + version);
+            }
+            this.keys[version] = versionKey;
+        });
+        if (!keys.containsKey(keyVersion)) {
+            throw new IllegalArgumentException("No key for the current key version " + keyVersion);
+        }
+        this.keyVersion = (byte) keyVersion;
+        this.key = keys.get(keyVersion);
+    }
+
+    int keyVersion() {
+        return keyVersion & 0xFF;
+    }
+
+    /**
+     * Версия ключа, которым зашифрован номер, по заголовку шифртекста.
+     */
+    int keyVersion(String cipherText) {
+        if (!cipherText.startsWith(PREFIX)) {
+            return LEGACY_KEY_VERSION;
+        }
+        if (cipherText.length() < PREFIX.length() + 4) {
+            throw new IllegalStateException("Unsupported card number ciphertext format");
+        }
+        byte[] header = Base64.getDecoder().decode(cipherText.substring(PREFIX.length(), PREFIX.length() + 4));
+        return header[1] & 0xFF;
+    }
+
+    String encrypt(String plainText) {
+        byte[] plain = plainText.getBytes(StandardCharsets.UTF_8);
+        byte[] iv = new byte[GCM_IV_SIZE];
+        random.get().nextBytes(iv);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + GCM_IV_SIZE + plain.length + GCM_TAG_BITS / 8)
+                .put(FORMAT_GCM)
+                .put(keyVersion)
+                .put(iv);
+        try {
+            Cipher cipher = gcm.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(out.array(), 0, HEADER_SIZE);
+            cipher.doFinal(ByteBuffer.wrap(plain), out);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to encrypt card number", ex);
+        }
+        return PREFIX + Base64.getEncoder().encodeToString(out.array());
+    }
+
+    String decrypt(String cipherText) {
+        byte[] plain = cipherText.startsWith(PREFIX)
+                ? decryptGcm(Base64.getDecoder().decode(cipherText.substring(PREFIX.length())))
+                : decryptLegacy(HexFormat.of().parseHex(cipherText));
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+
+    private byte[] decryptGcm(byte[] data) {
+        if (data.length < HEADER_SIZE + GCM_IV_SIZE + GCM_TAG_BITS / 8 || data[0] != FORMAT_GCM) {
+            throw new IllegalStateException("Unsupported card number ciphertext format");
+        }
+        SecretKey versionKey = key(data[1] & 0xFF);
+        try {
+            Cipher cipher = gcm.get();
+            cipher.init(Cipher.DECRYPT_MODE, versionKey,
+                    new GCMParameterSpec(GCM_TAG_BITS, data, HEADER_SIZE, GCM_IV_SIZE));
+            cipher.updateAAD(data, 0, HEADER_SIZE);
+            return cipher.doFinal(data, HEADER_SIZE + GCM_IV_SIZE, data.length - HEADER_SIZE - GCM_IV_SIZE);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to decrypt card number", ex);
+        }
+    }
+
+    private byte[] decryptLegacy(byte[] data) {
+        if (data.length <= LEGACY_IV_SIZE) {
+            throw new IllegalStateException("Unsupported card number ciphertext format");
+        }
+        SecretKey versionKey = key(LEGACY_KEY_VERSION);
+        try {
+            Cipher cipher = legacy.get();
+            cipher.init(Cipher.DECRYPT_MODE, versionKey, new IvParameterSpec(data, 0, LEGACY_IV_SIZE));
+            return cipher.doFinal(data, LEGACY_IV_SIZE, data.length - LEGACY_IV_SIZE);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to decrypt card number", ex);
+        }
+    }
+
+    private SecretKey key(int version) {
+        SecretKey versionKey = keys[version];
+        if (versionKey == null) {
+            throw new IllegalStateException("Card number is encrypted with unknown key version " + version);
+        }
+        return versionKey;
+    }
+
+    /**
+     * Тот же вывод ключа, что у Encryptors.text: PBKDF2-HMAC-SHA1 по hex-соли, поэтому прежние
+     * шифртексты расшифровываются без миграции.
+     */
+    static SecretKey deriveKey(String password, String salt) {
+        try {
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), HexFormat.of().parseHex(salt),
+                    KEY_ITERATIONS, KEY_BITS);
+            byte[] encoded = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(spec).getEncoded();
+            spec.clearPassword();
+            return new SecretKeySpec(encoded, "AES");
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to derive card number encryption key", ex);
+        }
+    }
+
+    private static Cipher cipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Cipher " + transformation + " is not available", ex);
+        }
+    }
+
+    /**
+     * Отдельный DRBG на поток: SecureRandom по умолчанию (NativePRNG) читает через общую блокировку.
+     */
+    private static SecureRandom drbg() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException ex) {
+            return new SecureRandom();
+        }
+    }
+}
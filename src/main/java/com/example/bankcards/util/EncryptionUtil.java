@@ -2,29 +2,94 @@ package com.example.bankcards.util;
 
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.encrypt.Encryptors;
-import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
 
 @Component
 public class EncryptionUtil {
 
+    private static final String BLIND_INDEX_ALGORITHM = "HmacSHA256";
+
     @Value("${encryption.password}")
     private String password;
     @Value("${encryption.salt}")
     private String salt;
-    private TextEncryptor encryptor;
+    @Value("${encryption.key-version:1}")
+    private int keyVersion;
+    @Value("${encryption.previous.password:}")
+    private String previousPassword;
+    @Value("${encryption.previous.salt:}")
+    private String previousSalt;
+    @Value("${encryption.previous.key-version:1}")
+    private int previousKeyVersion;
+    @Value("${encryption.blind-index-key}")
+    private String blindIndexKey;
+    private CardNumberCipher cipher;
+    private ThreadLocal<Mac> blindIndexMac;
 
     @PostConstruct
     public void init() {
-        this.encryptor = Encryptors.text(password, salt);
+        Map<Integer, SecretKey> keys = new HashMap<>();
+        keys.put(keyVersion, CardNumberCipher.deriveKey(password, salt));
+        if (StringUtils.hasText(previousPassword)) {
+            if (previousKeyVersion == keyVersion) {
+                throw new IllegalStateException("Previous encryption key must have a different key version");
+            }
+            keys.put(previousKeyVersion, CardNumberCipher.deriveKey(previousPassword, previousSalt));
+        }
+        this.cipher = new CardNumberCipher(keyVersion, keys);
+        SecretKeySpec key = new SecretKeySpec(blindIndexKey.getBytes(StandardCharsets.UTF_8), BLIND_INDEX_ALGORITHM);
+        this.blindIndexMac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(BLIND_INDEX_ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Blind index HMAC is not available", ex);
+            }
+        });
     }
 
+    /**
+     * AES-256-GCM с заголовком версии (CardNumberCipher); потоки не ждут друг друга.
+     */
     public String encrypt(String plainText) {
-        return encryptor.encrypt(plainText);
+        return cipher.encrypt(plainText);
     }
 
+    /**
+     * Расшифровывает и текущий формат, и прежний hex-формат Encryptors.text.
+     */
     public String decrypt(String encryptedText) {
-        return encryptor.decrypt(encryptedText);
+        return cipher.decrypt(encryptedText);
+    }
+
+    public int getKeyVersion() {
+        return cipher.keyVersion();
+    }
+
+    /**
+     * Зашифрован ли номер текущим ключом; остальные перешифровывает CardKeyRotation.
+     */
+    public boolean isEncryptedWithCurrentKey(String encryptedText) {
+        return cipher.keyVersion(encryptedText) == cipher.keyVersion();
+    }
+
+    /**
+     * Слепой индекс: HMAC-SHA256 открытого текста на отдельном ключе в hex.
+     * В отличие от шифртекста детерминирован, поэтому по нему ищут и проверяют уникальность,
+     * а без ключа по нему нельзя перебрать номера карт.
+     */
+    public String blindIndex(String plainText) {
+        return HexFormat.of().formatHex(blindIndexMac.get().doFinal(plainText.getBytes(StandardCharsets.UTF_8)));
     }
-}
\ No newline at end of file
+}
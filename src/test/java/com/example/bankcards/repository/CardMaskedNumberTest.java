@@ -0,0 +1,72 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Маска номера в проекции CardDto и в сущности на H2, в том числе у карты без последних цифр.
+ */
+@SpringBootTest
+@ActiveProfiles("benchmark")
+class CardMaskedNumberTest {
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void tearDown() {
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void maskedNumber_WithoutLastFourDigits_MasksWholeNumber() {
+        User user = userRepository.save(User.builder()
+                .username("mask")
+                .email("mask@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        Card known = cardRepository.save(card(user, "mask-0", "1234"));
+        Card unknown = cardRepository.save(card(user, "mask-1", null));
+
+        List<CardDto> cards = cardRepository.findDtoByOwnerId(user.getId(), PageRequest.of(0, 10, Sort.by("id")))
+                .getContent();
+
+        assertEquals(List.of("**** **** **** 1234", "**** **** **** ****"),
+                cards.stream().map(CardDto::cardNumber).toList());
+        assertEquals(known.getMaskedCardNumber(), cards.get(0).cardNumber());
+        assertEquals(unknown.getMaskedCardNumber(), cards.get(1).cardNumber());
+    }
+
+    private Card card(User owner, String number, String lastFourDigits) {
+        return Card.builder()
+                .cardNumber(number)
+                .lastFourDigits(lastFourDigits)
+                .cardholderName("MASK USER")
+                .expiryDate(LocalDate.now().plusYears(3))
+                .owner(owner)
+                .status(CardStatus.ACTIVE)
+                .balance(BigDecimal.ZERO)
+                .build();
+    }
+}
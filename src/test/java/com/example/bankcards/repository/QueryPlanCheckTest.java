@@ -0,0 +1,271 @@
+package com.example.bankcards.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка планов запросов репозиториев на локальном PostgreSQL со схемой из миграций Liquibase.
+ * Каждый @Query и производный запрос CardRepository, TransactionRepository и UserRepository
+ * выполняется с тестовыми аргументами в откатываемой транзакции, его SQL перехватывается
+ * и разбирается через EXPLAIN общего плана, не зависящего от значений параметров.
+ * Последовательное чтение и сортировка запрещены (enable_seqscan, enable_sort = off),
+ * поэтому оставшиеся в плане Seq Scan и Sort означают, что ни один индекс не подходит.
+ * Запуск: docker-compose up -d postgres && mvn test -Dtest=QueryPlanCheckTest -Dexplain=true
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.example.bankcards.repository.QueryPlanCheckTest$CapturedSql")
+@EnabledIfSystemProperty(named = "explain", matches = "true")
+class QueryPlanCheckTest {
+
+    /**
+     * Запросы, для которых полное чтение или сортировка ожидаемы.
+     */
+    private static final Map<String, String> ACCEPTED = Map.ofEntries(
+            Map.entry("CardRepository.findAllBalances", "reads the balance of every card"),
+            Map.entry("CardRepository.findAllBy", "admin listing pages through every card without a sort"),
+            Map.entry("CardRepository.findMissingNumberColumnsAfter", "one-off backfill walks cards without the blind index or last digits by primary key"),
+            Map.entry("TransactionRepository.findByCardId", "OR over two card indexes, the page is sorted after the bitmap scan"),
+            Map.entry("TransactionRepository.findByUserId", "card join used only until transaction owners are backfilled"),
+            Map.entry("TransactionRepository.findHistoryIds", "sorts at most 2 * window ids merged from the owner indexes"),
+            Map.entry("TransactionRepository.findHistoryIdsBefore", "sorts at most 2 * limit ids merged from the owner indexes"),
+            Map.entry("TransactionRepository.streamArchiveRowsByReceiver", "archiving sorts a whole month by receiver once"),
+            Map.entry("TransactionRepository.streamArchiveRowsBySender", "archiving sorts a whole month by sender once"),
+            Map.entry("TransactionRepository.streamHistory", "export reads and sorts the user's whole history once"),
+            Map.entry("UserRepository.findAllBy", "admin listing pages through every user without a sort"));
+
+    private static final List<String> SETTINGS = List.of(
+            "SET plan_cache_mode = force_generic_plan",
+            "SET enable_seqscan = off",
+            "SET enable_sort = off",
+            "SET enable_incremental_sort = off");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void repositoryQueriesUseIndexes() throws SQLException {
+        List<String> unexpected = new ArrayList<>();
+        check(CardRepository.class, cardRepository, unexpected);
+        check(TransactionRepository.class, transactionRepository, unexpected);
+        check(UserRepository.class, userRepository, unexpected);
+
+        assertTrue(unexpected.isEmpty(), "Queries without a usable index:\n" + String.join("\n", unexpected));
+    }
+
+    private void check(Class<?> repositoryType, Object repository, List<String> unexpected) throws SQLException {
+        List<Method> methods = Arrays.stream(repositoryType.getDeclaredMethods())
+                .filter(method -> !method.isDefault() && !method.isSynthetic() && !Modifier.isStatic(method.getModifiers()))
+                .sorted(Comparator.comparing(Method::getName))
+                .toList();
+
+        for (Method method : methods) {
+            String name = repositoryType.getSimpleName() + "." + method.getName();
+            List<String> findings = new ArrayList<>();
+            List<String> statements = capture(repository, method);
+            if (statements.isEmpty()) {
+                findings.add("no SQL captured");
+            }
+            for (String sql : statements) {
+                findings.addAll(explain(sql));
+            }
+
+            String accepted = ACCEPTED.get(name);
+            if (findings.isEmpty()) {
+                System.out.printf("%-60s ok%n", name);
+            } else if (accepted != null) {
+                System.out.printf("%-60s accepted (%s): %s%n", name, accepted, findings);
+            } else {
+                System.out.printf("%-60s FAIL: %s%n", name, findings);
+                unexpected.add(name + ": " + findings + "\n    " + String.join("\n    ", statements));
+            }
+        }
+    }
+
+    /**
+     * Выполняет метод репозитория в транзакции, которая всегда откатывается, и возвращает его SQL.
+     */
+    private List<String> capture(Object repository, Method method) {
+        Object[] args = Arrays.stream(method.getParameterTypes()).map(this::sample).toArray();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CapturedSql.start();
+        try {
+            transaction.executeWithoutResult(status -> {
+                status.setRollbackOnly();
+                try {
+                    method.invoke(repository, args);
+                } catch (IllegalAccessException | InvocationTargetException ex) {
+                    throw new IllegalStateException("Failed to run " + method, ex);
+                }
+            });
+            return CapturedSql.statements();
+        } finally {
+            CapturedSql.stop();
+        }
+    }
+
+    /**
+     * Строит общий план запроса: параметры JDBC заменяются на $1..$n, план не зависит от их значений.
+     */
+    private List<String> explain(String sql) throws SQLException {
+        String statement = sql.replaceAll("(?s)/\\*.*?\\*/", "").trim();
+        int parameters = 0;
+        StringBuilder numbered = new StringBuilder(statement.length());
+        for (char c : statement.toCharArray()) {
+            if (c == '?') {
+                numbered.append('$').append(++parameters);
+            } else {
+                numbered.append(c);
+            }
+        }
+        StringJoiner nulls = new StringJoiner(", ", "(", ")");
+        for (int i = 0; i < parameters; i++) {
+            nulls.add("NULL");
+        }
+
+        try (Connection connection = dataSource.getConnection(); Statement jdbc = connection.createStatement()) {
+            try {
+                for (String setting : SETTINGS) {
+                    jdbc.execute(setting);
+                }
+                jdbc.execute("PREPARE plan_check AS " + numbered);
+                try (ResultSet plan = jdbc.executeQuery("EXPLAIN (FORMAT JSON) EXECUTE plan_check"
+                        + (parameters == 0 ? "" : nulls.toString()))) {
+                    plan.next();
+                    List<String> findings = new ArrayList<>();
+                    collect(objectMapper.readTree(plan.getString(1)).get(0).get("Plan"), findings);
+                    return findings;
+                }
+            } catch (JsonProcessingException ex) {
+                throw new IllegalStateException("Unreadable plan for " + sql, ex);
+            } finally {
+                // сбрасывает настройки планировщика и подготовленный запрос перед возвратом соединения в пул
+                jdbc.execute("DISCARD ALL");
+            }
+        }
+    }
+
+    private void collect(JsonNode node, List<String> findings) {
+        String type = node.path("Node Type").asText();
+        if (type.equals("Seq Scan")) {
+            findings.add("Seq Scan on " + node.path("Relation Name").asText());
+        } else if (type.equals("Sort") || type.equals("Incremental Sort")) {
+            findings.add(type + " by " + node.path("Sort Key"));
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collect(child, findings);
+        }
+    }
+
+    private Object sample(Class<?> type) {
+        if (type == Long.class || type == long.class) {
+            return 1L;
+        }
+        if (type == Integer.class || type == int.class) {
+            return 20;
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return true;
+        }
+        if (type == String.class) {
+            return "sample";
+        }
+        if (type == BigDecimal.class) {
+            return BigDecimal.ONE;
+        }
+        if (type == LocalDate.class) {
+            return LocalDate.now();
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.now();
+        }
+        if (type == Pageable.class) {
+            return PageRequest.of(0, 20);
+        }
+        if (type == Limit.class) {
+            return Limit.of(20);
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return List.of(1L);
+        }
+        if (type.isEnum()) {
+            return type.getEnumConstants()[0];
+        }
+        throw new IllegalArgumentException("No sample value for " + type);
+    }
+
+    /**
+     * Перехватывает SQL, который Hibernate готовит в потоке теста.
+     * Запросы фоновых задач приложения выполняются в других потоках и не попадают в проверку.
+     */
+    public static class CapturedSql implements StatementInspector {
+
+        private static final ThreadLocal<List<String>> STATEMENTS = new ThreadLocal<>();
+
+        static void start() {
+            STATEMENTS.set(new ArrayList<>());
+        }
+
+        static List<String> statements() {
+            return List.copyOf(STATEMENTS.get());
+        }
+
+        static void stop() {
+            STATEMENTS.remove();
+        }
+
+        @Override
+        public String inspect(String sql) {
+            List<String> statements = STATEMENTS.get();
+            if (statements != null) {
+                statements.add(sql);
+            }
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.BatchTransferRequestDto;
+import com.example.bankcards.dto.BatchTransferResponseDto;
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Число обращений к базе при массовой вставке карт и транзакций.
+ * С IDENTITY каждая строка вставлялась отдельным INSERT, с пулом id из последовательности
+ * Hibernate отправляет строки пакетами по hibernate.jdbc.batch_size.
+ * Запуск: mvn test -Dtest=BatchInsertBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class BatchInsertBenchmarkTest {
+
+    private static final int ROWS = 1_000;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        user = userRepository.save(User.builder()
+                .username("batch")
+                .email("batch@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledgerEntryRepository.deleteAllInBatch();
+        transactionRepository.deleteAllInBatch();
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void insertCardsAndTransactionsInBatches() {
+        statistics.clear();
+        List<Card> cards = transactionTemplate.execute(status -> cardRepository.saveAll(
+                IntStream.range(0, ROWS).mapToObj(this::card).toList()));
+        report("cards", ROWS);
+
+        List<TransferRequestDto> transfers = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            transfers.add(new TransferRequestDto(
+                    cards.get(i).getId(), cards.get((i + 1) % ROWS).getId(), BigDecimal.ONE, "batch"));
+        }
+
+        statistics.clear();
+        BatchTransferResponseDto response = transferService.transferBatch(new BatchTransferRequestDto(transfers, true), user.getId());
+        report("batch transfers", ROWS);
+
+        assertEquals(ROWS, response.succeeded());
+        assertEquals(ROWS, transactionRepository.count());
+        assertTrue(statistics.getPrepareStatementCount() < ROWS,
+                "Inserts were not batched: " + statistics.getPrepareStatementCount() + " statements for " + ROWS + " rows");
+    }
+
+    private void report(String label, int rows) {
+        System.out.printf("%-16s %6d rows  %6d JDBC statements  %6d entity inserts  %6d entity updates%n",
+                label, rows, statistics.getPrepareStatementCount(),
+                statistics.getEntityInsertCount(), statistics.getEntityUpdateCount());
+    }
+
+    private Card card(int index) {
+        return Card.builder()
+                .cardNumber("batch-" + index)
+                .lastFourDigits(String.format("%04d", index % 10_000))
+                .cardholderName("BATCH USER")
+                .expiryDate(LocalDate.now().plusYears(3))
+                .owner(user)
+                .status(CardStatus.ACTIVE)
+                .balance(new BigDecimal("100.00"))
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Условное списание одним UPDATE и сохранение загруженной раньше карты на H2:
+ * списание увеличивает версию, поэтому сохранение устаревшей карты не перезаписывает баланс.
+ */
+@SpringBootTest
+@ActiveProfiles("benchmark")
+class CardBalanceVersionTest {
+
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("100.00");
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User user;
+    private Card card;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .username("version")
+                .email("version@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        card = cardRepository.save(Card.builder()
+                .cardNumber("version-0")
+                .lastFourDigits("0000")
+                .cardholderName("VERSION USER")
+                .expiryDate(LocalDate.now().plusYears(3))
+                .owner(user)
+                .status(CardStatus.ACTIVE)
+                .balance(INITIAL_BALANCE)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void blockCard_AfterConcurrentDebit_DoesNotOverwriteBalance() {
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            cardService.blockCard(card.getId(), "lost", user.getId());
+            // списание фиксируется в своей транзакции, пока блокировка ещё не сохранена
+            int debited = CompletableFuture.supplyAsync(() -> transactionTemplate.execute(
+                    debit -> cardRepository.debitIfAvailable(card.getId(), user.getId(), new BigDecimal("30.00"))))
+                    .join();
+            assertEquals(1, debited);
+        }));
+
+        Card stored = cardRepository.findById(card.getId()).orElseThrow();
+        assertEquals(new BigDecimal("70.00"), stored.getBalance());
+        assertEquals(CardStatus.ACTIVE, stored.getStatus());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardExpirySweeperTest {
+
+    @Mock
+    private CardService cardService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CardExpirySweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sweeper = new CardExpirySweeper(cardService, meterRegistry, 3);
+    }
+
+    @Test
+    void sweep_ExpiresInChunksAndSkipsSweptDatesNextTime() {
+        LocalDate today = LocalDate.now();
+        when(cardService.expireCards(CardExpirySweeper.EPOCH, today, 3)).thenReturn(3, 3, 1);
+        when(cardService.hasActiveExpired(CardExpirySweeper.EPOCH, today)).thenReturn(false);
+
+        assertEquals(7, sweeper.sweep());
+        assertEquals(0, sweeper.sweep());
+
+        verify(cardService, times(3)).expireCards(CardExpirySweeper.EPOCH, today, 3);
+        verifyNoMoreInteractions(cardService);
+        assertEquals(7.0, meterRegistry.get("cards.expiry.swept").counter().count());
+    }
+
+    @Test
+    void sweep_LockedCardsLeft_RescansSameRangeNextTime() {
+        LocalDate today = LocalDate.now();
+        when(cardService.expireCards(CardExpirySweeper.EPOCH, today, 3)).thenReturn(2, 1);
+        when(cardService.hasActiveExpired(CardExpirySweeper.EPOCH, today)).thenReturn(true, false);
+
+        assertEquals(2, sweeper.sweep());
+        assertEquals(1, sweeper.sweep());
+        assertEquals(0, sweeper.sweep());
+
+        verify(cardService, times(2)).expireCards(CardExpirySweeper.EPOCH, today, 3);
+    }
+}
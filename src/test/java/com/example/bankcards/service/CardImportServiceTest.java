@@ -0,0 +1,130 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardImportRejectDto;
+import com.example.bankcards.dto.CardImportResultDto;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardImportServiceTest {
+
+    private static final ValidatorFactory VALIDATION = Validation.buildDefaultValidatorFactory();
+    private static final String EXPIRY = LocalDate.now().plusYears(3).toString();
+
+    @Mock
+    private CardCopyWriter cardCopyWriter;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private EncryptionUtil encryptionUtil;
+
+    private final Validator validator = VALIDATION.getValidator();
+
+    private CardImportService importService;
+
+    @AfterEach
+    void tearDown() {
+        importService.shutdown();
+    }
+
+    @AfterAll
+    static void closeValidation() {
+        VALIDATION.close();
+    }
+
+    @Test
+    void importCards_WritesValidLinesInChunksAndReportsRejects() {
+        importService = service(2, 100);
+        when(encryptionUtil.encrypt(anyString())).thenAnswer(invocation -> "enc-" + invocation.getArgument(0));
+        when(encryptionUtil.blindIndex(anyString())).thenAnswer(invocation -> "hash-" + invocation.getArgument(0));
+        when(userRepository.findExistingIds(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().filter(id -> id != 99L).toList();
+        });
+        List<List<CardImportRow>> written = new ArrayList<>();
+        when(cardCopyWriter.write(any())).thenAnswer(invocation -> {
+            List<CardImportRow> rows = invocation.getArgument(0);
+            written.add(rows);
+            return rows.stream().anyMatch(row -> row.cardNumberHash().equals("hash-4444333322221111"))
+                    ? Set.of("hash-4444333322221111")
+                    : Set.of();
+        });
+
+        CardImportResultDto result = importService.importCards(csv(
+                "card_number,cardholder_name,expiry_date,owner_id",
+                "1111222233334444,JOHN DOE," + EXPIRY + ",1",
+                "12345,JOHN DOE," + EXPIRY + ",1",
+                "5555666677778888,JANE DOE," + EXPIRY + ",1",
+                "5555666677778888,JANE DOE," + EXPIRY + ",1",
+                "",
+                "9999000011112222,NO OWNER," + EXPIRY + ",99",
+                "4444333322221111,EXISTING," + EXPIRY + ",1",
+                "8888777766665555,JOHN DOE,2020-01-01,1",
+                "8888777766665556,JOHN DOE,tomorrow,1",
+                "8888777766665557,JOHN DOE"));
+
+        assertEquals(9, result.lines());
+        assertEquals(2, result.imported());
+        assertEquals(7, result.rejected());
+        assertFalse(result.rejectsTruncated());
+        assertEquals(List.of(3L, 5L, 7L, 8L, 9L, 10L, 11L),
+                result.rejects().stream().map(CardImportRejectDto::line).toList());
+        assertEquals("Card number must be 16 digits", result.rejects().get(0).reason());
+        assertEquals("Duplicate of line 4", result.rejects().get(1).reason());
+        assertEquals("User not found: 99", result.rejects().get(2).reason());
+        assertEquals("Card with this number already exists", result.rejects().get(3).reason());
+        assertEquals("Expiry date must be in the future", result.rejects().get(4).reason());
+
+        CardImportRow first = written.get(0).get(0);
+        assertEquals(2L, first.line());
+        assertEquals("enc-1111222233334444", first.cardNumber());
+        assertEquals("4444", first.lastFourDigits());
+        assertEquals(3, written.size());
+        verify(encryptionUtil, never()).encrypt("12345");
+    }
+
+    @Test
+    void importCards_ManyRejects_ReportsOnlyFirstOnes() {
+        importService = service(10, 2);
+
+        CardImportResultDto result = importService.importCards(csv("1,A,x,1", "2,B,x,1", "3,C,x,1"));
+
+        assertEquals(3, result.rejected());
+        assertEquals(2, result.rejects().size());
+        assertTrue(result.rejectsTruncated());
+        verifyNoInteractions(cardCopyWriter, userRepository);
+    }
+
+    private CardImportService service(int chunkSize, int maxReportedRejects) {
+        return new CardImportService(cardCopyWriter, userRepository, encryptionUtil, validator,
+                chunkSize, 2, maxReportedRejects);
+    }
+
+    private static ByteArrayInputStream csv(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.CardKeyRotationProgress;
+import com.example.bankcards.repository.CardKeyRotationProgressRepository;
+import com.example.bankcards.repository.CardNumberRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardKeyRotationServiceTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private CardKeyRotationProgressRepository progressRepository;
+
+    @Mock
+    private EncryptionUtil encryptionUtil;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private CardKeyRotationService rotationService;
+
+    @BeforeEach
+    void setUp() {
+        rotationService = new CardKeyRotationService(cardRepository, progressRepository, encryptionUtil,
+                jdbcTemplate, 2);
+        when(encryptionUtil.getKeyVersion()).thenReturn(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rotationService.shutdown();
+    }
+
+    @Test
+    void rotateChunk_ReencryptsOldKeyNumbersAndMovesCheckpoint() {
+        CardKeyRotationProgress progress = CardKeyRotationProgress.builder().keyVersion(2).lastCardId(10L).build();
+        when(progressRepository.findById(2)).thenReturn(Optional.of(progress));
+        when(cardRepository.findNumbersAfter(10L, Limit.of(3)))
+                .thenReturn(List.of(row(11L, "old"), row(12L, "current"), row(13L, "broken")));
+        when(encryptionUtil.isEncryptedWithCurrentKey(any()))
+                .thenAnswer(invocation -> "current".equals(invocation.getArgument(0)));
+        when(encryptionUtil.decrypt("old")).thenReturn("1234567812345678");
+        when(encryptionUtil.decrypt("broken")).thenThrow(new IllegalStateException("bad padding"));
+        when(encryptionUtil.encrypt("1234567812345678")).thenReturn("new");
+
+        assertEquals(3, rotationService.rotateChunk(3));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> updates = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(CardKeyRotationService.UPDATE_NUMBER), updates.capture());
+        assertEquals(1, updates.getValue().size());
+        assertArrayEquals(new Object[]{"new", 11L, "old"}, updates.getValue().get(0));
+        assertEquals(13L, progress.getLastCardId());
+        assertEquals(1L, progress.getRotated());
+        assertEquals(1L, progress.getFailed());
+        assertNull(progress.getCompletedAt());
+        verify(progressRepository).save(progress);
+    }
+
+    @Test
+    void rotateChunk_NoCardsLeft_CompletesRotation() {
+        when(progressRepository.findById(2)).thenReturn(Optional.empty());
+        when(cardRepository.findNumbersAfter(0L, Limit.of(100))).thenReturn(List.of());
+
+        assertEquals(0, rotationService.rotateChunk(100));
+
+        ArgumentCaptor<CardKeyRotationProgress> saved = ArgumentCaptor.forClass(CardKeyRotationProgress.class);
+        verify(progressRepository).save(saved.capture());
+        assertEquals(2, saved.getValue().getKeyVersion());
+        assertNotNull(saved.getValue().getCompletedAt());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void rotateChunk_AlreadyCompleted_ReadsNoCards() {
+        when(progressRepository.findById(2)).thenReturn(Optional.of(CardKeyRotationProgress.builder()
+                .keyVersion(2).lastCardId(500L).completedAt(LocalDateTime.now()).build()));
+
+        assertEquals(0, rotationService.rotateChunk(100));
+
+        verifyNoInteractions(cardRepository, jdbcTemplate);
+        verify(progressRepository, never()).save(any());
+    }
+
+    private static CardNumberRow row(Long id, String cardNumber) {
+        return new CardNumberRow() {
+            public Long getId() { return id; }
+            public String getCardNumber() { return cardNumber; }
+        };
+    }
+}
@@ -7,6 +7,7 @@ import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.DuplicateCardException;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.util.EncryptionUtil;
@@ -15,15 +16,20 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -43,6 +49,9 @@ class CardServiceTest {
     @Mock
     private EncryptionUtil encryptionUtil;
 
+    @Mock
+    private HotCardService hotCardService;
+
     @InjectMocks
     private CardService cardService;
 
@@ -77,8 +86,9 @@ class CardServiceTest {
                 .build();
 
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(encryptionUtil.blindIndex(request.cardNumber())).thenReturn("hash");
         when(encryptionUtil.encrypt(request.cardNumber())).thenReturn(encryptedNumber);
-        when(cardRepository.save(any(Card.class))).thenReturn(savedCard);
+        when(cardRepository.saveAndFlush(any(Card.class))).thenReturn(savedCard);
 
         CardDto result = cardService.createCard(request, userId);
 
@@ -91,7 +101,72 @@ class CardServiceTest {
 
         verify(userRepository).findById(userId);
         verify(encryptionUtil).encrypt(request.cardNumber());
-        verify(cardRepository).save(any(Card.class));
+        verify(cardRepository).saveAndFlush(argThat(card -> "hash".equals(card.getCardNumberHash())));
+    }
+
+    @Test
+    void createCard_DuplicateNumber_ThrowsException() {
+        Long userId = 1L;
+        CreateCardRequestDto request = new CreateCardRequestDto(
+                "1234567812345678",
+                "John Doe",
+                LocalDate.now().plusYears(3)
+        );
+
+        when(userRepository.findById(userId)).thenReturn(Optional.of(User.builder().id(userId).build()));
+        when(encryptionUtil.blindIndex(request.cardNumber())).thenReturn("hash");
+        when(cardRepository.existsByCardNumberHash("hash")).thenReturn(true);
+
+        assertThrows(DuplicateCardException.class, () -> cardService.createCard(request, userId));
+        verify(cardRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void createCard_ConcurrentDuplicate_ThrowsException() {
+        Long userId = 1L;
+        CreateCardRequestDto request = new CreateCardRequestDto(
+                "1234567812345678",
+                "John Doe",
+                LocalDate.now().plusYears(3)
+        );
+
+        when(userRepository.findById(userId)).thenReturn(Optional.of(User.builder().id(userId).build()));
+        when(encryptionUtil.blindIndex(request.cardNumber())).thenReturn("hash");
+        when(cardRepository.saveAndFlush(any(Card.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_cards_number_hash"));
+
+        assertThrows(DuplicateCardException.class, () -> cardService.createCard(request, userId));
+    }
+
+    @Test
+    void backfillNumberColumns_SkipsUndecryptableAndDuplicateNumbers() {
+        Card first = Card.builder().id(3L).cardNumber("enc-a").lastFourDigits("4444").build();
+        Card broken = Card.builder().id(4L).cardNumber("not-encrypted").build();
+        Card duplicate = Card.builder().id(5L).cardNumber("enc-b").lastFourDigits("4444").build();
+        when(cardRepository.findMissingNumberColumnsAfter(2L, Limit.of(10)))
+                .thenReturn(List.of(first, broken, duplicate));
+        when(encryptionUtil.decrypt("enc-a")).thenReturn("1111222233334444");
+        when(encryptionUtil.decrypt("not-encrypted")).thenThrow(new IllegalStateException("bad ciphertext"));
+        when(encryptionUtil.decrypt("enc-b")).thenReturn("1111222233334444");
+        when(encryptionUtil.blindIndex("1111222233334444")).thenReturn("hash");
+
+        assertEquals(5L, cardService.backfillNumberColumns(2L, 10));
+
+        assertEquals("hash", first.getCardNumberHash());
+        assertNull(broken.getCardNumberHash());
+        assertNull(duplicate.getCardNumberHash());
+    }
+
+    @Test
+    void backfillNumberColumns_FillsLastDigitsOfIndexedCard() {
+        Card card = Card.builder().id(3L).cardNumber("enc-a").cardNumberHash("hash").build();
+        when(cardRepository.findMissingNumberColumnsAfter(0L, Limit.of(10))).thenReturn(List.of(card));
+        when(encryptionUtil.decrypt("enc-a")).thenReturn("1111222233334444");
+
+        assertEquals(3L, cardService.backfillNumberColumns(0L, 10));
+
+        assertEquals("4444", card.getLastFourDigits());
+        verify(encryptionUtil, never()).blindIndex(any());
     }
 
     @Test
@@ -120,36 +195,13 @@ class CardServiceTest {
         Long userId = 1L;
         Pageable pageable = PageRequest.of(0, 10);
 
-        User user = User.builder()
-                .id(userId)
-                .username("testuser")
-                .role(Role.USER)
-                .build();
+        CardDto card1 = new CardDto(1L, "**** **** **** 1234", "John Doe",
+                LocalDate.now().plusYears(2), CardStatus.ACTIVE, new BigDecimal("1000.00"));
+        CardDto card2 = new CardDto(2L, "**** **** **** 5678", "Jane Smith",
+                LocalDate.now().plusYears(3), CardStatus.ACTIVE, new BigDecimal("2000.00"));
 
-        Card card1 = Card.builder()
-                .id(1L)
-                .cardNumber("encrypted1")
-                .lastFourDigits("1234")
-                .cardholderName("John Doe")
-                .expiryDate(LocalDate.now().plusYears(2))
-                .owner(user)
-                .status(CardStatus.ACTIVE)
-                .balance(new BigDecimal("1000.00"))
-                .build();
-
-        Card card2 = Card.builder()
-                .id(2L)
-                .cardNumber("encrypted2")
-                .lastFourDigits("5678")
-                .cardholderName("John Doe")
-                .expiryDate(LocalDate.now().plusYears(3))
-                .owner(user)
-                .status(CardStatus.ACTIVE)
-                .balance(new BigDecimal("2000.00"))
-                .build();
-
-        Page<Card> cardPage = new PageImpl<>(List.of(card1, card2), pageable, 2);
-        when(cardRepository.findByOwner_Id(userId, pageable)).thenReturn(cardPage);
+        Page<CardDto> cardPage = new PageImpl<>(List.of(card1, card2), pageable, 2);
+        when(cardRepository.findDtoByOwnerId(userId, pageable)).thenReturn(cardPage);
 
         Page<CardDto> result = cardService.getUserCards(userId, pageable);
 
@@ -158,7 +210,26 @@ class CardServiceTest {
         assertEquals("**** **** **** 1234", result.getContent().get(0).cardNumber());
         assertEquals("**** **** **** 5678", result.getContent().get(1).cardNumber());
 
-        verify(cardRepository).findByOwner_Id(userId, pageable);
+        verify(cardRepository).findDtoByOwnerId(userId, pageable);
+        verify(cardRepository, never()).findByOwner_Id(any(), any());
+    }
+
+    @Test
+    void getUserCards_AddsSlotBalancesOfHotCards() {
+        Long userId = 1L;
+        Pageable pageable = PageRequest.of(0, 10);
+        CardDto hot = new CardDto(1L, "**** **** **** 1234", "John Doe",
+                LocalDate.now().plusYears(2), CardStatus.ACTIVE, new BigDecimal("100.00"));
+        CardDto plain = new CardDto(2L, "**** **** **** 5678", "John Doe",
+                LocalDate.now().plusYears(2), CardStatus.ACTIVE, new BigDecimal("50.00"));
+        when(cardRepository.findDtoByOwnerId(userId, pageable))
+                .thenReturn(new PageImpl<>(List.of(hot, plain), pageable, 2));
+        when(hotCardService.slotBalances(List.of(1L, 2L))).thenReturn(Map.of(1L, new BigDecimal("25.00")));
+
+        Page<CardDto> result = cardService.getUserCards(userId, pageable);
+
+        assertEquals(new BigDecimal("125.00"), result.getContent().get(0).balance());
+        assertEquals(new BigDecimal("50.00"), result.getContent().get(1).balance());
     }
 
     @Test
@@ -326,8 +397,8 @@ class CardServiceTest {
                 .balance(new BigDecimal("2000.00"))
                 .build();
 
-        Page<Card> cardPage = new PageImpl<>(List.of(card1, card2), pageable, 2);
-        when(cardRepository.findAll(pageable)).thenReturn(cardPage);
+        Slice<Card> cardSlice = new SliceImpl<>(List.of(card1, card2), pageable, false);
+        when(cardRepository.findAllBy(pageable)).thenReturn(cardSlice);
 
         Page<CardDto> result = cardService.getAllCards(pageable);
 
@@ -336,6 +407,29 @@ class CardServiceTest {
         assertEquals(CardStatus.ACTIVE, result.getContent().get(0).status());
         assertEquals(CardStatus.BLOCKED, result.getContent().get(1).status());
 
-        verify(cardRepository).findAll(pageable);
+        verify(cardRepository).findAllBy(pageable);
+        verify(cardRepository, never()).approximateCount();
+    }
+
+    @Test
+    void getAllCards_NotLastPage_UsesPlannerEstimateForLargeTable() {
+        Pageable pageable = PageRequest.of(0, 1);
+        Card card = Card.builder()
+                .id(1L)
+                .lastFourDigits("1234")
+                .cardholderName("John Doe")
+                .expiryDate(LocalDate.now().plusYears(2))
+                .status(CardStatus.ACTIVE)
+                .balance(new BigDecimal("1000.00"))
+                .build();
+        when(cardRepository.findAllBy(pageable)).thenReturn(new SliceImpl<>(List.of(card), pageable, true));
+        when(cardRepository.approximateCount()).thenCallRealMethod();
+        when(cardRepository.estimateCount()).thenReturn(250_000L);
+
+        Page<CardDto> result = cardService.getAllCards(pageable);
+
+        assertEquals(250_000L, result.getTotalElements());
+        assertTrue(result.hasNext());
+        verify(cardRepository, never()).count();
     }
 }
@@ -0,0 +1,163 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardStatsDto;
+import com.example.bankcards.dto.StatsPeriod;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardDailyStats;
+import com.example.bankcards.entity.CardStatsProgress;
+import com.example.bankcards.entity.LedgerEntryType;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.InvalidStatsRangeException;
+import com.example.bankcards.repository.CardDailyStatsRepository;
+import com.example.bankcards.repository.CardDayAmount;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardStatsProgressRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardStatsServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+    @Mock
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Mock
+    private CardDailyStatsRepository statsRepository;
+
+    @Mock
+    private CardStatsProgressRepository progressRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    private CardStatsService cardStatsService;
+
+    @BeforeEach
+    void setUp() {
+        cardStatsService = new CardStatsService(ledgerEntryRepository, statsRepository, progressRepository,
+                cardRepository, Duration.ofMinutes(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rollup_AddsLedgerEntriesToExistingDaysAndMovesBoundary() {
+        LocalDateTime boundary = DAY.atTime(12, 0);
+        CardStatsProgress progress = CardStatsProgress.builder().id(CardStatsProgress.ID).aggregatedUntil(boundary).build();
+        CardDailyStats existing = CardDailyStats.builder().cardId(1L).day(DAY)
+                .debitAmount(new BigDecimal("5.00")).debitCount(1L).build();
+        when(progressRepository.findById(CardStatsProgress.ID)).thenReturn(Optional.of(progress));
+        when(ledgerEntryRepository.sumByCardDay(eq(boundary), any())).thenReturn(List.of(
+                amount(1L, DAY, LedgerEntryType.DEBIT, "-30.00", 2),
+                amount(2L, DAY, LedgerEntryType.CREDIT, "30.00", 2)));
+        when(statsRepository.findByCardIdInAndDayIn(any(), any())).thenReturn(List.of(existing));
+
+        assertEquals(2, cardStatsService.rollup());
+
+        ArgumentCaptor<Collection<CardDailyStats>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(statsRepository).saveAll(captor.capture());
+        List<CardDailyStats> saved = new ArrayList<>(captor.getValue());
+        saved.sort(Comparator.comparing(CardDailyStats::getCardId));
+        assertEquals(new BigDecimal("35.00"), saved.get(0).getDebitAmount());
+        assertEquals(3L, saved.get(0).getDebitCount());
+        assertEquals(new BigDecimal("30.00"), saved.get(1).getCreditAmount());
+        assertEquals(0, saved.get(1).getDebitAmount().signum());
+        assertTrue(progress.getAggregatedUntil().isAfter(boundary));
+        verify(progressRepository).save(progress);
+    }
+
+    @Test
+    void rollup_FirstRun_StartsFromNothingAggregated() {
+        when(progressRepository.findById(CardStatsProgress.ID)).thenReturn(Optional.empty());
+        when(ledgerEntryRepository.sumByCardDay(eq(CardStatsService.NOTHING_AGGREGATED), any())).thenReturn(List.of());
+
+        assertEquals(0, cardStatsService.rollup());
+
+        verify(statsRepository, never()).saveAll(any());
+        verify(progressRepository).save(argThat(progress -> progress.getId() == CardStatsProgress.ID
+                && progress.getAggregatedUntil().isAfter(CardStatsService.NOTHING_AGGREGATED)));
+    }
+
+    @Test
+    void getCardStats_AddsLedgerTailAfterBoundaryToRollups() {
+        LocalDateTime boundary = DAY.plusDays(1).atTime(9, 0);
+        when(cardRepository.findByIdAndOwner_Id(1L, 7L)).thenReturn(Optional.of(Card.builder().id(1L).build()));
+        when(progressRepository.findById(CardStatsProgress.ID)).thenReturn(Optional.of(
+                CardStatsProgress.builder().id(CardStatsProgress.ID).aggregatedUntil(boundary).build()));
+        when(statsRepository.findByCardId(1L, DAY.withDayOfMonth(1), DAY.plusDays(1))).thenReturn(List.of(
+                CardDailyStats.builder().cardId(1L).day(DAY).debitAmount(new BigDecimal("20.00")).debitCount(2L).build(),
+                CardDailyStats.builder().cardId(1L).day(DAY.plusDays(1)).creditAmount(new BigDecimal("7.00")).creditCount(1L).build()));
+        when(ledgerEntryRepository.sumByDay(1L, boundary, DAY.plusDays(2).atStartOfDay())).thenReturn(List.of(
+                amount(1L, DAY.plusDays(1), LedgerEntryType.DEBIT, "-4.50", 1)));
+
+        CardStatsDto stats = cardStatsService.getCardStats(1L, 7L, DAY.withDayOfMonth(1), DAY.plusDays(1), StatsPeriod.DAY);
+
+        assertEquals(2, stats.buckets().size());
+        assertEquals(new BigDecimal("4.50"), stats.buckets().get(1).debitAmount());
+        assertEquals(new BigDecimal("24.50"), stats.debitAmount());
+        assertEquals(3, stats.debitCount());
+        assertEquals(new BigDecimal("7.00"), stats.creditAmount());
+    }
+
+    @Test
+    void getCardStats_ByMonth_MergesDays() {
+        when(cardRepository.findByIdAndOwner_Id(1L, 7L)).thenReturn(Optional.of(Card.builder().id(1L).build()));
+        when(progressRepository.findById(CardStatsProgress.ID)).thenReturn(Optional.of(
+                CardStatsProgress.builder().id(CardStatsProgress.ID).aggregatedUntil(LocalDateTime.now()).build()));
+        when(statsRepository.findByCardId(1L, DAY.withDayOfMonth(1), DAY)).thenReturn(List.of(
+                CardDailyStats.builder().cardId(1L).day(DAY.minusDays(1)).debitAmount(new BigDecimal("1.00")).debitCount(1L).build(),
+                CardDailyStats.builder().cardId(1L).day(DAY).debitAmount(new BigDecimal("2.00")).debitCount(1L).build()));
+
+        CardStatsDto stats = cardStatsService.getCardStats(1L, 7L, DAY.withDayOfMonth(1), DAY, StatsPeriod.MONTH);
+
+        assertEquals(1, stats.buckets().size());
+        assertEquals(DAY.withDayOfMonth(1), stats.buckets().get(0).start());
+        assertEquals(new BigDecimal("3.00"), stats.buckets().get(0).debitAmount());
+        verify(ledgerEntryRepository, never()).sumByDay(any(), any(), any());
+    }
+
+    @Test
+    void getCardStats_ForeignCard_ThrowsException() {
+        when(cardRepository.findByIdAndOwner_Id(1L, 7L)).thenReturn(Optional.empty());
+
+        assertThrows(CardNotFoundException.class,
+                () -> cardStatsService.getCardStats(1L, 7L, DAY, DAY, StatsPeriod.DAY));
+    }
+
+    @Test
+    void getCardStats_FromAfterTo_ThrowsException() {
+        assertThrows(InvalidStatsRangeException.class,
+                () -> cardStatsService.getCardStats(1L, 7L, DAY, DAY.minusDays(1), StatsPeriod.DAY));
+        verifyNoInteractions(cardRepository);
+    }
+
+    private static CardDayAmount amount(Long cardId, LocalDate day, LedgerEntryType type, String amount, long count) {
+        return new CardDayAmount() {
+            public Long getCardId() { return cardId; }
+            public LocalDate getDay() { return day; }
+            public LedgerEntryType getType() { return type; }
+            public BigDecimal getAmount() { return new BigDecimal(amount); }
+            public Long getCount() { return count; }
+        };
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.JwtTokenProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Выгрузка истории через HTTP: время до первой строки, общее время и heap, занятый на середине
+ * выгрузки после сборки мусора, сверх занятого до неё. Чтение ответа на середине приостанавливается,
+ * сервер в это время ждёт клиента и держит всё, что успел накопить. При потоковой выгрузке
+ * этот прирост не растёт с длиной истории. H2 работает в той же JVM, поэтому база хранится в файле
+ * с небольшим кэшем, а сортировка больших результатов уходит на диск, как в PostgreSQL сверх work_mem.
+ * Запуск: mvn test -Dtest=HistoryExportBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.url=jdbc:h2:file:./target/history-export-benchmark;MODE=PostgreSQL;CACHE_SIZE=4096")
+@ActiveProfiles("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HistoryExportBenchmarkTest {
+
+    private static final int MAX_MEMORY_ROWS = 10_000;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private User user;
+    private Card first;
+    private Card second;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .username("export")
+                .email("export@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        first = cardRepository.save(card("export-1"));
+        second = cardRepository.save(card("export-2"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionRepository.deleteAllInBatch();
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"20000, NDJSON, false", "200000, NDJSON, false", "1000000, NDJSON, false", "1000000, CSV, true"})
+    void exportWholeHistory(int transactions, String format, boolean gzip) throws Exception {
+        insert(transactions);
+        jdbcTemplate.execute("SET MAX_MEMORY_ROWS " + MAX_MEMORY_ROWS);
+        long before = retainedHeap();
+        long during = 0;
+
+        long started = System.nanoTime();
+        HttpResponse<InputStream> response = client.send(HttpRequest.newBuilder(URI.create(
+                                "http://localhost:" + port + "/api/transfers/history/export?format=" + format + "&gzip=" + gzip))
+                        .header("Authorization", "Bearer " + jwtTokenProvider.generateToken(user))
+                        .build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, response.statusCode());
+
+        long lines = 0;
+        double firstLine = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                gzip ? new GZIPInputStream(response.body()) : response.body(), StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null) {
+                if (lines++ == 0) {
+                    firstLine = (System.nanoTime() - started) / 1_000_000.0;
+                }
+                if (lines == transactions / 2) {
+                    during = retainedHeap();
+                }
+            }
+        }
+        double total = (System.nanoTime() - started) / 1_000_000.0;
+
+        assertEquals(transactions + (format.equals("CSV") ? 1 : 0), lines);
+        System.out.printf("%8d rows %-6s gzip=%-5b first line %7.0f ms  total %7.0f ms  heap during export %+6.1f MB%n",
+                transactions, format, gzip, firstLine, total, (during - before) / (1024.0 * 1024));
+    }
+
+    private long retainedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private void insert(int transactions) {
+        LocalDateTime start = LocalDateTime.now().minusYears(3);
+        List<Object[]> rows = new ArrayList<>(1_000);
+        for (int i = 0; i < transactions; i++) {
+            boolean forward = i % 2 == 0;
+            Timestamp createdAt = Timestamp.valueOf(start.plusSeconds(i));
+            rows.add(new Object[]{forward ? first.getId() : second.getId(), forward ? second.getId() : first.getId(),
+                    user.getId(), user.getId(), BigDecimal.valueOf(i % 1000, 2), "payment, \"order\" " + i,
+                    createdAt, createdAt});
+            if (rows.size() == 1_000) {
+                batch(rows);
+                rows.clear();
+            }
+        }
+        batch(rows);
+    }
+
+    private void batch(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO transactions " +
+                "(id, from_card_id, to_card_id, from_user_id, to_user_id, amount, description, status, " +
+                "created_at, completed_at) " +
+                "VALUES (NEXT VALUE FOR transactions_id_seq, ?, ?, ?, ?, ?, ?, 'COMPLETED', ?, ?)", rows);
+    }
+
+    private Card card(String number) {
+        return Card.builder()
+                .cardNumber(number)
+                .lastFourDigits("0000")
+                .cardholderName("EXPORT USER")
+                .expiryDate(LocalDate.now().plusYears(3))
+                .owner(user)
+                .status(CardStatus.ACTIVE)
+                .balance(BigDecimal.ZERO)
+                .build();
+    }
+}
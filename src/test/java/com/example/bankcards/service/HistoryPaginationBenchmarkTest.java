@@ -0,0 +1,200 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionCursorPageDto;
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Сравнение постраничной истории переводов по номеру страницы (OFFSET и count)
+ * и по курсору на глубине от 1 до 10 000 страниц.
+ * Несколько переводов делят один createdAt, чтобы проверить порядок по id внутри одного момента.
+ * Транзакции записываются без владельцев карт, как до их появления, и перемешаны с переводами
+ * другого пользователя. Замеры выполняются до заполнения владельцев (запросы через cards)
+ * и после него (UNION ALL по индексам владельцев).
+ * Запуск: mvn test -Dtest=HistoryPaginationBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest
+@ActiveProfiles("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HistoryPaginationBenchmarkTest {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int PAGES = 10_000;
+    private static final int TRANSACTIONS = PAGE_SIZE * PAGES;
+    private static final int SAME_MOMENT = 3;
+    private static final int OTHER_USER_EVERY = 2;
+    private static final int REPEATS = 5;
+    private static final List<Integer> SAMPLED_PAGES = List.of(1, 10, 100, 1_000, 10_000);
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TransactionOwnerBackfill ownerBackfill;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+    private User other;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .username("history")
+                .email("history@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        other = userRepository.save(User.builder()
+                .username("other")
+                .email("other@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        Card first = cardRepository.save(card("history-1", user));
+        Card second = cardRepository.save(card("history-2", user));
+        Card otherCard = cardRepository.save(card("other-1", other));
+        Card otherSecond = cardRepository.save(card("other-2", other));
+
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+        List<Object[]> rows = new ArrayList<>(1_000);
+        long id = 1_000_000L;
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            boolean forward = i % 2 == 0;
+            Timestamp createdAt = Timestamp.valueOf(start.plusSeconds(i / SAME_MOMENT));
+            rows.add(new Object[]{id++, forward ? first.getId() : second.getId(),
+                    forward ? second.getId() : first.getId(), BigDecimal.ONE, createdAt, createdAt});
+            for (int k = 0; k < OTHER_USER_EVERY; k++) {
+                rows.add(new Object[]{id++, otherCard.getId(), otherSecond.getId(), BigDecimal.ONE, createdAt, createdAt});
+            }
+            if (rows.size() >= 1_000) {
+                insert(rows);
+                rows.clear();
+            }
+        }
+        insert(rows);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionRepository.deleteAllInBatch();
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void deepPagesByOffsetAndByCursor() {
+        measure("through cards");
+
+        // планировщик уже выполнил заполнение на пустой базе при старте контекста
+        ReflectionTestUtils.setField(ownerBackfill, "done", false);
+        long started = System.nanoTime();
+        ownerBackfill.run();
+        System.out.printf("filled owners of %d transactions in %.0f ms%n",
+                TRANSACTIONS * (1 + OTHER_USER_EVERY), (System.nanoTime() - started) / 1_000_000.0);
+        assertFalse(transactionRepository.existsByFromUserIdIsNull());
+
+        measure("by owner indexes");
+    }
+
+    private void measure(String mode) {
+        Map<Integer, String> cursors = new HashMap<>();
+        Set<Long> seen = new HashSet<>(TRANSACTIONS);
+        String cursor = null;
+        long started = System.nanoTime();
+        for (int page = 1; page <= PAGES; page++) {
+            cursors.put(page, cursor);
+            TransactionCursorPageDto result = transferService.getTransactionHistory(user.getId(), cursor, PAGE_SIZE);
+            assertEquals(PAGE_SIZE, result.items().size());
+            result.items().stream().map(TransactionDto::id).forEach(seen::add);
+            cursor = result.nextCursor();
+        }
+        double walk = (System.nanoTime() - started) / 1_000_000.0;
+        assertNull(cursor, "Last page must not return a cursor");
+        assertEquals(TRANSACTIONS, seen.size(), "Cursor pages skipped or repeated transactions");
+
+        System.out.printf("%s: walked %d pages by cursor in %.0f ms (%.2f ms/page)%n", mode, PAGES, walk, walk / PAGES);
+        System.out.printf("%8s %14s %14s%n", "page", "offset ms", "cursor ms");
+        for (int page : SAMPLED_PAGES) {
+            // соседние страницы, а не повтор одной: H2 возвращает результат повторного запроса из кэша
+            int first = Math.min(page, PAGES - REPEATS + 1);
+            assertEquals(
+                    transferService.getTransactionHistory(user.getId(), cursors.get(page), PAGE_SIZE).items(),
+                    transferService.getTransactionHistory(user.getId(), PageRequest.of(page - 1, PAGE_SIZE)).getContent(),
+                    "Offset and cursor pages differ at page " + page);
+            double offset = averageMillis(first, p -> transferService.getTransactionHistory(user.getId(),
+                    PageRequest.of(p - 1, PAGE_SIZE)));
+            double seek = averageMillis(first, p -> transferService.getTransactionHistory(user.getId(),
+                    cursors.get(p), PAGE_SIZE));
+            System.out.printf("%8d %14.2f %14.2f%n", page, offset, seek);
+        }
+    }
+
+    private double averageMillis(int firstPage, IntFunction<?> query) {
+        long started = System.nanoTime();
+        for (int page = firstPage; page < firstPage + REPEATS; page++) {
+            query.apply(page);
+        }
+        return (System.nanoTime() - started) / 1_000_000.0 / REPEATS;
+    }
+
+    private void insert(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO transactions " +
+                "(id, from_card_id, to_card_id, amount, status, created_at, completed_at) " +
+                "VALUES (?, ?, ?, ?, 'COMPLETED', ?, ?)", rows);
+    }
+
+    private Card card(String number, User owner) {
+        return Card.builder()
+                .cardNumber(number)
+                .lastFourDigits("0000")
+                .cardholderName("HISTORY USER")
+                .expiryDate(LocalDate.now().plusYears(3))
+                .owner(owner)
+                .status(CardStatus.ACTIVE)
+                .balance(BigDecimal.ZERO)
+                .build();
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.LedgerVerificationDto;
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.repository.CardAmount;
+import com.example.bankcards.repository.CardBalanceSlotRepository;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный тест одной горячей карты-получателя: много потоков зачисляют на неё с разных карт,
+ * изредка карта сама переводит средства обратно. Сравнивает баланс в одной строке карты
+ * и баланс, распределённый по слотам.
+ * Запуск: mvn test -Dtest=HotCardBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest
+@ActiveProfiles("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HotCardBenchmarkTest {
+
+    private static final int SOURCE_CARDS = 32;
+    private static final int THREADS = 16;
+    private static final int TRANSFERS = 5_000;
+    private static final int PAYOUT_EVERY = 50;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("100000.00");
+
+    @Autowired
+    private TransferOrchestrator transferOrchestrator;
+
+    @Autowired
+    private HotCardService hotCardService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private CardBalanceSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private CardBalanceSlotRepository slotRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+    private Long merchantId;
+    private final List<Long> sourceIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .username("merchant")
+                .email("merchant@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        merchantId = cardRepository.save(card("merchant", BigDecimal.ZERO)).getId();
+        for (int i = 0; i < SOURCE_CARDS; i++) {
+            Card card = cardRepository.save(card("payer-" + i, INITIAL_BALANCE));
+            sourceIds.add(card.getId());
+            ledgerService.openCard(card.getId(), INITIAL_BALANCE);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        slotRepository.deleteAllInBatch();
+        snapshotRepository.deleteAllInBatch();
+        ledgerEntryRepository.deleteAllInBatch();
+        transactionRepository.deleteAllInBatch();
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+        hotCardService.refresh();
+        sourceIds.clear();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void depositsIntoOneCard(boolean striped) throws InterruptedException {
+        hotCardService.setHot(merchantId, striped);
+
+        long[] latencies = new long[TRANSFERS];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicInteger declinedPayouts = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        long started = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(() -> {
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < TRANSFERS) {
+                        long begin = System.nanoTime();
+                        try {
+                            transferOrchestrator.transfer(request(i), user.getId());
+                        } catch (InsufficientBalanceException ex) {
+                            declinedPayouts.incrementAndGet();
+                        } catch (RuntimeException ex) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES), "Run did not finish in time");
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+        pool.shutdown();
+
+        long[] sorted = Arrays.stream(latencies).sorted().toArray();
+        double p99 = sorted[(int) (sorted.length * 0.99)];
+        System.out.printf("%-12s %6d transfers  %4d failed  %4d payouts declined  %8.0f transfers/s  p99 %6.2f ms%n",
+                striped ? "STRIPED" : "SINGLE_ROW", TRANSFERS, failures.get(), declinedPayouts.get(),
+                TRANSFERS / seconds, p99 / 1_000_000.0);
+
+        BigDecimal total = cardRepository.findAllBalances().stream()
+                .map(CardAmount::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(SOURCE_CARDS)).compareTo(total));
+        LedgerVerificationDto verification = ledgerService.verify();
+        assertTrue(verification.consistent(), "Ledger verification failed: " + verification);
+        assertEquals(0, failures.get(), "Transfers failed under contention");
+    }
+
+    /**
+     * Каждый PAYOUT_EVERY-й перевод списывает с горячей карты, остальные зачисляют на неё.
+     */
+    private TransferRequestDto request(int i) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Long payer = sourceIds.get(random.nextInt(SOURCE_CARDS));
+        BigDecimal amount = BigDecimal.valueOf(random.nextInt(1, 100));
+        return i % PAYOUT_EVERY == PAYOUT_EVERY - 1
+                ? new TransferRequestDto(merchantId, payer, amount, "payout")
+                : new TransferRequestDto(payer, merchantId, amount, "payment");
+    }
+
+    private Card card(String number, BigDecimal balance) {
+        return Card.builder()
+                .cardNumber(number)
+                .lastFourDigits("0000")
+                .cardholderName("MERCHANT")
+                .expiryDate(LocalDate.now().plusYears(3))
+                .owner(user)
+                .status(CardStatus.ACTIVE)
+                .balance(balance)
+                .build();
+    }
+}
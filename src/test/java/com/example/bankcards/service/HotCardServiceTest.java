@@ -0,0 +1,144 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSlot;
+import com.example.bankcards.repository.CardBalanceSlotRepository;
+import com.example.bankcards.repository.CardRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HotCardServiceTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private CardBalanceSlotRepository slotRepository;
+
+    private HotCardService hotCardService;
+
+    @BeforeEach
+    void setUp() {
+        hotCardService = new HotCardService(cardRepository, slotRepository, 4);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void credit_SkipsSlotLockedByAnotherTransaction() {
+        CardBalanceSlot free = slot(1, "10.00");
+        when(slotRepository.findUnlocked(7L, 0)).thenReturn(Optional.empty());
+        when(slotRepository.findUnlocked(7L, 1)).thenReturn(Optional.of(free));
+
+        hotCardService.credit(7L, new BigDecimal("5.00"));
+
+        assertEquals(new BigDecimal("15.00"), free.getBalance());
+        verify(slotRepository, never()).findForUpdate(anyLong(), anyInt());
+    }
+
+    @Test
+    void drainInto_TakesSlotsInOrderOnlyUpToShortfall() {
+        Card card = Card.builder().id(7L).balance(new BigDecimal("10.00")).build();
+        CardBalanceSlot first = slot(0, "30.00");
+        CardBalanceSlot second = slot(1, "30.00");
+        CardBalanceSlot third = slot(2, "30.00");
+        when(slotRepository.findAllByCardIdForUpdate(7L)).thenReturn(List.of(first, second, third));
+
+        hotCardService.drainInto(card, new BigDecimal("50.00"));
+
+        assertEquals(new BigDecimal("50.00"), card.getBalance());
+        assertEquals(0, first.getBalance().signum());
+        assertEquals(new BigDecimal("20.00"), second.getBalance());
+        assertEquals(new BigDecimal("30.00"), third.getBalance());
+    }
+
+    @Test
+    void drainInto_WaitsForSlotHeldByCreditAndTakesItsAmount() throws Exception {
+        Card card = Card.builder().id(7L).balance(new BigDecimal("10.00")).build();
+        CardBalanceSlot held = slot(0, "0.00");
+        // блокировка строки слота: зачисление держит её до коммита
+        ReentrantLock slotRow = new ReentrantLock();
+        CountDownLatch creditHoldsSlot = new CountDownLatch(1);
+        CountDownLatch debitWaits = new CountDownLatch(1);
+        when(slotRepository.findUnlocked(7L, 0)).thenAnswer(invocation -> {
+            slotRow.lock();
+            creditHoldsSlot.countDown();
+            return Optional.of(held);
+        });
+        when(slotRepository.findAllByCardIdForUpdate(7L)).thenAnswer(invocation -> {
+            debitWaits.countDown();
+            slotRow.lock();
+            try {
+                return List.of(held);
+            } finally {
+                slotRow.unlock();
+            }
+        });
+
+        CompletableFuture<Void> credit = CompletableFuture.runAsync(() -> {
+            hotCardService.credit(7L, new BigDecimal("50.00"));
+            try {
+                assertTrue(debitWaits.await(5, TimeUnit.SECONDS));
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                slotRow.unlock();
+            }
+        });
+        assertTrue(creditHoldsSlot.await(5, TimeUnit.SECONDS));
+
+        hotCardService.drainInto(card, new BigDecimal("50.00"));
+        credit.get(5, TimeUnit.SECONDS);
+
+        assertEquals(new BigDecimal("50.00"), card.getBalance());
+        assertEquals(new BigDecimal("10.00"), held.getBalance());
+    }
+
+    @Test
+    void setHot_Off_FoldsSlotsIntoCardBalance() {
+        Card card = Card.builder().id(7L).balance(new BigDecimal("100.00")).hot(true).build();
+        CardBalanceSlot first = slot(0, "25.00");
+        CardBalanceSlot second = slot(3, "5.00");
+        when(cardRepository.findAllByIdForUpdate(List.of(7L))).thenReturn(List.of(card));
+        when(slotRepository.findAllByCardIdForUpdate(7L)).thenReturn(List.of(first, second));
+        when(cardRepository.findHotIds()).thenReturn(List.of(7L));
+
+        hotCardService.setHot(7L, false);
+        assertTrue(hotCardService.isHot(7L));
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        assertFalse(card.isHot());
+        assertEquals(new BigDecimal("130.00"), card.getBalance());
+        assertEquals(0, first.getBalance().signum());
+        assertEquals(0, second.getBalance().signum());
+        assertFalse(hotCardService.isHot(7L));
+    }
+
+    private CardBalanceSlot slot(int slot, String balance) {
+        return CardBalanceSlot.builder().cardId(7L).slot(slot).balance(new BigDecimal(balance)).build();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.LedgerVerificationDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSnapshot;
+import com.example.bankcards.entity.LedgerEntry;
+import com.example.bankcards.entity.LedgerEntryType;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.repository.CardAmount;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerServiceTest {
+
+    @Mock
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Mock
+    private CardBalanceSnapshotRepository snapshotRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    private LedgerService ledgerService;
+
+    @BeforeEach
+    void setUp() {
+        ledgerService = new LedgerService(ledgerEntryRepository, snapshotRepository, cardRepository, Duration.ofMinutes(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recordTransfers_AppendsBalancedDebitAndCredit() {
+        Transaction transaction = Transaction.builder()
+                .id(5L)
+                .sourceCard(Card.builder().id(1L).build())
+                .destinationCard(Card.builder().id(2L).build())
+                .amount(new BigDecimal("30.00"))
+                .build();
+
+        ledgerService.recordTransfers(List.of(transaction));
+
+        ArgumentCaptor<List<LedgerEntry>> captor = ArgumentCaptor.forClass(List.class);
+        verify(ledgerEntryRepository).saveAll(captor.capture());
+        List<LedgerEntry> entries = captor.getValue();
+        assertEquals(2, entries.size());
+        assertEquals(LedgerEntryType.DEBIT, entries.get(0).getType());
+        assertEquals(new BigDecimal("-30.00"), entries.get(0).getAmount());
+        assertEquals(LedgerEntryType.CREDIT, entries.get(1).getType());
+        assertEquals(0, entries.stream().map(LedgerEntry::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add).signum());
+    }
+
+    @Test
+    void balancesOf_AddsEntriesAfterSnapshot() {
+        CardBalanceSnapshot snapshot = snapshot(1L, "100.00");
+        when(snapshotRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(snapshot));
+        when(ledgerEntryRepository.sumSince(1L, snapshot.getAsOf())).thenReturn(new BigDecimal("-30.00"));
+        when(ledgerEntryRepository.sumAll(2L)).thenReturn(new BigDecimal("30.00"));
+
+        Map<Long, BigDecimal> balances = ledgerService.balancesOf(List.of(1L, 2L));
+
+        assertEquals(new BigDecimal("70.00"), balances.get(1L));
+        assertEquals(new BigDecimal("30.00"), balances.get(2L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void compact_RollsSnapshotsForward() {
+        CardBalanceSnapshot existing = snapshot(1L, "100.00");
+        when(ledgerEntryRepository.sumToCompact(any())).thenReturn(List.of(amount(1L, "-30.00"), amount(2L, "30.00")));
+        when(snapshotRepository.findAllById(anyCollection())).thenReturn(List.of(existing));
+
+        assertEquals(2, ledgerService.compact());
+
+        ArgumentCaptor<Collection<CardBalanceSnapshot>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(snapshotRepository).saveAll(captor.capture());
+        assertEquals(new BigDecimal("70.00"), existing.getBalance());
+        CardBalanceSnapshot created = captor.getValue().stream()
+                .filter(snapshot -> snapshot.getCardId().equals(2L))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(new BigDecimal("30.00"), created.getBalance());
+        assertEquals(existing.getAsOf(), created.getAsOf());
+        verify(cardRepository, never()).updateBalance(any(), any());
+    }
+
+    @Test
+    void verify_ReportsMismatchesAndUnbalancedTransactions() {
+        when(ledgerEntryRepository.sumByCard()).thenReturn(List.of(amount(1L, "70.00"), amount(2L, "30.00")));
+        when(snapshotRepository.findAll()).thenReturn(List.of());
+        when(ledgerEntryRepository.sumAfterSnapshot()).thenReturn(List.of(amount(1L, "70.00"), amount(2L, "30.00")));
+        when(cardRepository.findAllBalances()).thenReturn(List.of(amount(1L, "70.00"), amount(2L, "25.00")));
+        when(ledgerEntryRepository.findUnbalancedTransactionIds()).thenReturn(List.of(9L));
+
+        LedgerVerificationDto report = ledgerService.verify();
+
+        assertFalse(report.consistent());
+        assertEquals(2, report.cardsChecked());
+        assertEquals(1, report.mismatches().size());
+        assertEquals(2L, report.mismatches().get(0).cardId());
+        assertEquals(List.of(9L), report.unbalancedTransactionIds());
+    }
+
+    private CardBalanceSnapshot snapshot(Long cardId, String balance) {
+        return CardBalanceSnapshot.builder()
+                .cardId(cardId)
+                .balance(new BigDecimal(balance))
+                .asOf(LocalDateTime.now().minusHours(1))
+                .version(0L)
+                .build();
+    }
+
+    private CardAmount amount(Long cardId, String amount) {
+        return new CardAmount() {
+            @Override
+            public Long getCardId() {
+                return cardId;
+            }
+
+            @Override
+            public BigDecimal getAmount() {
+                return new BigDecimal(amount);
+            }
+        };
+    }
+}
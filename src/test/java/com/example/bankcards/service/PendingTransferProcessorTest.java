@@ -0,0 +1,48 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PendingTransferProcessorTest {
+
+    private static final Duration LEASE = Duration.ofMinutes(5);
+
+    @Mock
+    private TransferService transferService;
+
+    private PendingTransferProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        processor = new PendingTransferProcessor(transferService, 1, 10, LEASE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.shutdown();
+    }
+
+    @Test
+    void drain_ReturnsExpiredClaimsToQueueBeforeClaiming() {
+        when(transferService.releaseExpiredClaims(LEASE, 10)).thenReturn(2);
+        when(transferService.claimPending(10)).thenReturn(List.of(20L, 21L));
+
+        processor.drain();
+
+        InOrder order = inOrder(transferService);
+        order.verify(transferService).releaseExpiredClaims(LEASE, 10);
+        order.verify(transferService).claimPending(10);
+        verify(transferService, timeout(5000)).processClaimed(List.of(20L, 21L));
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение страницы истории переводов и страницы карт пользователя, прочитанных сущностями
+ * с последующим преобразованием в DTO, и тех же страниц, прочитанных проекцией прямо в DTO.
+ * Для каждого способа выводятся среднее время и число байт, выделенных потоком на страницу.
+ * Запуск: mvn test -Dtest=ProjectionBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest
+@ActiveProfiles("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProjectionBenchmarkTest {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int HISTORY_PAGES = 500;
+    private static final int CARDS = PAGE_SIZE * 10;
+    private static final int WARMUP = 3_000;
+    private static final int ITERATIONS = 10_000;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private HotCardService hotCardService;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnly;
+    private User user;
+    private final List<List<Long>> historyPages = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        user = userRepository.save(User.builder()
+                .username("projection")
+                .email("projection@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        List<Card> cards = new ArrayList<>(CARDS);
+        for (int i = 0; i < CARDS; i++) {
+            cards.add(cardRepository.save(Card.builder()
+                    .cardNumber("projection-" + i)
+                    .lastFourDigits(String.format("%04d", i))
+                    .cardholderName("PROJECTION USER")
+                    .expiryDate(LocalDate.now().plusYears(3))
+                    .owner(user)
+                    .status(CardStatus.ACTIVE)
+                    .balance(new BigDecimal("100.00"))
+                    .build()));
+        }
+
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+        List<Object[]> rows = new ArrayList<>();
+        long id = 1_000_000L;
+        for (int i = 0; i < PAGE_SIZE * HISTORY_PAGES; i++) {
+            Timestamp createdAt = Timestamp.valueOf(start.plusSeconds(i));
+            rows.add(new Object[]{id++, cards.get(i % CARDS).getId(), cards.get((i + 1) % CARDS).getId(),
+                    user.getId(), user.getId(), BigDecimal.ONE, "transfer " + i, createdAt, createdAt});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO transactions " +
+                "(id, from_card_id, to_card_id, from_user_id, to_user_id, amount, description, status, created_at, completed_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, 'COMPLETED', ?, ?)", rows);
+
+        for (int page = 0; page < HISTORY_PAGES; page++) {
+            long offset = (long) page * PAGE_SIZE;
+            historyPages.add(transactionRepository.findHistoryIds(user.getId(), offset, PAGE_SIZE, offset + PAGE_SIZE));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionRepository.deleteAllInBatch();
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+        historyPages.clear();
+    }
+
+    @Test
+    void entitiesVersusProjections() {
+        for (int page = 0; page < HISTORY_PAGES; page += 97) {
+            assertEquals(historyByEntities(page), historyByProjection(page), "History pages differ at " + page);
+            assertEquals(historyByEntities(page), historyByRepository(page), "History pages differ at " + page);
+        }
+        for (int page = 0; page < CARDS / PAGE_SIZE; page++) {
+            assertEquals(cardsByEntities(page), cardsByProjection(page), "Card pages differ at " + page);
+        }
+
+        System.out.printf("%-30s %10s %14s%n", "page of " + PAGE_SIZE, "ms/page", "bytes/page");
+        report("history, entities", HISTORY_PAGES, this::historyByEntities);
+        report("history, projection", HISTORY_PAGES, this::historyByProjection);
+        report("history, repository", HISTORY_PAGES, this::historyByRepository);
+        report("user cards, entities", CARDS / PAGE_SIZE, this::cardsByEntities);
+        report("user cards, projection", CARDS / PAGE_SIZE, this::cardsByProjection);
+    }
+
+    /**
+     * Прежний способ: транзакции страницы сущностями с прокси карт, затем преобразование в DTO.
+     */
+    private List<TransactionDto> historyByEntities(int page) {
+        return readOnly.execute(status -> entityManager.createQuery(
+                        "SELECT t FROM Transaction t WHERE t.id IN :ids ORDER BY t.createdAt DESC, t.id DESC",
+                        Transaction.class)
+                .setParameter("ids", historyPages.get(page))
+                .getResultList().stream()
+                .map(t -> new TransactionDto(t.getId(), t.getSourceCard().getId(), t.getDestinationCard().getId(),
+                        t.getAmount(), t.getStatus().name(), t.getDescription(), t.getCreatedAt()))
+                .toList());
+    }
+
+    /**
+     * Тот же запрос проекции, что и TransactionRepository.findHistoryItems, но без прокси репозитория,
+     * чтобы разница с historyByEntities относилась только к чтению строк.
+     */
+    private List<TransactionDto> historyByProjection(int page) {
+        return readOnly.execute(status -> entityManager.createQuery(Transaction.HISTORY_ITEM +
+                        "WHERE t.id IN :ids ORDER BY t.createdAt DESC, t.id DESC", TransactionDto.class)
+                .setParameter("ids", historyPages.get(page))
+                .getResultList());
+    }
+
+    private List<TransactionDto> historyByRepository(int page) {
+        return readOnly.execute(status -> transactionRepository.findHistoryItems(historyPages.get(page)));
+    }
+
+    /**
+     * Прежний CardService.getUserCards: сущности карт, слоты горячих карт, преобразование в DTO.
+     */
+    private List<CardDto> cardsByEntities(int page) {
+        return readOnly.execute(status -> {
+            Page<Card> cards = cardRepository.findByOwner_Id(user.getId(), PageRequest.of(page, PAGE_SIZE));
+            Map<Long, BigDecimal> slots = hotCardService.slotBalances(cards.map(Card::getId).getContent());
+            return cards.map(card -> new CardDto(card.getId(), card.getMaskedCardNumber(), card.getCardholderName(),
+                    card.getExpiryDate(), card.getStatus(),
+                    card.getBalance().add(slots.getOrDefault(card.getId(), BigDecimal.ZERO)))).getContent();
+        });
+    }
+
+    private List<CardDto> cardsByProjection(int page) {
+        return cardService.getUserCards(user.getId(), PageRequest.of(page, PAGE_SIZE)).getContent();
+    }
+
+    /**
+     * Страницы перебираются по кругу: H2 возвращает результат повторного запроса из кэша.
+     */
+    private void report(String mode, int pages, IntFunction<List<?>> query) {
+        for (int i = 0; i < WARMUP; i++) {
+            query.apply(i % pages);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long started = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(PAGE_SIZE, query.apply(i % pages).size());
+        }
+        double millis = (System.nanoTime() - started) / 1_000_000.0 / ITERATIONS;
+        long bytes = (threads.getCurrentThreadAllocatedBytes() - allocated) / ITERATIONS;
+        System.out.printf("%-30s %10.3f %14d%n", mode, millis, bytes);
+    }
+}
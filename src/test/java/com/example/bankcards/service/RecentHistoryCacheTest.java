@@ -0,0 +1,141 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentHistoryCacheTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RecentHistoryCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RecentHistoryCache(meterRegistry, 5, Duration.ofMinutes(1), 100);
+    }
+
+    @Test
+    void first_SecondRead_IsServedFromMemory() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.first(1L, 3, limit -> {
+            loads.incrementAndGet();
+            return rows(limit);
+        });
+        List<TransactionDto> second = cache.first(1L, 2, limit -> {
+            loads.incrementAndGet();
+            return rows(limit);
+        });
+
+        assertEquals(1, loads.get());
+        assertEquals(List.of(10L, 9L), ids(second));
+        assertEquals(1, hits("hit"));
+        assertEquals(1, hits("miss"));
+    }
+
+    @Test
+    void first_LongerThanBuffer_ReloadsAndShortHistoryIsComplete() {
+        AtomicInteger loads = new AtomicInteger();
+        cache.first(1L, 2, limit -> {
+            loads.incrementAndGet();
+            return rows(limit);
+        });
+        cache.first(1L, 4, limit -> {
+            loads.incrementAndGet();
+            return rows(limit);
+        });
+        assertEquals(2, loads.get());
+
+        cache.first(2L, 4, limit -> List.of(row(3L, NOW)));
+        assertEquals(List.of(3L), ids(cache.first(2L, 5, limit -> fail("complete history must not be reloaded"))));
+    }
+
+    @Test
+    void record_AddsNewTransferToBothOwnersInHistoryOrder() {
+        cache.first(1L, 3, this::rows);
+        cache.first(2L, 3, limit -> List.of());
+
+        cache.record(List.of(transaction(11L, NOW.plusMinutes(1), 1L, 2L)));
+
+        assertEquals(List.of(11L, 10L, 9L), ids(cache.first(1L, 3, limit -> fail("must be served from memory"))));
+        assertEquals(List.of(11L), ids(cache.first(2L, 3, limit -> fail("must be served from memory"))));
+    }
+
+    @Test
+    void record_StatusChange_ReplacesRowAndIgnoresRowsOlderThanBuffer() {
+        cache.first(1L, 3, this::rows);
+
+        Transaction updated = transaction(9L, NOW.minusMinutes(1), 1L, 1L);
+        updated.setStatus(TransactionStatus.FAILED);
+        cache.record(List.of(updated, transaction(2L, NOW.minusMinutes(8), 1L, 1L)));
+
+        List<TransactionDto> first = cache.first(1L, 3, limit -> fail("must be served from memory"));
+        assertEquals(List.of(10L, 9L, 8L), ids(first));
+        assertEquals("FAILED", first.get(1).status());
+    }
+
+    @Test
+    void record_DuringLoad_DoesNotKeepWhatWasRead() {
+        cache.first(1L, 3, limit -> {
+            cache.record(List.of(transaction(11L, NOW.plusMinutes(1), 1L, 1L)));
+            return rows(limit);
+        });
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.first(1L, 3, limit -> {
+            loads.incrementAndGet();
+            return rows(limit);
+        });
+        assertEquals(1, loads.get());
+    }
+
+    private double hits(String result) {
+        return meterRegistry.get("transfer.history.recent-cache").tag("result", result).counter().count();
+    }
+
+    /**
+     * История из строк 10, 9, 8… по минуте друг от друга, первые limit строк.
+     */
+    private List<TransactionDto> rows(int limit) {
+        return IntStream.range(0, limit)
+                .mapToObj(i -> row(10L - i, NOW.minusMinutes(i)))
+                .toList();
+    }
+
+    private static TransactionDto row(Long id, LocalDateTime createdAt) {
+        return new TransactionDto(id, 1L, 2L, BigDecimal.TEN, "COMPLETED", null, createdAt);
+    }
+
+    private static Transaction transaction(Long id, LocalDateTime createdAt, Long fromUserId, Long toUserId) {
+        return Transaction.builder()
+                .id(id)
+                .sourceCard(Card.builder().id(1L).build())
+                .destinationCard(Card.builder().id(2L).build())
+                .fromUserId(fromUserId)
+                .toUserId(toUserId)
+                .amount(BigDecimal.TEN)
+                .status(TransactionStatus.COMPLETED)
+                .createdAt(createdAt)
+                .build();
+    }
+
+    private static List<Long> ids(List<TransactionDto> rows) {
+        return rows.stream().map(TransactionDto::id).toList();
+    }
+}
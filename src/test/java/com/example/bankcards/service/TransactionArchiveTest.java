@@ -0,0 +1,146 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.repository.ArchivedHistoryRow;
+import com.example.bankcards.repository.TransactionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionArchiveTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2023, 1);
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @TempDir
+    private Path directory;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void read_SeveralBlocksAndParts_ReturnsHistoryInOrder() throws IOException {
+        // 300 строк пользователя занимают три блока; маленький лимит размера разносит пользователей по частям
+        try (HistorySegmentWriter writer = new HistorySegmentWriter(directory, MONTH, 1)) {
+            for (TransactionDto row : history(1L, 300)) {
+                writer.append(1L, row);
+            }
+            for (TransactionDto row : history(2L, 5)) {
+                writer.append(2L, row);
+            }
+            assertEquals(2, writer.finish().size());
+        }
+        TransactionArchive archive = archive();
+        archive.refresh();
+
+        assertEquals(300, archive.count(1L));
+        assertEquals(5, archive.count(2L));
+        assertEquals(0, archive.count(3L));
+        assertEquals(history(1L, 300).subList(125, 135), archive.read(1L, 125, 10));
+        assertEquals(history(2L, 5), archive.read(2L, 0, 20));
+        assertTrue(archive.read(3L, 0, 20).isEmpty());
+
+        TransactionDto position = history(1L, 300).get(199);
+        assertEquals(history(1L, 300).subList(200, 204),
+                archive.readBefore(1L, position.createdAt(), position.id(), 4));
+        assertEquals(300, archive.stream(1L).count());
+    }
+
+    @Test
+    void archive_Committed_PublishesSegmentsAndDeletesRows() {
+        LocalDateTime from = MONTH.atDay(1).atStartOfDay();
+        LocalDateTime to = MONTH.plusMonths(1).atDay(1).atStartOfDay();
+        // перевод между пользователями 1 и 2 попадает в историю обоих
+        when(transactionRepository.streamArchiveRowsBySender(from, to))
+                .thenReturn(Stream.of(row(1L, 7L), row(2L, 5L)));
+        when(transactionRepository.streamArchiveRowsByReceiver(from, to))
+                .thenReturn(Stream.of(row(2L, 7L)));
+        when(transactionRepository.deleteCreatedBetween(from, to)).thenReturn(2);
+        TransactionArchive archive = archive();
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertEquals(2, archive.archive(MONTH));
+        archive.refresh();
+        assertFalse(archive.hasSegments());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(List.of(7L), archive.read(1L, 0, 10).stream().map(TransactionDto::id).toList());
+        assertEquals(List.of(7L, 5L), archive.read(2L, 0, 10).stream().map(TransactionDto::id).toList());
+    }
+
+    @Test
+    void archive_RolledBack_RemovesSegments() throws IOException {
+        when(transactionRepository.streamArchiveRowsBySender(any(), any())).thenReturn(Stream.of(row(1L, 7L)));
+        when(transactionRepository.streamArchiveRowsByReceiver(any(), any())).thenReturn(Stream.empty());
+        TransactionArchive archive = archive();
+        TransactionSynchronizationManager.initSynchronization();
+
+        archive.archive(MONTH);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertFalse(archive.hasSegments());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private TransactionArchive archive() {
+        return new TransactionArchive(transactionRepository, directory, DataSize.ofMegabytes(1));
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private static List<TransactionDto> history(long userId, int size) {
+        LocalDateTime newest = MONTH.atEndOfMonth().atStartOfDay();
+        List<TransactionDto> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(new TransactionDto(userId * 1000 + size - i, userId, userId + 1, new BigDecimal("10.50"),
+                    "COMPLETED", i % 2 == 0 ? null : "row " + i, newest.minusMinutes(i)));
+        }
+        return rows;
+    }
+
+    private static ArchivedHistoryRow row(Long userId, Long id) {
+        LocalDateTime createdAt = MONTH.atDay(1).atStartOfDay().plusHours(id);
+        return new ArchivedHistoryRow() {
+            public Long getUserId() { return userId; }
+            public Long getId() { return id; }
+            public Long getFromCardId() { return 1L; }
+            public Long getToCardId() { return 2L; }
+            public BigDecimal getAmount() { return BigDecimal.TEN; }
+            public String getStatus() { return "COMPLETED"; }
+            public String getDescription() { return null; }
+            public LocalDateTime getCreatedAt() { return createdAt; }
+        };
+    }
+}
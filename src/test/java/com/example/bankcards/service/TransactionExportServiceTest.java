@@ -0,0 +1,92 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.HistoryExportFormat;
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.repository.TransactionRepository;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionExportServiceTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 3, 1, 12, 0, 5);
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private TransactionArchive transactionArchive;
+
+    private TransactionExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        // как ObjectMapper Spring Boot: даты строками ISO-8601
+        exportService = new TransactionExportService(transactionRepository, Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build(), transactionArchive);
+    }
+
+    @Test
+    void export_Ndjson_WritesOneObjectPerLine() throws IOException {
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.streamHistory(1L)).thenReturn(Stream.of(
+                new TransactionDto(2L, 1L, 2L, new BigDecimal("10.50"), "COMPLETED", "rent", CREATED_AT),
+                new TransactionDto(1L, 2L, 1L, new BigDecimal("3.00"), "FAILED", null, CREATED_AT)));
+
+        String[] lines = export(HistoryExportFormat.NDJSON).split("\n", -1);
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":2,\"fromCardId\":1,\"toCardId\":2,\"amount\":10.50,"));
+        assertTrue(lines[0].endsWith("\"createdAt\":\"2024-03-01T12:00:05\"}"));
+        assertTrue(lines[1].startsWith("{\"id\":1,"));
+        assertEquals("", lines[2]);
+    }
+
+    @Test
+    void export_Csv_QuotesSeparatorsAndNeutralizesFormulas() throws IOException {
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.streamHistory(1L)).thenReturn(Stream.of(
+                new TransactionDto(3L, 1L, 2L, new BigDecimal("1E+2"), "COMPLETED", "rent, \"May\"", CREATED_AT),
+                new TransactionDto(2L, 1L, 2L, new BigDecimal("5.00"), "COMPLETED", "=HYPERLINK(\"x\")", CREATED_AT),
+                new TransactionDto(1L, 2L, 1L, new BigDecimal("1.00"), "COMPLETED", null, CREATED_AT)));
+
+        assertEquals("""
+                id,fromCardId,toCardId,amount,status,description,createdAt
+                3,1,2,100,COMPLETED,"rent, ""May\""",2024-03-01T12:00:05
+                2,1,2,5.00,COMPLETED,"'=HYPERLINK(""x"")",2024-03-01T12:00:05
+                1,2,1,1.00,COMPLETED,,2024-03-01T12:00:05
+                """, export(HistoryExportFormat.CSV));
+    }
+
+    @Test
+    void export_OwnersNotBackfilled_ReadsThroughCards() throws IOException {
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(true);
+        when(transactionRepository.streamHistoryByCards(1L)).thenReturn(Stream.empty());
+
+        assertEquals("", export(HistoryExportFormat.NDJSON));
+        verify(transactionRepository, never()).streamHistory(any());
+    }
+
+    private String export(HistoryExportFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(1L, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionOwnerBackfillTest {
+
+    @Mock
+    private TransferService transferService;
+
+    @Test
+    void run_FillsChunksUntilShortChunkAndStops() {
+        TransactionOwnerBackfill backfill = new TransactionOwnerBackfill(transferService, 100);
+        when(transferService.backfillOwners(100)).thenReturn(100, 100, 7);
+
+        backfill.run();
+        backfill.run();
+
+        verify(transferService, times(3)).backfillOwners(100);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionPartitionMaintenanceTest {
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Test
+    void run_CreatesPartitionsAheadAndDetachesWholeMonthsPastRetention() {
+        TransactionPartitionMaintenance maintenance = new TransactionPartitionMaintenance(transactionRepository, 3, 13);
+
+        maintenance.run();
+
+        verify(transactionRepository).createPartitions(3);
+        verify(transactionRepository).detachPartitions(
+                LocalDate.now().withDayOfMonth(1).minusMonths(13).atStartOfDay());
+    }
+
+    @Test
+    void run_RetentionDisabled_KeepsAllPartitions() {
+        TransactionPartitionMaintenance maintenance = new TransactionPartitionMaintenance(transactionRepository, 3, 0);
+
+        maintenance.run();
+
+        verify(transactionRepository).createPartitions(3);
+        verify(transactionRepository, never()).detachPartitions(any());
+    }
+}
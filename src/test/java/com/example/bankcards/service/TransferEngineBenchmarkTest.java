@@ -0,0 +1,135 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение производительности способов перевода на H2 в памяти.
+ * Запуск: mvn test -Dtest=TransferEngineBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest
+@ActiveProfiles("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TransferEngineBenchmarkTest {
+
+    private static final int WARMUP_TRANSFERS = 1_000;
+    private static final int MEASURED_TRANSFERS = 10_000;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000.00");
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+    private Card first;
+    private Card second;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .username("bench")
+                .email("bench@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        first = cardRepository.save(card("1111"));
+        second = cardRepository.save(card("2222"));
+        ledgerService.openCard(first.getId(), INITIAL_BALANCE);
+        ledgerService.openCard(second.getId(), INITIAL_BALANCE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        useEngine(TransferEngine.LOAD_MODIFY_SAVE);
+        ledgerEntryRepository.deleteAllInBatch();
+        transactionRepository.deleteAllInBatch();
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void compareEngines() {
+        for (TransferEngine engine : List.of(TransferEngine.LOAD_MODIFY_SAVE, TransferEngine.CONDITIONAL_UPDATE, TransferEngine.LEDGER)) {
+            useEngine(engine);
+            run(WARMUP_TRANSFERS);
+
+            long started = System.nanoTime();
+            run(MEASURED_TRANSFERS);
+            double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+
+            System.out.printf("%-20s %8d transfers  %8.0f transfers/s%n",
+                    engine, MEASURED_TRANSFERS, MEASURED_TRANSFERS / seconds);
+        }
+
+        BigDecimal total = ledgerService.balancesOf(List.of(first.getId(), second.getId())).values().stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(2)).compareTo(total));
+    }
+
+    private void run(int transfers) {
+        for (int i = 0; i < transfers; i++) {
+            boolean forward = i % 2 == 0;
+            transferService.transfer(new TransferRequestDto(
+                    forward ? first.getId() : second.getId(),
+                    forward ? second.getId() : first.getId(),
+                    AMOUNT,
+                    "benchmark"), user.getId());
+        }
+    }
+
+    private void useEngine(TransferEngine engine) {
+        TransferService target = AopTestUtils.getTargetObject(transferService);
+        ReflectionTestUtils.setField(target, "engine", engine);
+        LedgerService ledger = AopTestUtils.getTargetObject(ledgerService);
+        ReflectionTestUtils.setField(ledger, "engine", engine);
+    }
+
+    private Card card(String lastFour) {
+        return Card.builder()
+                .cardNumber("bench-" + lastFour)
+                .lastFourDigits(lastFour)
+                .cardholderName("BENCH USER")
+                .expiryDate(LocalDate.now().plusYears(3))
+                .owner(user)
+                .status(CardStatus.ACTIVE)
+                .balance(INITIAL_BALANCE)
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.service.TransferService.TransferOutcome;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferGroupCommitterTest {
+
+    @Mock
+    private TransferService transferService;
+
+    private MeterRegistry meterRegistry;
+    private TransferGroupCommitter committer;
+
+    private final TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("10.00"), "Test");
+    private final TransferResponse response = new TransferResponse(
+            1L, 1L, 2L, new BigDecimal("10.00"), "SUCCESS", "Transfer completed successfully", LocalDateTime.now());
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        committer.shutdown();
+    }
+
+    @Test
+    void transfer_ConcurrentCallersWithinWindow_ShareOneTransaction() {
+        committer = new TransferGroupCommitter(transferService, meterRegistry, Duration.ofMillis(500), 2, 100);
+        when(transferService.applyAll(anyList())).thenAnswer(invocation -> {
+            List<?> commands = invocation.getArgument(0);
+            return commands.stream().map(command -> new TransferOutcome(response, null)).toList();
+        });
+
+        CompletableFuture<TransferResponse> first = CompletableFuture.supplyAsync(() -> committer.transfer(request, 1L));
+        CompletableFuture<TransferResponse> second = CompletableFuture.supplyAsync(() -> committer.transfer(request, 1L));
+
+        assertEquals(response, first.join());
+        assertEquals(response, second.join());
+        verify(transferService, times(1)).applyAll(argThat(commands -> commands.size() == 2));
+        assertEquals(2.0, meterRegistry.get("transfer.group-commit.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void transfer_BusinessError_IsThrownToCaller() {
+        committer = new TransferGroupCommitter(transferService, meterRegistry, Duration.ZERO, 100, 100);
+        when(transferService.applyAll(anyList())).thenReturn(List.of(
+                new TransferOutcome(null, new InsufficientBalanceException(request.amount(), BigDecimal.ONE))));
+
+        assertThrows(InsufficientBalanceException.class, () -> committer.transfer(request, 1L));
+    }
+
+    @Test
+    void transfer_GroupFails_AppliesTransfersOneByOne() {
+        committer = new TransferGroupCommitter(transferService, meterRegistry, Duration.ZERO, 100, 100);
+        when(transferService.applyAll(anyList())).thenThrow(new DataAccessResourceFailureException("connection lost"));
+        when(transferService.transfer(request, 1L)).thenReturn(response);
+
+        assertEquals(response, committer.transfer(request, 1L));
+        verify(transferService).transfer(request, 1L);
+    }
+}
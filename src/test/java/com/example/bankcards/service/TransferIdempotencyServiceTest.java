@@ -0,0 +1,162 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.entity.TransferIdempotencyKey;
+import com.example.bankcards.exception.InvalidTransferException;
+import com.example.bankcards.repository.TransferIdempotencyKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferIdempotencyServiceTest {
+
+    @Mock
+    private TransferIdempotencyKeyRepository repository;
+
+    private TransferIdempotencyService idempotencyService;
+
+    private final TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("10.00"), "Test");
+    private final TransferResponse response = new TransferResponse(
+            7L, 1L, 2L, new BigDecimal("10.00"), "SUCCESS", "Transfer completed successfully", LocalDateTime.now());
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new TransferIdempotencyService(repository, 100, Duration.ofHours(24));
+    }
+
+    @Test
+    void findCompleted_UnknownKey_ReturnsEmpty() {
+        when(repository.findByUserIdAndIdempotencyKeyAndCreatedAtGreaterThanEqual(eq(1L), eq("key-1"), any()))
+                .thenReturn(Optional.empty());
+
+        assertTrue(idempotencyService.findCompleted(1L, "key-1", request).isEmpty());
+    }
+
+    @Test
+    void findCompleted_StoredKey_ReturnsStoredResultAndCachesIt() {
+        stubLookup(stored(request));
+
+        TransferResponse first = idempotencyService.findCompleted(1L, "key-1", request).orElseThrow();
+        TransferResponse second = idempotencyService.findCompleted(1L, "key-1", request).orElseThrow();
+
+        assertEquals(response.transactionId(), first.transactionId());
+        assertEquals(first, second);
+        verify(repository, times(1))
+                .findByUserIdAndIdempotencyKeyAndCreatedAtGreaterThanEqual(eq(1L), eq("key-1"), any());
+    }
+
+    @Test
+    void findCompleted_SameKeyDifferentTransfer_ThrowsException() {
+        stubLookup(stored(request));
+        TransferRequestDto other = new TransferRequestDto(1L, 2L, new BigDecimal("20.00"), "Test");
+
+        assertThrows(InvalidTransferException.class, () -> idempotencyService.findCompleted(1L, "key-1", other));
+    }
+
+    @Test
+    void findCompleted_BlankKey_ThrowsException() {
+        assertThrows(InvalidTransferException.class, () -> idempotencyService.findCompleted(1L, " ", request));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void findCompleted_StoredKeyOlderThanRetention_ReturnsEmptyAndDoesNotCacheIt() {
+        TransferIdempotencyKey stored = stored(request);
+        stored.setCreatedAt(LocalDateTime.now().minusHours(25));
+        stubLookup(stored);
+
+        assertTrue(idempotencyService.findCompleted(1L, "key-1", request).isEmpty());
+        assertTrue(idempotencyService.findCompleted(1L, "key-1", request).isEmpty());
+
+        LocalDateTime retentionStart = LocalDateTime.now().minusHours(24);
+        verify(repository, times(2)).findByUserIdAndIdempotencyKeyAndCreatedAtGreaterThanEqual(eq(1L), eq("key-1"),
+                argThat(createdFrom -> !createdFrom.isAfter(retentionStart)
+                        && createdFrom.isAfter(retentionStart.minusMinutes(1))));
+    }
+
+    @Test
+    void findCompleted_CachedKeyOlderThanRetention_LooksUpTableAgain() throws InterruptedException {
+        TransferIdempotencyService shortLived = new TransferIdempotencyService(repository, 100, Duration.ofMillis(200));
+        stubLookup(stored(request));
+
+        assertTrue(shortLived.findCompleted(1L, "key-1", request).isPresent());
+        Thread.sleep(300);
+
+        assertTrue(shortLived.findCompleted(1L, "key-1", request).isEmpty());
+        verify(repository, times(2))
+                .findByUserIdAndIdempotencyKeyAndCreatedAtGreaterThanEqual(eq(1L), eq("key-1"), any());
+    }
+
+    @Test
+    void purgeExpired_EvictsExpiredKeysFromCache() throws InterruptedException {
+        TransferIdempotencyService shortLived = new TransferIdempotencyService(repository, 100, Duration.ofMillis(200));
+        stubLookup(stored(request));
+        shortLived.findCompleted(1L, "key-1", request);
+        Thread.sleep(300);
+
+        shortLived.purgeExpired();
+
+        assertEquals(0, ((Map<?, ?>) ReflectionTestUtils.getField(shortLived, "recent")).size());
+        verify(repository).deleteCreatedBefore(any());
+    }
+
+    @Test
+    void record_RemovesExpiredRowWithSameKeyBeforeInsert() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            idempotencyService.record(1L, "key-1", request, response);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        InOrder order = inOrder(repository);
+        order.verify(repository).deleteExpired(eq(1L), eq("key-1"), any());
+        order.verify(repository).saveAndFlush(any());
+    }
+
+    /**
+     * Поиск по ключу отбрасывает записи старше переданной границы, как запрос в базу.
+     */
+    private void stubLookup(TransferIdempotencyKey stored) {
+        when(repository.findByUserIdAndIdempotencyKeyAndCreatedAtGreaterThanEqual(eq(1L), eq("key-1"), any()))
+                .thenAnswer(invocation -> Optional.of(stored)
+                        .filter(key -> !key.getCreatedAt().isBefore(invocation.getArgument(2))));
+    }
+
+    /**
+     * Хэш запроса, сохранённый при выполнении перевода, берётся из record(),
+     * время создания проставляет @PrePersist.
+     */
+    private TransferIdempotencyKey stored(TransferRequestDto original) {
+        ArgumentCaptor<TransferIdempotencyKey> captor = ArgumentCaptor.forClass(TransferIdempotencyKey.class);
+        TransferIdempotencyService recorder = new TransferIdempotencyService(repository, 100, Duration.ofHours(24));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            recorder.record(1L, "key-1", original, response);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(repository).saveAndFlush(captor.capture());
+        clearInvocations(repository);
+        TransferIdempotencyKey stored = captor.getValue();
+        stored.setCreatedAt(LocalDateTime.now());
+        return stored;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.dto.TransferResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferOrchestratorTest {
+
+    @Mock
+    private TransferService transferService;
+
+    @Mock
+    private TransferIdempotencyService idempotencyService;
+
+    @Mock
+    private TransferGroupCommitter groupCommitter;
+
+    private MeterRegistry meterRegistry;
+
+    private final TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("10.00"), "Test");
+    private final TransferResponse response = new TransferResponse(
+            1L, 1L, 2L, new BigDecimal("10.00"), "SUCCESS", "Transfer completed successfully", LocalDateTime.now());
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        when(transferService.getEngine()).thenReturn(TransferEngine.OPTIMISTIC);
+    }
+
+    @Test
+    void transfer_ConflictThenSuccess_RetriesAndCountsConflict() {
+        TransferOrchestrator orchestrator = orchestrator(3, 100);
+        when(transferService.transfer(request, 1L))
+                .thenThrow(new ObjectOptimisticLockingFailureException("Card", 1L))
+                .thenReturn(response);
+
+        TransferResponse result = orchestrator.transfer(request, 1L);
+
+        assertEquals(response, result);
+        verify(transferService, times(2)).transfer(request, 1L);
+        assertEquals(1, count("transfer.conflicts"));
+        assertEquals(1, count("transfer.retries"));
+        assertEquals(0, count("transfer.retry.give-ups"));
+    }
+
+    @Test
+    void transfer_PersistentConflict_GivesUpAfterMaxAttempts() {
+        TransferOrchestrator orchestrator = orchestrator(3, 100);
+        when(transferService.transfer(request, 1L))
+                .thenThrow(new ObjectOptimisticLockingFailureException("Card", 1L));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> orchestrator.transfer(request, 1L));
+
+        verify(transferService, times(3)).transfer(request, 1L);
+        assertEquals(3, count("transfer.conflicts"));
+        assertEquals(2, count("transfer.retries"));
+        assertEquals(1, count("transfer.retry.give-ups"));
+    }
+
+    @Test
+    void transfer_RetryBudgetExhausted_DoesNotRetry() {
+        TransferOrchestrator orchestrator = orchestrator(5, 1);
+        when(transferService.transfer(request, 1L))
+                .thenThrow(new ObjectOptimisticLockingFailureException("Card", 1L));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> orchestrator.transfer(request, 1L));
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> orchestrator.transfer(request, 1L));
+
+        // единственный повтор из бюджета потрачен первым переводом
+        verify(transferService, times(3)).transfer(request, 1L);
+        assertEquals(1, count("transfer.retries"));
+        assertEquals(2, count("transfer.retry.give-ups"));
+    }
+
+    @Test
+    void transfer_KeyAlreadyUsed_ReturnsStoredResultWithoutTransfer() {
+        TransferOrchestrator orchestrator = orchestrator(3, 100);
+        when(idempotencyService.findCompleted(1L, "key-1", request)).thenReturn(Optional.of(response));
+
+        TransferResponse result = orchestrator.transfer(request, 1L, "key-1");
+
+        assertEquals(response, result);
+        verify(transferService, never()).transfer(any(), any(), any());
+    }
+
+    @Test
+    void transfer_ConcurrentRequestWithSameKeyWins_ReturnsItsResult() {
+        TransferOrchestrator orchestrator = orchestrator(3, 100);
+        when(idempotencyService.findCompleted(1L, "key-1", request))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(response));
+        when(transferService.transfer(request, 1L, "key-1"))
+                .thenThrow(new DataIntegrityViolationException("uk_transfer_idempotency_user_key"));
+
+        TransferResponse result = orchestrator.transfer(request, 1L, "key-1");
+
+        assertEquals(response, result);
+        verify(transferService, times(1)).transfer(request, 1L, "key-1");
+    }
+
+    private TransferOrchestrator orchestrator(int maxAttempts, int budgetCapacity) {
+        return new TransferOrchestrator(transferService, idempotencyService, groupCommitter, meterRegistry,
+                maxAttempts, Duration.ZERO, Duration.ZERO, budgetCapacity, 0.1);
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+}
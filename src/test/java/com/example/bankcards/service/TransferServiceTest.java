@@ -1,5 +1,8 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.BatchTransferRequestDto;
+import com.example.bankcards.dto.BatchTransferResponseDto;
+import com.example.bankcards.dto.TransactionCursorPageDto;
 import com.example.bankcards.dto.TransactionDto;
 import com.example.bankcards.dto.TransferRequestDto;
 import com.example.bankcards.dto.TransferResponse;
@@ -8,28 +11,42 @@ import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.Transaction;
 import com.example.bankcards.entity.TransactionStatus;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.BatchTransferRejectedException;
 import com.example.bankcards.exception.CardBlockedException;
 import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.exception.InvalidCursorException;
 import com.example.bankcards.exception.InvalidTransferException;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -41,6 +58,22 @@ class TransferServiceTest {
     @Mock
     private TransactionRepository transactionRepository;
 
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private HotCardService hotCardService;
+
+    @Mock
+    private TransactionArchive transactionArchive;
+
+    @Spy
+    private HistoryCountCache historyCountCache = new HistoryCountCache(Duration.ofSeconds(30), 100);
+
+    @Spy
+    private RecentHistoryCache recentHistoryCache = new RecentHistoryCache(new SimpleMeterRegistry(), 50,
+            Duration.ofSeconds(30), 100);
+
     @InjectMocks
     private TransferService transferService;
 
@@ -83,8 +116,7 @@ class TransferServiceTest {
                 .status(TransactionStatus.COMPLETED)
                 .build();
 
-        when(cardRepository.findById(request.fromCardId())).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(request.toCardId())).thenReturn(Optional.of(toCard));
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(fromCard, toCard));
         when(cardRepository.save(any(Card.class))).thenReturn(fromCard).thenReturn(toCard);
         when(transactionRepository.save(any(Transaction.class))).thenReturn(savedTransaction);
 
@@ -96,8 +128,7 @@ class TransferServiceTest {
         assertEquals(new BigDecimal("400.00"), fromCard.getBalance());
         assertEquals(new BigDecimal("300.00"), toCard.getBalance());
 
-        verify(cardRepository).findById(request.fromCardId());
-        verify(cardRepository).findById(request.toCardId());
+        verify(cardRepository).findAllByIdForUpdate(any());
         verify(cardRepository, times(2)).save(any(Card.class));
         verify(transactionRepository).save(any(Transaction.class));
     }
@@ -132,13 +163,11 @@ class TransferServiceTest {
                 .lastFourDigits("5678")
                 .build();
 
-        when(cardRepository.findById(request.fromCardId())).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(request.toCardId())).thenReturn(Optional.of(toCard));
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(fromCard, toCard));
 
         assertThrows(Exception.class, () -> transferService.transfer(request, userId));
 
-        verify(cardRepository).findById(request.fromCardId());
-        verify(cardRepository).findById(request.toCardId());
+        verify(cardRepository).findAllByIdForUpdate(any());
         verify(transactionRepository, never()).save(any(Transaction.class));
     }
 
@@ -163,8 +192,7 @@ class TransferServiceTest {
                 .lastFourDigits("1234")
                 .build();
 
-        when(cardRepository.findById(request.fromCardId())).thenReturn(Optional.of(card));
-        when(cardRepository.findById(request.toCardId())).thenReturn(Optional.of(card));
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card));
 
         InvalidTransferException exception = assertThrows(
                 InvalidTransferException.class,
@@ -206,8 +234,7 @@ class TransferServiceTest {
                 .lastFourDigits("5678")
                 .build();
 
-        when(cardRepository.findById(request.fromCardId())).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(request.toCardId())).thenReturn(Optional.of(toCard));
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(fromCard, toCard));
 
         CardBlockedException exception = assertThrows(
                 CardBlockedException.class,
@@ -251,8 +278,7 @@ class TransferServiceTest {
                 .lastFourDigits("5678")
                 .build();
 
-        when(cardRepository.findById(request.fromCardId())).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(request.toCardId())).thenReturn(Optional.of(toCard));
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(fromCard, toCard));
 
         InvalidTransferException exception = assertThrows(
                 InvalidTransferException.class,
@@ -274,7 +300,7 @@ class TransferServiceTest {
                 "Test transfer"
         );
 
-        when(cardRepository.findById(request.fromCardId())).thenReturn(Optional.empty());
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of());
 
         CardNotFoundException exception = assertThrows(
                 CardNotFoundException.class,
@@ -282,7 +308,7 @@ class TransferServiceTest {
         );
 
         assertEquals("Card not found with id: 999", exception.getMessage());
-        verify(cardRepository).findById(request.fromCardId());
+        verify(cardRepository).findAllByIdForUpdate(any());
         verify(transactionRepository, never()).save(any(Transaction.class));
     }
 
@@ -291,48 +317,574 @@ class TransferServiceTest {
         Long userId = 1L;
         Pageable pageable = PageRequest.of(0, 10);
 
+        TransactionDto transaction1 = new TransactionDto(1L, 1L, 2L, new BigDecimal("100.00"),
+                "COMPLETED", "Transfer 1", LocalDateTime.now());
+        TransactionDto transaction2 = new TransactionDto(2L, 1L, 2L, new BigDecimal("200.00"),
+                "COMPLETED", "Transfer 2", LocalDateTime.now());
+
+        Page<TransactionDto> transactionPage = new PageImpl<>(List.of(transaction1, transaction2), pageable, 2);
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(true);
+        when(transactionRepository.findByUserId(userId, pageable)).thenReturn(transactionPage);
+
+        Page<TransactionDto> result = transferService.getTransactionHistory(userId, pageable);
+
+        assertNotNull(result);
+        assertEquals(2, result.getTotalElements());
+        assertEquals(new BigDecimal("100.00"), result.getContent().get(0).amount());
+        assertEquals(new BigDecimal("200.00"), result.getContent().get(1).amount());
+
+        verify(transactionRepository).findByUserId(userId, pageable);
+    }
+
+    @Test
+    void getTransactionHistoryByCursor_FollowsCursorToNextPage() {
+        Long userId = 1L;
+        LocalDateTime sameMoment = LocalDateTime.of(2024, 3, 1, 12, 0, 0, 123_456_000);
+        TransactionDto newest = history(30L, 1L, 2L, sameMoment);
+        TransactionDto middle = history(20L, 1L, 2L, sameMoment);
+        TransactionDto oldest = history(10L, 2L, 1L, sameMoment.minusSeconds(1));
+
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(true);
+        when(transactionRepository.findLatestByUserId(userId, PageRequest.of(0, 3)))
+                .thenReturn(new ArrayList<>(List.of(newest, middle, oldest)));
+        when(transactionRepository.findByUserIdBefore(userId, sameMoment, 20L, PageRequest.of(0, 3)))
+                .thenReturn(List.of(oldest));
+
+        TransactionCursorPageDto firstPage = transferService.getTransactionHistory(userId, null, 2);
+        TransactionCursorPageDto lastPage = transferService.getTransactionHistory(userId, firstPage.nextCursor(), 2);
+
+        assertEquals(List.of(30L, 20L), firstPage.items().stream().map(TransactionDto::id).toList());
+        assertNotNull(firstPage.nextCursor());
+        assertEquals(List.of(10L), lastPage.items().stream().map(TransactionDto::id).toList());
+        assertNull(lastPage.nextCursor());
+        verify(transactionRepository, never()).findByUserId(any(), any());
+    }
+
+    @Test
+    void getTransactionHistory_OwnersBackfilled_ReadsIdsByOwnerIndexes() {
+        Long userId = 1L;
+        Pageable pageable = PageRequest.of(1, 2);
+        LocalDateTime now = LocalDateTime.of(2024, 3, 1, 12, 0);
+        TransactionDto newer = history(20L, 1L, 2L, now);
+        TransactionDto older = history(10L, 2L, 1L, now.minusSeconds(1));
+
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.findHistoryIds(userId, 2L, 3, 5L)).thenReturn(List.of(20L, 10L, 5L));
+        when(transactionRepository.findHistoryItems(List.of(20L, 10L))).thenReturn(List.of(newer, older));
+        when(transactionRepository.countHistory(userId)).thenReturn(5L);
+
+        Page<TransactionDto> result = transferService.getTransactionHistory(userId, pageable);
+        transferService.getTransactionHistory(userId, pageable);
+
+        assertEquals(List.of(20L, 10L), result.getContent().stream().map(TransactionDto::id).toList());
+        assertEquals(5, result.getTotalElements());
+        verify(transactionRepository, times(1)).existsByFromUserIdIsNull();
+        verify(transactionRepository, times(1)).countHistory(userId);
+        verify(transactionRepository, never()).findByUserId(any(), any());
+    }
+
+    @Test
+    void getTransactionHistory_LastPage_DoesNotCount() {
+        Long userId = 1L;
+        Pageable pageable = PageRequest.of(1, 2);
+        TransactionDto last = history(10L, 2L, 1L, LocalDateTime.of(2024, 3, 1, 12, 0));
+
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.findHistoryIds(userId, 2L, 3, 5L)).thenReturn(List.of(10L));
+        when(transactionRepository.findHistoryItems(List.of(10L))).thenReturn(List.of(last));
+
+        Page<TransactionDto> result = transferService.getTransactionHistory(userId, pageable);
+
+        assertEquals(3, result.getTotalElements());
+        assertFalse(result.hasNext());
+        verify(transactionRepository, never()).countHistory(any());
+    }
+
+    @Test
+    void getTransactionHistorySlice_ReadsOneExtraRowInsteadOfCounting() {
+        Long userId = 1L;
+        Pageable pageable = PageRequest.of(0, 2);
+        LocalDateTime now = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.findHistoryIds(userId, 0L, 3, 3L)).thenReturn(List.of(30L, 20L, 10L));
+        when(transactionRepository.findHistoryItems(List.of(30L, 20L, 10L)))
+                .thenReturn(List.of(history(30L, 1L, 2L, now), history(20L, 1L, 2L, now), history(10L, 1L, 2L, now)));
+
+        Slice<TransactionDto> result = transferService.getTransactionHistorySlice(userId, pageable);
+
+        assertEquals(List.of(30L, 20L), result.getContent().stream().map(TransactionDto::id).toList());
+        assertTrue(result.hasNext());
+        verify(transactionRepository, never()).countHistory(any());
+    }
+
+    @Test
+    void getTransactionHistory_PastHotRows_ContinuesFromArchive() {
+        Long userId = 1L;
+        Pageable pageable = PageRequest.of(1, 2);
+        LocalDateTime now = LocalDateTime.of(2024, 3, 1, 12, 0);
+        TransactionDto hot = history(30L, 1L, 2L, now);
+        TransactionDto archived = history(20L, 1L, 2L, now.minusMonths(14));
+
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.findHistoryIds(userId, 2L, 3, 5L)).thenReturn(List.of(30L));
+        when(transactionRepository.findHistoryItems(List.of(30L))).thenReturn(List.of(hot));
+        when(transactionArchive.hasSegments()).thenReturn(true);
+        when(transactionArchive.read(userId, 0, 2)).thenReturn(List.of(archived));
+
+        Page<TransactionDto> result = transferService.getTransactionHistory(userId, pageable);
+
+        assertEquals(List.of(30L, 20L), result.getContent().stream().map(TransactionDto::id).toList());
+        assertFalse(result.hasNext());
+        assertEquals(4, result.getTotalElements());
+    }
+
+    @Test
+    void getTransactionHistory_PageInsideArchive_SkipsHotRows() {
+        Long userId = 1L;
+        Pageable pageable = PageRequest.of(3, 2);
+        TransactionDto archived = history(20L, 1L, 2L, LocalDateTime.of(2023, 1, 1, 12, 0));
+
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.findHistoryIds(userId, 6L, 3, 9L)).thenReturn(List.of());
+        when(transactionRepository.countHistory(userId)).thenReturn(5L);
+        when(transactionArchive.hasSegments()).thenReturn(true);
+        when(transactionArchive.read(userId, 1, 3)).thenReturn(List.of(archived));
+
+        Slice<TransactionDto> result = transferService.getTransactionHistorySlice(userId, pageable);
+
+        assertEquals(List.of(20L), result.getContent().stream().map(TransactionDto::id).toList());
+        assertFalse(result.hasNext());
+    }
+
+    @Test
+    void getTransactionHistoryByCursor_PastHotRows_ReadsArchiveBeforeLastRow() {
+        Long userId = 1L;
+        LocalDateTime now = LocalDateTime.of(2024, 3, 1, 12, 0);
+        TransactionDto hot = history(30L, 1L, 2L, now);
+        TransactionDto archived = history(20L, 1L, 2L, now.minusMonths(14));
+
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.findHistoryIds(userId, 0, 3, 3)).thenReturn(List.of(30L));
+        when(transactionRepository.findHistoryItems(List.of(30L))).thenReturn(List.of(hot));
+        when(transactionArchive.hasSegments()).thenReturn(true);
+        when(transactionArchive.readBefore(userId, now, 30L, 2)).thenReturn(List.of(archived));
+
+        TransactionCursorPageDto result = transferService.getTransactionHistory(userId, null, 2);
+
+        assertEquals(List.of(30L, 20L), result.items().stream().map(TransactionDto::id).toList());
+        assertNull(result.nextCursor());
+    }
+
+    @Test
+    void getTransactionHistoryByCursor_FirstPageAgain_ReadsNoSql() {
+        Long userId = 1L;
+        LocalDateTime now = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+        when(transactionRepository.existsByFromUserIdIsNull()).thenReturn(false);
+        when(transactionRepository.findHistoryIds(userId, 0, 3, 3)).thenReturn(List.of(30L, 20L, 10L));
+        when(transactionRepository.findHistoryItems(List.of(30L, 20L, 10L)))
+                .thenReturn(List.of(history(30L, 1L, 2L, now), history(20L, 1L, 2L, now), history(10L, 1L, 2L, now)));
+
+        transferService.getTransactionHistory(userId, null, 2);
+        TransactionCursorPageDto again = transferService.getTransactionHistory(userId, null, 2);
+
+        assertEquals(List.of(30L, 20L), again.items().stream().map(TransactionDto::id).toList());
+        assertNotNull(again.nextCursor());
+        verify(transactionRepository, times(1)).findHistoryIds(any(), anyLong(), anyInt(), anyLong());
+    }
+
+    @Test
+    void transfer_StoresCardOwnersOnTransaction() {
+        Long userId = 1L;
         User user = User.builder().id(userId).username("testuser").build();
+        Card fromCard = activeCard(1L, user, "100.00");
+        Card toCard = activeCard(2L, user, "0.00");
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(fromCard, toCard));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        Card fromCard = Card.builder()
+        transferService.transfer(new TransferRequestDto(1L, 2L, new BigDecimal("10.00"), null), userId);
+
+        verify(transactionRepository).save(argThat(transaction ->
+                userId.equals(transaction.getFromUserId()) && userId.equals(transaction.getToUserId())));
+    }
+
+    @Test
+    void getTransactionHistoryByCursor_MalformedCursor_ThrowsException() {
+        assertThrows(InvalidCursorException.class, () -> transferService.getTransactionHistory(1L, "not-a-cursor", 20));
+        verifyNoInteractions(transactionRepository);
+    }
+
+    @Test
+    void transfer_LocksCardsInAscendingIdOrder() {
+        Long userId = 1L;
+        TransferRequestDto request = new TransferRequestDto(2L, 1L, new BigDecimal("10.00"), "Reverse transfer");
+
+        User user = User.builder().id(userId).username("testuser").build();
+        Card lowCard = Card.builder()
                 .id(1L)
                 .owner(user)
-                .lastFourDigits("1234")
+                .balance(new BigDecimal("100.00"))
+                .status(CardStatus.ACTIVE)
+                .expiryDate(LocalDate.now().plusYears(2))
                 .build();
-
-        Card toCard = Card.builder()
+        Card highCard = Card.builder()
                 .id(2L)
                 .owner(user)
-                .lastFourDigits("5678")
+                .balance(new BigDecimal("100.00"))
+                .status(CardStatus.ACTIVE)
+                .expiryDate(LocalDate.now().plusYears(2))
                 .build();
 
-        Transaction transaction1 = Transaction.builder()
-                .id(1L)
-                .sourceCard(fromCard)
-                .destinationCard(toCard)
-                .amount(new BigDecimal("100.00"))
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(lowCard, highCard));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        transferService.transfer(request, userId);
+
+        verify(cardRepository).findAllByIdForUpdate(argThat(ids -> List.copyOf(ids).equals(List.of(1L, 2L))));
+        assertEquals(new BigDecimal("90.00"), highCard.getBalance());
+        assertEquals(new BigDecimal("110.00"), lowCard.getBalance());
+    }
+
+    @Test
+    void transfer_ConditionalUpdateEngine_DoesNotLoadCards() {
+        ReflectionTestUtils.setField(transferService, "engine", TransferEngine.CONDITIONAL_UPDATE);
+        Long userId = 1L;
+        TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("100.00"), "Test transfer");
+
+        Transaction savedTransaction = Transaction.builder()
+                .id(7L)
+                .sourceCard(Card.builder().id(1L).build())
+                .destinationCard(Card.builder().id(2L).build())
+                .amount(request.amount())
                 .status(TransactionStatus.COMPLETED)
-                .description("Transfer 1")
                 .build();
 
-        Transaction transaction2 = Transaction.builder()
+        when(cardRepository.debitIfAvailable(1L, userId, request.amount())).thenReturn(1);
+        when(cardRepository.creditIfActive(2L, userId, request.amount())).thenReturn(1);
+        when(transactionRepository.save(any(Transaction.class))).thenReturn(savedTransaction);
+
+        TransferResponse result = transferService.transfer(request, userId);
+
+        assertEquals(7L, result.transactionId());
+        assertEquals("SUCCESS", result.status());
+        verify(cardRepository, never()).findById(any());
+        verify(cardRepository, never()).save(any(Card.class));
+    }
+
+    @Test
+    void transfer_ConditionalUpdateEngine_InsufficientBalance_ThrowsException() {
+        ReflectionTestUtils.setField(transferService, "engine", TransferEngine.CONDITIONAL_UPDATE);
+        Long userId = 1L;
+        TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("600.00"), "Test transfer");
+
+        User user = User.builder().id(userId).username("testuser").build();
+        Card fromCard = Card.builder()
+                .id(1L)
+                .owner(user)
+                .balance(new BigDecimal("500.00"))
+                .status(CardStatus.ACTIVE)
+                .expiryDate(LocalDate.now().plusYears(2))
+                .build();
+
+        when(cardRepository.debitIfAvailable(1L, userId, request.amount())).thenReturn(0);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(fromCard));
+
+        assertThrows(InsufficientBalanceException.class, () -> transferService.transfer(request, userId));
+
+        verify(cardRepository, never()).creditIfActive(any(), any(), any());
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    void transfer_ConditionalUpdateEngine_BlockedDestinationCard_ThrowsException() {
+        ReflectionTestUtils.setField(transferService, "engine", TransferEngine.CONDITIONAL_UPDATE);
+        Long userId = 1L;
+        TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("100.00"), "Test transfer");
+
+        User user = User.builder().id(userId).username("testuser").build();
+        Card toCard = Card.builder()
                 .id(2L)
-                .sourceCard(fromCard)
-                .destinationCard(toCard)
-                .amount(new BigDecimal("200.00"))
-                .status(TransactionStatus.COMPLETED)
-                .description("Transfer 2")
+                .owner(user)
+                .balance(new BigDecimal("200.00"))
+                .status(CardStatus.BLOCKED)
+                .expiryDate(LocalDate.now().plusYears(2))
                 .build();
 
-        Page<Transaction> transactionPage = new PageImpl<>(List.of(transaction1, transaction2), pageable, 2);
-        when(transactionRepository.findByUserId(userId, pageable)).thenReturn(transactionPage);
+        when(cardRepository.debitIfAvailable(1L, userId, request.amount())).thenReturn(1);
+        when(cardRepository.creditIfActive(2L, userId, request.amount())).thenReturn(0);
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(toCard));
 
-        Page<TransactionDto> result = transferService.getTransactionHistory(userId, pageable);
+        assertThrows(CardBlockedException.class, () -> transferService.transfer(request, userId));
 
-        assertNotNull(result);
-        assertEquals(2, result.getTotalElements());
-        assertEquals(new BigDecimal("100.00"), result.getContent().get(0).amount());
-        assertEquals(new BigDecimal("200.00"), result.getContent().get(1).amount());
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
 
-        verify(transactionRepository).findByUserId(userId, pageable);
+    @Test
+    void transferBatch_PartialFailure_AppliesValidTransfersWithSingleLock() {
+        Long userId = 1L;
+        User user = User.builder().id(userId).username("testuser").build();
+        Card first = activeCard(1L, user, "500.00");
+        Card second = activeCard(2L, user, "100.00");
+
+        BatchTransferRequestDto request = new BatchTransferRequestDto(List.of(
+                new TransferRequestDto(1L, 2L, new BigDecimal("50.00"), "ok"),
+                new TransferRequestDto(2L, 2L, new BigDecimal("10.00"), "same card"),
+                new TransferRequestDto(2L, 1L, new BigDecimal("1000.00"), "too much")
+        ), false);
+
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(first, second));
+        when(transactionRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BatchTransferResponseDto result = transferService.transferBatch(request, userId);
+
+        assertTrue(result.committed());
+        assertEquals(1, result.succeeded());
+        assertEquals(2, result.failed());
+        assertEquals("SUCCESS", result.results().get(0).status());
+        assertEquals("FAILED", result.results().get(1).status());
+        assertEquals("FAILED", result.results().get(2).status());
+        assertEquals(new BigDecimal("450.00"), first.getBalance());
+        assertEquals(new BigDecimal("150.00"), second.getBalance());
+
+        verify(cardRepository, times(1)).findAllByIdForUpdate(any());
+        verify(transactionRepository, times(1)).saveAll(argThat(list -> ((List<?>) list).size() == 1));
+    }
+
+    @Test
+    void transferBatch_AtomicWithFailure_RejectsWholeBatch() {
+        Long userId = 1L;
+        User user = User.builder().id(userId).username("testuser").build();
+        Card first = activeCard(1L, user, "500.00");
+        Card second = activeCard(2L, user, "100.00");
+
+        BatchTransferRequestDto request = new BatchTransferRequestDto(List.of(
+                new TransferRequestDto(1L, 2L, new BigDecimal("50.00"), "ok"),
+                new TransferRequestDto(2L, 1L, new BigDecimal("1000.00"), "too much")
+        ), true);
+
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(first, second));
+        when(transactionRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BatchTransferRejectedException ex = assertThrows(BatchTransferRejectedException.class,
+                () -> transferService.transferBatch(request, userId));
+
+        assertFalse(ex.getResponse().committed());
+        assertEquals(0, ex.getResponse().succeeded());
+        assertEquals("ROLLED_BACK", ex.getResponse().results().get(0).status());
+        assertNull(ex.getResponse().results().get(0).transactionId());
+        assertEquals("FAILED", ex.getResponse().results().get(1).status());
+    }
+
+    @Test
+    void submit_ValidRequest_SavesPendingTransactionWithoutLocking() {
+        Long userId = 1L;
+        User user = User.builder().id(userId).username("testuser").build();
+        Card first = activeCard(1L, user, "10.00");
+        Card second = activeCard(2L, user, "100.00");
+        TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("50.00"), "async");
+
+        when(cardRepository.findAllById(any())).thenReturn(List.of(first, second));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
+            Transaction transaction = invocation.getArgument(0);
+            transaction.setId(10L);
+            return transaction;
+        });
+
+        TransferResponse response = transferService.submit(request, userId);
+
+        assertEquals(10L, response.transactionId());
+        assertEquals("PENDING", response.status());
+        // баланс проверяется только при выполнении
+        assertEquals(new BigDecimal("10.00"), first.getBalance());
+        verify(transactionRepository).save(argThat(transaction -> transaction.getStatus() == TransactionStatus.PENDING));
+        verify(cardRepository, never()).findAllByIdForUpdate(any());
+    }
+
+    @Test
+    void processClaimed_AppliesTransfersAndRecordsFailures() {
+        User user = User.builder().id(1L).username("testuser").build();
+        Card first = activeCard(1L, user, "500.00");
+        Card second = activeCard(2L, user, "100.00");
+        Transaction ok = processing(20L, first, second, "50.00");
+        Transaction tooMuch = processing(21L, second, first, "1000.00");
+
+        when(transactionRepository.findAllByIdForUpdate(List.of(20L, 21L))).thenReturn(List.of(ok, tooMuch));
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(first, second));
+
+        transferService.processClaimed(List.of(20L, 21L));
+
+        assertEquals(TransactionStatus.COMPLETED, ok.getStatus());
+        assertNotNull(ok.getCompletedAt());
+        assertEquals(TransactionStatus.FAILED, tooMuch.getStatus());
+        assertNotNull(tooMuch.getErrorMessage());
+        assertEquals(new BigDecimal("450.00"), first.getBalance());
+        assertEquals(new BigDecimal("150.00"), second.getBalance());
+        verify(cardRepository, times(1)).findAllByIdForUpdate(any());
+    }
+
+    @Test
+    void claimPending_MarksProcessingWithClaimTime() {
+        User user = User.builder().id(1L).username("testuser").build();
+        Card first = activeCard(1L, user, "500.00");
+        Card second = activeCard(2L, user, "100.00");
+        Transaction pending = processing(20L, first, second, "50.00");
+        pending.setStatus(TransactionStatus.PENDING);
+        when(transactionRepository.findForUpdateSkipLocked(TransactionStatus.PENDING, PageRequest.of(0, 10)))
+                .thenReturn(List.of(pending));
+
+        LocalDateTime before = LocalDateTime.now();
+        List<Long> claimed = transferService.claimPending(10);
+
+        assertEquals(List.of(20L), claimed);
+        assertEquals(TransactionStatus.PROCESSING, pending.getStatus());
+        assertFalse(pending.getClaimedAt().isBefore(before));
+    }
+
+    @Test
+    void releaseExpiredClaims_ReturnsClaimsOlderThanLeaseToQueue() {
+        User user = User.builder().id(1L).username("testuser").build();
+        Card first = activeCard(1L, user, "500.00");
+        Card second = activeCard(2L, user, "100.00");
+        Transaction abandoned = processing(20L, first, second, "50.00");
+        abandoned.setClaimedAt(LocalDateTime.now().minusMinutes(30));
+        Duration lease = Duration.ofMinutes(5);
+        when(transactionRepository.findClaimedBeforeForUpdateSkipLocked(
+                eq(TransactionStatus.PROCESSING),
+                argThat(cutoff -> !cutoff.isAfter(LocalDateTime.now().minus(lease))
+                        && cutoff.isAfter(LocalDateTime.now().minus(lease).minusMinutes(1))),
+                eq(PageRequest.of(0, 100))))
+                .thenReturn(List.of(abandoned));
+
+        int released = transferService.releaseExpiredClaims(lease, 100);
+
+        assertEquals(1, released);
+        assertEquals(TransactionStatus.PENDING, abandoned.getStatus());
+    }
+
+    @Test
+    void processClaimed_SkipsTransfersReturnedToQueueWhileWaitingForLock() {
+        User user = User.builder().id(1L).username("testuser").build();
+        Card first = activeCard(1L, user, "500.00");
+        Card second = activeCard(2L, user, "100.00");
+        Transaction released = processing(20L, first, second, "50.00");
+        released.setStatus(TransactionStatus.PENDING);
+        Transaction doneElsewhere = processing(21L, first, second, "70.00");
+        doneElsewhere.setStatus(TransactionStatus.COMPLETED);
+        when(transactionRepository.findAllByIdForUpdate(List.of(20L, 21L)))
+                .thenReturn(List.of(released, doneElsewhere));
+
+        transferService.processClaimed(List.of(20L, 21L));
+
+        assertEquals(TransactionStatus.PENDING, released.getStatus());
+        assertEquals(new BigDecimal("500.00"), first.getBalance());
+        verify(cardRepository, never()).findAllByIdForUpdate(any());
+    }
+
+    @Test
+    void transfer_LedgerEngine_LocksOnlySourceAndAppendsEntries() {
+        ReflectionTestUtils.setField(transferService, "engine", TransferEngine.LEDGER);
+        Long userId = 1L;
+        User user = User.builder().id(userId).username("testuser").build();
+        Card first = activeCard(1L, user, "0.00");
+        Card second = activeCard(2L, user, "0.00");
+        TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("50.00"), "ledger");
+
+        when(cardRepository.findAllByIdForUpdate(List.of(1L))).thenReturn(List.of(first));
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(second));
+        when(ledgerService.balanceOf(1L)).thenReturn(new BigDecimal("100.00"));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        TransferResponse response = transferService.transfer(request, userId);
+
+        assertEquals("SUCCESS", response.status());
+        verify(ledgerService).recordTransfer(any(Transaction.class));
+        verify(cardRepository, never()).save(any());
+        assertEquals(new BigDecimal("0.00"), second.getBalance());
+    }
+
+    @Test
+    void transfer_LedgerEngine_InsufficientLedgerBalance_ThrowsException() {
+        ReflectionTestUtils.setField(transferService, "engine", TransferEngine.LEDGER);
+        Long userId = 1L;
+        User user = User.builder().id(userId).username("testuser").build();
+        // баланс в cards не используется, решает журнал
+        Card first = activeCard(1L, user, "1000.00");
+        Card second = activeCard(2L, user, "0.00");
+        TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("50.00"), "ledger");
+
+        when(cardRepository.findAllByIdForUpdate(List.of(1L))).thenReturn(List.of(first));
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(second));
+        when(ledgerService.balanceOf(1L)).thenReturn(new BigDecimal("10.00"));
+
+        assertThrows(InsufficientBalanceException.class, () -> transferService.transfer(request, userId));
+        verify(transactionRepository, never()).save(any());
+        verify(ledgerService, never()).recordTransfer(any());
+    }
+
+    @Test
+    void transfer_HotDestination_CreditsSlotWithoutLockingCard() {
+        Long userId = 1L;
+        User user = User.builder().id(userId).username("testuser").build();
+        Card source = activeCard(1L, user, "100.00");
+        Card merchant = activeCard(2L, user, "500.00");
+        TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("40.00"), "hot");
+
+        when(hotCardService.isHot(2L)).thenReturn(true);
+        when(cardRepository.findAllByIdForUpdate(argThat(ids -> List.copyOf(ids).equals(List.of(1L)))))
+                .thenReturn(List.of(source));
+        when(cardRepository.findAllById(Set.of(2L))).thenReturn(List.of(merchant));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        transferService.transfer(request, userId);
+
+        verify(hotCardService).credit(2L, new BigDecimal("40.00"));
+        assertEquals(new BigDecimal("60.00"), source.getBalance());
+        assertEquals(new BigDecimal("500.00"), merchant.getBalance());
+    }
+
+    @Test
+    void transfer_SourceBalanceShort_DrainsSlotsBeforeWithdraw() {
+        Long userId = 1L;
+        User user = User.builder().id(userId).username("testuser").build();
+        Card merchant = activeCard(1L, user, "10.00");
+        Card target = activeCard(2L, user, "0.00");
+        TransferRequestDto request = new TransferRequestDto(1L, 2L, new BigDecimal("50.00"), "drain");
+
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(merchant, target));
+        doAnswer(invocation -> {
+            merchant.setBalance(new BigDecimal("50.00"));
+            return null;
+        }).when(hotCardService).drainInto(merchant, new BigDecimal("50.00"));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        transferService.transfer(request, userId);
+
+        assertEquals(0, merchant.getBalance().signum());
+        assertEquals(new BigDecimal("50.00"), target.getBalance());
+    }
+
+    private TransactionDto history(Long id, Long fromCardId, Long toCardId, LocalDateTime createdAt) {
+        return new TransactionDto(id, fromCardId, toCardId, new BigDecimal("1.00"), "COMPLETED", null, createdAt);
+    }
+
+    private Transaction processing(Long id, Card from, Card to, String amount) {
+        return Transaction.builder()
+                .id(id)
+                .sourceCard(from)
+                .destinationCard(to)
+                .amount(new BigDecimal(amount))
+                .status(TransactionStatus.PROCESSING)
+                .build();
+    }
+
+    private Card activeCard(Long id, User owner, String balance) {
+        return Card.builder()
+                .id(id)
+                .owner(owner)
+                .balance(new BigDecimal(balance))
+                .status(CardStatus.ACTIVE)
+                .expiryDate(LocalDate.now().plusYears(2))
+                .build();
     }
-}
\ No newline at end of file
+}
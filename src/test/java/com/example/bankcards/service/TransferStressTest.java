@@ -0,0 +1,264 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.LedgerVerificationDto;
+import com.example.bankcards.dto.TransferRequestDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.TransactionStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный тест: много потоков переводят деньги между небольшим набором «горячих» карт
+ * в обоих направлениях. Проверяет, что общий баланс сохраняется, и выводит пропускную
+ * способность и p99 задержки.
+ * Запуск: mvn test -Dtest=TransferStressTest -Dbenchmark=true
+ */
+@SpringBootTest
+@ActiveProfiles("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TransferStressTest {
+
+    private static final int HOT_CARDS = 4;
+    private static final int THREADS = 16;
+    private static final int TRANSFERS = 5_000;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("100000.00");
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TransferOrchestrator transferOrchestrator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private CardBalanceSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+    private final List<Long> cardIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .username("stress")
+                .email("stress@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build());
+        for (int i = 0; i < HOT_CARDS; i++) {
+            Card card = cardRepository.save(Card.builder()
+                    .cardNumber("stress-" + i)
+                    .lastFourDigits(String.format("%04d", i))
+                    .cardholderName("STRESS USER")
+                    .expiryDate(LocalDate.now().plusYears(3))
+                    .owner(user)
+                    .status(CardStatus.ACTIVE)
+                    .balance(INITIAL_BALANCE)
+                    .build());
+            cardIds.add(card.getId());
+            ledgerService.openCard(card.getId(), INITIAL_BALANCE);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        snapshotRepository.deleteAllInBatch();
+        ledgerEntryRepository.deleteAllInBatch();
+        transactionRepository.deleteAllInBatch();
+        cardRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+        cardIds.clear();
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransferEngine.class)
+    void concurrentTransfersConserveTotalBalance(TransferEngine engine) throws InterruptedException {
+        useEngine(engine);
+
+        long[] latencies = new long[TRANSFERS];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        long started = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(() -> {
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < TRANSFERS) {
+                        latencies[i] = transferOnce();
+                        if (latencies[i] < 0) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES), "Stress run did not finish in time");
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+        pool.shutdown();
+
+        long[] succeeded = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+        long p99 = succeeded.length == 0 ? 0 : succeeded[(int) Math.ceil(succeeded.length * 0.99) - 1];
+        System.out.printf("%-20s %6d ok  %4d failed  %8.0f transfers/s  p99 %6.2f ms  conflicts %.0f  retries %.0f%n",
+                engine, succeeded.length, failures.get(), succeeded.length / seconds, p99 / 1_000_000.0,
+                meterRegistry.get("transfer.conflicts").counter().count(),
+                meterRegistry.get("transfer.retries").counter().count());
+
+        BigDecimal total = ledgerService.balancesOf(cardIds).values().stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(HOT_CARDS)).compareTo(total));
+        assertEquals(succeeded.length, transactionRepository.count());
+        LedgerVerificationDto verification = ledgerService.verify();
+        assertTrue(verification.consistent(), "Ledger verification failed: " + verification);
+        if (engine != TransferEngine.OPTIMISTIC) {
+            // оптимистичный режим может исчерпать повторы, остальные режимы ждут блокировку
+            assertEquals(0, failures.get(), "Transfers failed under contention");
+        }
+    }
+
+    /**
+     * Асинхронный режим: потоки только ставят переводы в очередь, поэтому задержка приёма
+     * не зависит от конкуренции за карты. После приёма тест ждёт, пока обработчик
+     * выполнит все переводы, и проверяет сохранение общего баланса.
+     */
+    @Test
+    void asyncBurstKeepsSubmitLatencyFlat() throws InterruptedException {
+        useEngine(TransferEngine.LOAD_MODIFY_SAVE);
+        long[] latencies = new long[TRANSFERS];
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        long started = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(() -> {
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < TRANSFERS) {
+                        long submitted = System.nanoTime();
+                        transferOrchestrator.submit(randomRequest(), user.getId(), null);
+                        latencies[i] = System.nanoTime() - submitted;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES), "Submissions did not finish in time");
+        double submitSeconds = (System.nanoTime() - started) / 1_000_000_000.0;
+        pool.shutdown();
+
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+        while (countByStatus(TransactionStatus.PENDING) + countByStatus(TransactionStatus.PROCESSING) > 0) {
+            assertTrue(System.nanoTime() < deadline, "Pending transfers were not drained in time");
+            Thread.sleep(50);
+        }
+        double drainSeconds = (System.nanoTime() - started) / 1_000_000_000.0;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-20s %6d submitted  %8.0f submits/s  p99 submit %6.2f ms  drained in %.2f s%n",
+                "ASYNC", TRANSFERS, TRANSFERS / submitSeconds,
+                latencies[(int) Math.ceil(TRANSFERS * 0.99) - 1] / 1_000_000.0, drainSeconds);
+
+        BigDecimal total = cardRepository.findAllById(cardIds).stream()
+                .map(Card::getBalance)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(HOT_CARDS)).compareTo(total));
+        assertEquals(TRANSFERS, countByStatus(TransactionStatus.COMPLETED) + countByStatus(TransactionStatus.FAILED));
+        LedgerVerificationDto verification = ledgerService.verify();
+        assertTrue(verification.consistent(), "Ledger does not match card balances: " + verification);
+    }
+
+    private void useEngine(TransferEngine engine) {
+        TransferService target = AopTestUtils.getTargetObject(transferService);
+        ReflectionTestUtils.setField(target, "engine", engine);
+        LedgerService ledger = AopTestUtils.getTargetObject(ledgerService);
+        ReflectionTestUtils.setField(ledger, "engine", engine);
+    }
+
+    private long countByStatus(TransactionStatus status) {
+        return transactionRepository.findAll().stream()
+                .filter(transaction -> transaction.getStatus() == status)
+                .count();
+    }
+
+    private TransferRequestDto randomRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(HOT_CARDS);
+        int to = (from + 1 + random.nextInt(HOT_CARDS - 1)) % HOT_CARDS;
+        return new TransferRequestDto(
+                cardIds.get(from),
+                cardIds.get(to),
+                BigDecimal.valueOf(random.nextInt(1, 100)),
+                "stress");
+    }
+
+    /**
+     * Выполняет один перевод между случайной парой карт и возвращает задержку в наносекундах
+     * или -1, если перевод завершился ошибкой.
+     */
+    private long transferOnce() {
+        TransferRequestDto request = randomRequest();
+
+        long started = System.nanoTime();
+        try {
+            transferOrchestrator.transfer(request, user.getId());
+            return System.nanoTime() - started;
+        } catch (RuntimeException ex) {
+            return -1;
+        }
+    }
+}
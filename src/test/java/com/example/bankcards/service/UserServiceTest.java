@@ -11,9 +11,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.HashSet;
@@ -223,8 +224,8 @@ class UserServiceTest {
                 .role(Role.ADMIN)
                 .build();
 
-        Page<User> userPage = new PageImpl<>(List.of(user1, user2), pageable, 2);
-        when(userRepository.findAll(pageable)).thenReturn(userPage);
+        Slice<User> userSlice = new SliceImpl<>(List.of(user1, user2), pageable, false);
+        when(userRepository.findAllBy(pageable)).thenReturn(userSlice);
 
         Page<UserDto> result = userService.getAllUsers(pageable);
 
@@ -233,6 +234,36 @@ class UserServiceTest {
         assertEquals("user1", result.getContent().get(0).username());
         assertEquals("user2", result.getContent().get(1).username());
 
-        verify(userRepository).findAll(pageable);
+        verify(userRepository).findAllBy(pageable);
+        verify(userRepository, never()).approximateCount();
+    }
+
+    @Test
+    void getAllUsers_NotLastPage_CountsSmallTableExactly() {
+        Pageable pageable = PageRequest.of(0, 1);
+        User user = User.builder().id(1L).username("user1").email("user1@example.com").build();
+        when(userRepository.findAllBy(pageable)).thenReturn(new SliceImpl<>(List.of(user), pageable, true));
+        when(userRepository.approximateCount()).thenCallRealMethod();
+        when(userRepository.estimateCount()).thenReturn(-1L);
+        when(userRepository.count()).thenReturn(3L);
+
+        Page<UserDto> result = userService.getAllUsers(pageable);
+
+        assertEquals(3, result.getTotalElements());
+        assertEquals(3, result.getTotalPages());
+    }
+
+    @Test
+    void getAllUsersSlice_DoesNotCount() {
+        Pageable pageable = PageRequest.of(0, 1);
+        User user = User.builder().id(1L).username("user1").email("user1@example.com").build();
+        when(userRepository.findAllBy(pageable)).thenReturn(new SliceImpl<>(List.of(user), pageable, true));
+
+        Slice<UserDto> result = userService.getAllUsersSlice(pageable);
+
+        assertTrue(result.hasNext());
+        assertEquals("user1", result.getContent().get(0).username());
+        verify(userRepository, never()).count();
+        verify(userRepository, never()).estimateCount();
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Пропускная способность шифрования и расшифровки номера карты при росте числа потоков:
+ * Encryptors.text (один Cipher под общей блокировкой) против CardNumberCipher (Cipher на поток).
+ * Запуск: mvn test -Dtest=CardNumberCipherBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CardNumberCipherBenchmarkTest {
+
+    private static final String PASSWORD = "mySecretEncryptionPasswordForDevelopment123";
+    private static final String SALT = "a1b2c3d4e5f67890";
+    private static final String NUMBER = "1234567812345678";
+    private static final int WARMUP = 20_000;
+    private static final int OPERATIONS = 200_000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4, 8, 16})
+    void encryptAndDecrypt(int threads) throws InterruptedException {
+        TextEncryptor legacy = Encryptors.text(PASSWORD, SALT);
+        CardNumberCipher pooled = new CardNumberCipher(PASSWORD, SALT, 1);
+
+        double legacyRate = run(threads, number -> legacy.decrypt(legacy.encrypt(number)));
+        double pooledRate = run(threads, number -> pooled.decrypt(pooled.encrypt(number)));
+
+        System.out.printf("%2d threads  TEXT_ENCRYPTOR %10.0f ops/s  POOLED_GCM %10.0f ops/s  x%.1f%n",
+                threads, legacyRate, pooledRate, pooledRate / legacyRate);
+    }
+
+    /**
+     * Операций в секунду: каждая — шифрование и расшифровка одного номера.
+     */
+    private static double run(int threads, UnaryOperator<String> roundTrip) throws InterruptedException {
+        for (int i = 0; i < WARMUP; i++) {
+            assertEquals(NUMBER, roundTrip.apply(NUMBER));
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long started = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    while (next.getAndIncrement() < OPERATIONS) {
+                        roundTrip.apply(NUMBER);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES), "Run did not finish in time");
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+        pool.shutdown();
+        return OPERATIONS / seconds;
+    }
+}
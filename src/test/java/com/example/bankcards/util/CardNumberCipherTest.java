@@ -0,0 +1,69 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.encrypt.Encryptors;
+
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardNumberCipherTest {
+
+    private static final String PASSWORD = "mySecretEncryptionPasswordForDevelopment123";
+    private static final String SALT = "a1b2c3d4e5f67890";
+    private static final String NUMBER = "1234567812345678";
+
+    private final CardNumberCipher cipher = new CardNumberCipher(PASSWORD, SALT, 1);
+
+    @Test
+    void encrypt_RoundTripsWithVersionedHeader() {
+        String first = cipher.encrypt(NUMBER);
+        String second = cipher.encrypt(NUMBER);
+
+        assertNotEquals(first, second);
+        assertEquals(NUMBER, cipher.decrypt(first));
+        assertEquals(NUMBER, cipher.decrypt(second));
+        byte[] data = Base64.getDecoder().decode(first.substring(CardNumberCipher.PREFIX.length()));
+        assertEquals(CardNumberCipher.FORMAT_GCM, data[0]);
+        assertEquals(1, data[1]);
+    }
+
+    @Test
+    void decrypt_LegacyTextEncryptorCiphertext() {
+        String legacy = Encryptors.text(PASSWORD, SALT).encrypt(NUMBER);
+
+        assertEquals(NUMBER, cipher.decrypt(legacy));
+    }
+
+    @Test
+    void decrypt_DuringRotation_ReadsBothKeyVersions() {
+        String legacy = Encryptors.text(PASSWORD, SALT).encrypt(NUMBER);
+        String previous = cipher.encrypt(NUMBER);
+        CardNumberCipher rotated = new CardNumberCipher(2, Map.of(
+                1, CardNumberCipher.deriveKey(PASSWORD, SALT),
+                2, CardNumberCipher.deriveKey("rotatedPassword", "0f1e2d3c4b5a6978")));
+        String current = rotated.encrypt(NUMBER);
+
+        assertEquals(NUMBER, rotated.decrypt(legacy));
+        assertEquals(NUMBER, rotated.decrypt(previous));
+        assertEquals(NUMBER, rotated.decrypt(current));
+        assertEquals(1, rotated.keyVersion(legacy));
+        assertEquals(1, rotated.keyVersion(previous));
+        assertEquals(2, rotated.keyVersion(current));
+        assertThrows(IllegalStateException.class, () -> cipher.decrypt(current));
+    }
+
+    @Test
+    void decrypt_TamperedHeaderOrOtherKeyVersion_Fails() {
+        byte[] data = Base64.getDecoder().decode(cipher.encrypt(NUMBER).substring(CardNumberCipher.PREFIX.length()));
+        data[1] = 2;
+        String otherVersion = CardNumberCipher.PREFIX + Base64.getEncoder().encodeToString(data);
+
+        assertThrows(IllegalStateException.class, () -> cipher.decrypt(otherVersion));
+        assertThrows(IllegalStateException.class,
+                () -> new CardNumberCipher(PASSWORD, SALT, 2).decrypt(otherVersion));
+        assertThrows(IllegalStateException.class,
+                () -> new CardNumberCipher("anotherPassword", SALT, 1).decrypt(cipher.encrypt(NUMBER)));
+    }
+}
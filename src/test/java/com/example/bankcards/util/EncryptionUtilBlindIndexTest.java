@@ -0,0 +1,40 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptionUtilBlindIndexTest {
+
+    private static final String NUMBER = "1234567812345678";
+
+    private final EncryptionUtil encryptionUtil = encryptionUtil("blind-index-key");
+
+    @Test
+    void blindIndexIsDeterministicUnlikeCiphertext() {
+        assertNotEquals(encryptionUtil.encrypt(NUMBER), encryptionUtil.encrypt(NUMBER));
+        assertEquals(encryptionUtil.blindIndex(NUMBER), encryptionUtil.blindIndex(NUMBER));
+        assertNotEquals(encryptionUtil.blindIndex(NUMBER), encryptionUtil.blindIndex("1234567812345679"));
+        assertEquals(64, encryptionUtil.blindIndex(NUMBER).length());
+    }
+
+    @Test
+    void blindIndexDependsOnKey() {
+        assertNotEquals(encryptionUtil.blindIndex(NUMBER), encryptionUtil("other-key").blindIndex(NUMBER));
+    }
+
+    /**
+     * Поля @Value заполняются так же, как их заполнил бы Spring, без поднятия контекста.
+     */
+    private static EncryptionUtil encryptionUtil(String blindIndexKey) {
+        EncryptionUtil util = new EncryptionUtil();
+        ReflectionTestUtils.setField(util, "password", "mySecretEncryptionPasswordForDevelopment123");
+        ReflectionTestUtils.setField(util, "salt", "a1b2c3d4e5f67890");
+        ReflectionTestUtils.setField(util, "keyVersion", 1);
+        ReflectionTestUtils.setField(util, "previousPassword", "");
+        ReflectionTestUtils.setField(util, "blindIndexKey", blindIndexKey);
+        util.init();
+        return util;
+    }
+}